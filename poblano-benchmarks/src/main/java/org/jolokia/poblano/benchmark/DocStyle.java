@@ -0,0 +1,58 @@
+package org.jolokia.poblano.benchmark;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Style of the documentation used for synthetic parameters
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+public enum DocStyle {
+
+    NONE(null),
+
+    // Plain text, as most parameters are documented
+    PLAIN("The registry to push the image to. If not set, the registry given\n" +
+          "as part of the image name is used."),
+
+    // Simple HTML which is handled without JTidy
+    HTML("The registry to push the <code>image</code> to.\n" +
+         "<ul>\n<li>A <em>registry</em> given here takes precedence</li>\n<li>Otherwise the image name is used</li>\n</ul>\n" +
+         "<p>See also <b>pull</b> &amp; push.</p>"),
+
+    // HTML which needs to be processed by JTidy
+    TIDY("The registry to push the image to.\n" +
+         "<ul>\n<li>A registry given here takes precedence\n<li>Otherwise the image name is used\n</ul>\n" +
+         "See <a href=\"http://example.com\">the docs</a>&nbsp;for details.");
+
+    private final String doc;
+
+    DocStyle(String doc) {
+        this.doc = doc;
+    }
+
+    /**
+     * Documentation for a parameter
+     *
+     * @param idx index of the parameter, so that each parameter has its own documentation
+     * @return documentation or <code>null</code>
+     */
+    public String getDoc(int idx) {
+        return doc != null ? "Parameter " + idx + ": " + doc : null;
+    }
+}
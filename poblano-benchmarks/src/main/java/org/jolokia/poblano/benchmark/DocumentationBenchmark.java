@@ -0,0 +1,75 @@
+package org.jolokia.poblano.benchmark;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.jolokia.poblano.DocumentationSanitizer;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Sanitizing single documentation strings, which is done for each element when
+ * documentation is added to the XSD. Uncached sanitizing uses a fresh string for each
+ * invocation, so that the sanitizer's cache never hits. The sanitizer is replaced
+ * regularly so that its cache doesn't grow without limits.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DocumentationBenchmark {
+
+    @Param({ "PLAIN", "HTML", "TIDY" })
+    public DocStyle docStyle;
+
+    private static final int UNCACHED_RESET = 1024;
+
+    private DocumentationSanitizer sanitizer;
+    private DocumentationSanitizer uncachedSanitizer;
+    private String doc;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        sanitizer = new DocumentationSanitizer();
+        uncachedSanitizer = new DocumentationSanitizer();
+        doc = docStyle.getDoc(0);
+    }
+
+    @Benchmark
+    public String sanitizeUncached() {
+        if (++counter % UNCACHED_RESET == 0) {
+            uncachedSanitizer = new DocumentationSanitizer();
+        }
+        return uncachedSanitizer.sanitize(doc + counter);
+    }
+
+    @Benchmark
+    public String sanitizeCached() {
+        return sanitizer.sanitize(doc);
+    }
+
+    @Benchmark
+    public String toText() {
+        return sanitizer.toText(doc);
+    }
+}
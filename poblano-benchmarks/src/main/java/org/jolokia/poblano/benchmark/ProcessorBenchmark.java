@@ -0,0 +1,120 @@
+package org.jolokia.poblano.benchmark;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import javax.tools.*;
+
+import org.jolokia.poblano.PoblanoProcessor;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Runs the compiler with the Poblano processor on synthetic mojos. Only annotation processing
+ * is done (<code>-proc:only</code>), so the time measured is parsing, attribution and
+ * Poblano itself.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ProcessorBenchmark {
+
+    @Param({ "WIDE", "DEEP", "SHARED_BASE" })
+    public Shape shape;
+
+    // Parameters (WIDE), nesting depth (DEEP) or number of mojos (SHARED_BASE)
+    @Param({ "50", "200" })
+    public int size;
+
+    @Param({ "PLAIN" })
+    public DocStyle docStyle;
+
+    // Whether the model index of the previous run is used
+    @Param({ "false", "true" })
+    public boolean useIndex;
+
+    private JavaCompiler compiler;
+    private List<JavaFileObject> sources;
+    private List<String> options;
+    private File workDir;
+    private File indexFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("No system Java compiler found, benchmark must run on a JDK");
+        }
+        sources = SyntheticMojos.create(shape, size, docStyle);
+        workDir = Files.createTempDirectory("poblano-bench").toFile();
+        File classes = new File(workDir, "classes");
+        if (!classes.mkdirs()) {
+            throw new IOException("Cannot create " + classes);
+        }
+        indexFile = new File(workDir, "poblano/model.idx");
+        options = Arrays.asList("-proc:only",
+                                "-classpath", System.getProperty("java.class.path"),
+                                "-d", classes.getAbsolutePath(),
+                                "-Apoblano.index=" + indexFile.getAbsolutePath());
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareInvocation() {
+        if (!useIndex && indexFile.exists() && !indexFile.delete()) {
+            throw new IllegalStateException("Cannot delete " + indexFile);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.walkFileTree(workDir.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Benchmark
+    public boolean process() {
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics, options, null, sources);
+        task.setProcessors(Collections.singletonList(new PoblanoProcessor()));
+        if (!task.call()) {
+            throw new IllegalStateException("Compilation failed: " + diagnostics.getDiagnostics());
+        }
+        return true;
+    }
+}
@@ -0,0 +1,32 @@
+package org.jolokia.poblano.benchmark;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Shapes of the synthetic mojos and models used in the benchmarks
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+public enum Shape {
+    // A single mojo with many parameters
+    WIDE,
+    // A single mojo with nested complex types, each level containing the next one
+    DEEP,
+    // Many mojos sharing a common base class
+    SHARED_BASE
+}
@@ -0,0 +1,125 @@
+package org.jolokia.poblano.benchmark;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.jolokia.poblano.model.ConfigElement;
+import org.jolokia.poblano.model.Configuration;
+import org.jolokia.poblano.model.EnumValueElement;
+
+/**
+ * Creates configuration models of the same shapes as {@link SyntheticMojos}, but directly
+ * without running the compiler. Used for benchmarking the generators.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+public class SyntheticModels {
+
+    private static final String[] SIMPLE_TYPES = {
+        "java.lang.String", "int", "java.lang.Boolean", ConfigElement.COLLECTION_TYPE, "Mode"
+    };
+
+    private static final List<EnumValueElement> MODES = Arrays.asList(
+        new EnumValueElement("FAST", "Go <em>fast</em>"),
+        new EnumValueElement("SLOW", "Go slow"),
+        new EnumValueElement("OFF", null));
+
+    private final Configuration config = new Configuration();
+    private final DocStyle docStyle;
+    private int paramIdx;
+
+    private SyntheticModels(DocStyle docStyle) {
+        this.docStyle = docStyle;
+    }
+
+    /**
+     * Create a model
+     *
+     * @param shape shape of the model
+     * @param size number of parameters (WIDE), nesting depth (DEEP) or number of mojos (SHARED_BASE)
+     * @param docStyle documentation to use for all elements
+     * @return the model
+     */
+    public static Configuration create(Shape shape, int size, DocStyle docStyle) {
+        SyntheticModels models = new SyntheticModels(docStyle);
+        switch (shape) {
+            case WIDE:
+                models.createWide(size);
+                break;
+            case DEEP:
+                models.createDeep(size);
+                break;
+            case SHARED_BASE:
+                models.createSharedBase(size);
+                break;
+        }
+        return models.config;
+    }
+
+    private void createWide(int size) {
+        for (int i = 0; i < size; i++) {
+            addSimple(null, "wide", "param" + i, i);
+        }
+    }
+
+    private void createDeep(int depth) {
+        ConfigElement level = add(null, "deep", "level", "Level0");
+        for (int i = 0; i < depth; i++) {
+            add(level, "deep", "name", "java.lang.String");
+            add(level, "deep", "count", "int");
+            if (i + 1 < depth) {
+                String nextType = "Level" + (i + 1);
+                ConfigElement items = add(level, "deep", "items", ConfigElement.COLLECTION_TYPE);
+                // Items get the same configuration as the next level
+                ConfigElement item = add(items, "deep", "level" + (i + 1), nextType);
+                add(item, "deep", "name", "java.lang.String");
+                add(item, "deep", "count", "int");
+                level = add(level, "deep", "next", nextType);
+            }
+        }
+    }
+
+    private void createSharedBase(int nrMojos) {
+        for (int i = 0; i < nrMojos; i++) {
+            String mojo = "goal" + i;
+            add(null, mojo, "name", "java.lang.String");
+            add(null, mojo, "skip", "boolean");
+            for (int j = 0; j < 20; j++) {
+                addSimple(null, mojo, "base" + j, j);
+            }
+        }
+    }
+
+    private void addSimple(ConfigElement parent, String mojo, String name, int i) {
+        String type = SIMPLE_TYPES[i % SIMPLE_TYPES.length];
+        if ("Mode".equals(type)) {
+            config.updateEnum(parent, MODES, mojo, name, type, "FAST", docStyle.getDoc(paramIdx++));
+        } else {
+            ConfigElement element = add(parent, mojo, name, type);
+            if (element.isList()) {
+                config.updateElement(element, mojo, "item", "java.lang.String", null, null);
+            }
+        }
+    }
+
+    private ConfigElement add(ConfigElement parent, String mojo, String name, String type) {
+        return config.updateElement(parent, mojo, name, type, null, docStyle.getDoc(paramIdx++));
+    }
+}
@@ -0,0 +1,178 @@
+package org.jolokia.poblano.benchmark;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+
+/**
+ * Creates sources of synthetic mojos for running the annotation processor
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+public class SyntheticMojos {
+
+    private static final String PACKAGE = "bench";
+
+    private final DocStyle docStyle;
+    private final List<JavaFileObject> sources = new ArrayList<>();
+    private int paramIdx;
+
+    private SyntheticMojos(DocStyle docStyle) {
+        this.docStyle = docStyle;
+    }
+
+    /**
+     * Create the sources for a shape
+     *
+     * @param shape shape of the mojos
+     * @param size number of parameters (WIDE), nesting depth (DEEP) or number of mojos (SHARED_BASE)
+     * @param docStyle documentation to use for all parameters
+     * @return the sources
+     */
+    public static List<JavaFileObject> create(Shape shape, int size, DocStyle docStyle) {
+        SyntheticMojos mojos = new SyntheticMojos(docStyle);
+        switch (shape) {
+            case WIDE:
+                mojos.createWide(size);
+                break;
+            case DEEP:
+                mojos.createDeep(size);
+                break;
+            case SHARED_BASE:
+                mojos.createSharedBase(size);
+                break;
+        }
+        return mojos.sources;
+    }
+
+    private void createWide(int size) {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            addParameter(body, getSimpleType(i), "param" + i);
+        }
+        addMode();
+        addClass("WideMojo", "@Mojo(name = \"wide\")", "AbstractMojo", body);
+    }
+
+    private void createDeep(int depth) {
+        StringBuilder body = new StringBuilder();
+        addParameter(body, "Level0", "level");
+        addClass("DeepMojo", "@Mojo(name = \"deep\")", "AbstractMojo", body);
+        for (int i = 0; i < depth; i++) {
+            body = new StringBuilder();
+            addParameter(body, "String", "name");
+            addParameter(body, "int", "count");
+            if (i + 1 < depth) {
+                addParameter(body, "Level" + (i + 1), "next");
+                addParameter(body, "java.util.List<Level" + (i + 1) + ">", "items");
+            }
+            addClass("Level" + i, "", null, body);
+        }
+    }
+
+    private void createSharedBase(int nrMojos) {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            addParameter(body, getSimpleType(i), "base" + i);
+        }
+        addMode();
+        addClass("BaseMojo", "", "AbstractMojo", body);
+        for (int i = 0; i < nrMojos; i++) {
+            body = new StringBuilder();
+            addParameter(body, "String", "name");
+            addParameter(body, "boolean", "skip");
+            addClass("Goal" + i + "Mojo", "@Mojo(name = \"goal" + i + "\")", "BaseMojo", body);
+        }
+    }
+
+    private String getSimpleType(int i) {
+        switch (i % 5) {
+            case 0:
+                return "String";
+            case 1:
+                return "int";
+            case 2:
+                return "Boolean";
+            case 3:
+                return "java.util.List<String>";
+            default:
+                return "Mode";
+        }
+    }
+
+    private void addMode() {
+        addSource("Mode", "public enum Mode { FAST, SLOW, OFF }\n");
+    }
+
+    private void addParameter(StringBuilder body, String type, String name) {
+        String doc = docStyle.getDoc(paramIdx++);
+        if (doc != null) {
+            body.append("    /**\n");
+            for (String line : doc.split("\n")) {
+                body.append("     * ").append(line).append('\n');
+            }
+            body.append("     */\n");
+        }
+        body.append("    @Parameter\n    ").append(type).append(' ').append(name).append(";\n\n");
+    }
+
+    // Classes without a mojo annotation which extend AbstractMojo are abstract base classes
+    private void addClass(String name, String annotation, String superClass, StringBuilder body) {
+        boolean abstractClass = annotation.length() == 0 && "AbstractMojo".equals(superClass);
+        StringBuilder src = new StringBuilder();
+        src.append("import org.apache.maven.plugin.AbstractMojo;\n")
+           .append("import org.apache.maven.plugins.annotations.Mojo;\n")
+           .append("import org.apache.maven.plugins.annotations.Parameter;\n\n")
+           .append(annotation).append('\n')
+           .append("public ").append(abstractClass ? "abstract " : "")
+           .append("class ").append(name)
+           .append(superClass != null ? " extends " + superClass : "").append(" {\n\n")
+           .append(body);
+        if (annotation.length() != 0) {
+            src.append("    public void execute() {}\n");
+        }
+        src.append("}\n");
+        addSource(name, src.toString());
+    }
+
+    private void addSource(String name, String content) {
+        String src = "package " + PACKAGE + ";\n\n" + content;
+        sources.add(new Source(PACKAGE + "/" + name, src));
+    }
+
+    // In memory source file
+    private static class Source extends SimpleJavaFileObject {
+
+        private final String content;
+
+        Source(String path, String content) {
+            super(URI.create("string:///" + path + Kind.SOURCE.extension), Kind.SOURCE);
+            this.content = content;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return content;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.jolokia.poblano.benchmark;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.jolokia.poblano.DocumentationSanitizer;
+import org.jolokia.poblano.XSDGenerator;
+import org.jolokia.poblano.model.Configuration;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * XSD generation for large models, including the documentation of all elements
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class XSDGeneratorBenchmark {
+
+    @Param({ "WIDE", "DEEP", "SHARED_BASE" })
+    public Shape shape;
+
+    @Param({ "200", "1000" })
+    public int size;
+
+    @Param({ "NONE", "PLAIN", "HTML", "TIDY" })
+    public DocStyle docStyle;
+
+    @Param({ "STREAMING", "DOM" })
+    public XSDGenerator.Mode mode;
+
+    @Param({ "PRETTY", "MINIFIED" })
+    public XSDGenerator.Format format;
+
+    // Whether the documentation cache is kept between invocations
+    @Param({ "false", "true" })
+    public boolean warmCache;
+
+    private Configuration config;
+    private DocumentationSanitizer sanitizer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        config = SyntheticModels.create(shape, size, docStyle);
+        sanitizer = new DocumentationSanitizer();
+    }
+
+    @Benchmark
+    public long generate() throws IOException {
+        XSDGenerator generator = new XSDGenerator(mode, warmCache ? sanitizer : new DocumentationSanitizer());
+        CountingOutputStream out = new CountingOutputStream();
+        generator.generate(out, "urn:poblano:benchmark", config, null, format, true);
+        return out.count;
+    }
+
+    // Discards the output, but counts the bytes so that the generation can't be optimized away
+    static class CountingOutputStream extends OutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
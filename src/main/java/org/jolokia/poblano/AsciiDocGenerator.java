@@ -0,0 +1,419 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import javax.xml.stream.*;
+
+import org.jolokia.poblano.model.ConfigElement;
+import org.jolokia.poblano.model.Configuration;
+import org.jolokia.poblano.model.EnumValueElement;
+
+/**
+ * Generates AsciiDoc documents for the mojos, which can be included in reference manuals.
+ *
+ * Each goal gets a page with a table of its own configuration elements. Parameters declared
+ * by a super class of the mojo and configuration types are written only once as separate
+ * fragments (<code>_mojos/&lt;class&gt;.adoc</code> and <code>_types/&lt;type&gt;.adoc</code>),
+ * which the goal pages pull in with <code>include::</code>.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+public class AsciiDocGenerator implements Generator {
+
+    // Directories for the fragments, relative to the goal pages
+    static final String TYPES_DIR = "_types";
+    static final String MOJOS_DIR = "_mojos";
+
+    private final DocumentationSanitizer sanitizer;
+    private final XMLInputFactory inputFactory;
+
+    public AsciiDocGenerator() {
+        this(new DocumentationSanitizer());
+    }
+
+    public AsciiDocGenerator(DocumentationSanitizer sanitizer) {
+        this.sanitizer = sanitizer;
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    /** {@inheritDoc} */
+    public String getName() {
+        return "asciidoc";
+    }
+
+    /** {@inheritDoc} */
+    public void generate(Configuration config, GeneratorContext context) throws IOException {
+        String dir = context.getOption(PoblanoOptions.ASCIIDOC_DIR, PoblanoOptions.DEFAULT_ASCIIDOC_DIR);
+
+        // Type names are global, so that all goals include the same fragment for a type
+        Map<ConfigElement, String> namedTypes = TypeNames.collectComplexTypes(config.getRootElements(), GoalFilter.ALL);
+        Map<String, String> typeNames = new HashMap<>();
+        for (Map.Entry<ConfigElement, String> entry : namedTypes.entrySet()) {
+            typeNames.put(entry.getKey().getType(), entry.getValue());
+        }
+        for (Map.Entry<ConfigElement, String> entry : namedTypes.entrySet()) {
+            write(context, dir + "/" + TYPES_DIR + "/" + entry.getValue() + ".adoc",
+                  createTypeFragment(entry.getKey(), typeNames));
+        }
+
+        Map<String, List<ConfigElement>> baseClassElements = collectBaseClassElements(config);
+        for (Map.Entry<String, List<ConfigElement>> entry : baseClassElements.entrySet()) {
+            write(context, dir + "/" + MOJOS_DIR + "/" + entry.getKey() + ".adoc",
+                  createBaseClassFragment(entry.getKey(), entry.getValue(), typeNames));
+        }
+
+        for (String mojo : config.getGoals()) {
+            write(context, dir + "/" + mojo + ".adoc", createGoalPage(config, mojo, typeNames, baseClassElements));
+        }
+    }
+
+    // ==========================================================================================
+
+    // Page of a goal with its own elements, followed by the parameters inherited from super classes
+    // and the types used. Anchors for types are set here, since they must be unique per goal.
+    private String createGoalPage(Configuration config, String mojo, Map<String, String> typeNames,
+                                  Map<String, List<ConfigElement>> baseClassElements) {
+        List<String> hierarchy = config.getHierarchy(mojo);
+        List<String> baseClasses = hierarchy.isEmpty() ? hierarchy : hierarchy.subList(1, hierarchy.size());
+        GoalFilter filter = GoalFilter.forGoal(config, mojo);
+        List<ConfigElement> ownElements = new ArrayList<>();
+        for (ConfigElement element : config.getRootElements()) {
+            if (filter.accepts(element) &&
+                !(baseClasses.contains(element.getDeclaringType()) && baseClassElements.containsKey(element.getDeclaringType()))) {
+                ownElements.add(element);
+            }
+        }
+
+        StringBuilder adoc = new StringBuilder();
+        adoc.append(":poblano-goal: ").append(mojo).append("\n\n")
+            .append("[[poblano-").append(mojo).append("]]\n")
+            .append(".Configuration of goal `").append(mojo).append("`\n");
+        startTable(adoc);
+        addRows(adoc, null, typeNames, filter, null, ownElements);
+        adoc.append("|===\n");
+
+        for (String baseClass : baseClasses) {
+            if (baseClassElements.containsKey(baseClass)) {
+                adoc.append("\ninclude::").append(MOJOS_DIR).append('/').append(baseClass).append(".adoc[]\n");
+            }
+        }
+        for (String typeName : TypeNames.collectComplexTypes(config.getRootElements(), filter).values()) {
+            adoc.append("\n[[").append(getTypeAnchor(mojo, typeName)).append("]]\n")
+                .append("include::").append(TYPES_DIR).append('/').append(typeName).append(".adoc[]\n");
+        }
+        return adoc.toString();
+    }
+
+    // The content of a type is the same for all goals
+    private String createTypeFragment(ConfigElement type, Map<String, String> typeNames) {
+        StringBuilder adoc = new StringBuilder();
+        adoc.append(".Configuration type `").append(getSimpleName(type.getType())).append("`\n");
+        startTable(adoc);
+        addRows(adoc, null, typeNames, GoalFilter.ALL, null, type.getChildren());
+        adoc.append("|===\n");
+        return adoc.toString();
+    }
+
+    private String createBaseClassFragment(String baseClass, List<ConfigElement> elements, Map<String, String> typeNames) {
+        StringBuilder adoc = new StringBuilder();
+        adoc.append(".Parameters inherited from `").append(getSimpleName(baseClass)).append("`\n");
+        startTable(adoc);
+        addRows(adoc, null, typeNames, GoalFilter.ALL, null, elements);
+        adoc.append("|===\n");
+        return adoc.toString();
+    }
+
+    // Root elements declared by super classes of mojos, grouped by the declaring class
+    private Map<String, List<ConfigElement>> collectBaseClassElements(Configuration config) {
+        Set<String> baseClasses = new HashSet<>();
+        for (String mojo : config.getGoals()) {
+            List<String> hierarchy = config.getHierarchy(mojo);
+            if (hierarchy.size() > 1) {
+                baseClasses.addAll(hierarchy.subList(1, hierarchy.size()));
+            }
+        }
+        Map<String, List<ConfigElement>> ret = new TreeMap<>();
+        for (ConfigElement element : config.getRootElements()) {
+            String declaringType = element.getDeclaringType();
+            if (declaringType != null && baseClasses.contains(declaringType)) {
+                List<ConfigElement> elements = ret.get(declaringType);
+                if (elements == null) {
+                    elements = new ArrayList<>();
+                    ret.put(declaringType, elements);
+                }
+                elements.add(element);
+            }
+        }
+        return ret;
+    }
+
+    // The goal is set as document attribute by the page including a fragment
+    private String getTypeAnchor(String mojo, String typeName) {
+        return "poblano-" + mojo + "-type-" + typeName;
+    }
+
+    // Unchanged files are skipped by the processor when writing the outputs
+    private void write(GeneratorContext context, String path, String content) throws IOException {
+        try (OutputStream out = context.createOutput(path)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void startTable(StringBuilder adoc) {
+        adoc.append("[cols=\"2,1,1,5\", options=\"header\"]\n")
+            .append("|===\n")
+            .append("| Element | Type | Default | Description\n");
+    }
+
+    // With type names given, configuration types are linked to their declaration. Otherwise
+    // they are expanded inline and back references refer to the path of their target.
+    private void addRows(StringBuilder adoc, Map<ConfigElement, String> paths, Map<String, String> typeNames,
+                         GoalFilter filter, String parentPath, List<ConfigElement> elements) {
+        for (ConfigElement element : elements) {
+            if (!filter.accepts(element)) {
+                continue;
+            }
+            String path = parentPath != null ? parentPath + "." + element.getName() : element.getName();
+            ConfigElement representative = element.isReference() ? element.getReference() : element;
+            String typeName = typeNames != null && TypeNames.isComplexType(representative) ?
+                typeNames.get(representative.getType()) : null;
+
+            StringBuilder description = new StringBuilder();
+            String doc = toAsciiDoc(element.getDocumentation());
+            if (doc != null) {
+                description.append(doc);
+            }
+            if (element.isEnum()) {
+                appendParagraph(description, "One of " + getEnumValues(element) + ".");
+            }
+            if (paths != null) {
+                paths.put(element, path);
+                String referencedPath = element.isReference() ? paths.get(element.getReference()) : null;
+                if (referencedPath != null) {
+                    appendParagraph(description, "Same configuration as `" + referencedPath + "`.");
+                }
+            }
+            if (element.getSince() != null) {
+                appendParagraph(description, "Since " + element.getSince() + ".");
+            }
+
+            String typeLabel = getTypeLabel(element);
+            adoc.append('\n')
+                .append("| `").append(path).append("`\n")
+                .append("| ").append(typeName != null ?
+                                         "<<poblano-{poblano-goal}-type-" + typeName + "," +
+                                         typeLabel.replace("<", "&lt;").replace(">", "&gt;") + ">>" :
+                                         typeLabel).append('\n')
+                .append("| ").append(hasDefault(element) ? "`" + escapeCell(element.getDefaultVal()) + "`" : "")
+                .append('\n')
+                .append("a| ").append(escapeCell(description.toString())).append('\n');
+
+            if (typeName == null && !element.isReference()) {
+                addRows(adoc, paths, typeNames, filter, path, element.getChildren());
+            }
+        }
+    }
+
+    // An empty default value means that no default has been set
+    private boolean hasDefault(ConfigElement element) {
+        return element.getDefaultVal() != null && element.getDefaultVal().length() != 0;
+    }
+
+    private String getTypeLabel(ConfigElement element) {
+        if (element.isMap()) {
+            return "Map";
+        } else if (element.isList()) {
+            return "List";
+        } else if (element.isArray()) {
+            return "Array";
+        }
+        return getSimpleName(element.getType());
+    }
+
+    // Type arguments are kept as they are
+    private String getSimpleName(String type) {
+        int generic = type.indexOf('<');
+        String raw = generic >= 0 ? type.substring(0, generic) : type;
+        return raw.substring(raw.lastIndexOf('.') + 1) + (generic >= 0 ? type.substring(generic) : "");
+    }
+
+    private String getEnumValues(ConfigElement element) {
+        StringBuilder ret = new StringBuilder();
+        for (EnumValueElement value : element.getEnumValues()) {
+            if (ret.length() != 0) {
+                ret.append(", ");
+            }
+            ret.append('`').append(value.getValue()).append('`');
+        }
+        return ret.toString();
+    }
+
+    private void appendParagraph(StringBuilder text, String paragraph) {
+        if (text.length() != 0) {
+            text.append("\n\n");
+        }
+        text.append(paragraph);
+    }
+
+    private String escapeCell(String text) {
+        return text.replace("|", "\\|");
+    }
+
+    // Convert the sanitized XHTML documentation to AsciiDoc. Unknown elements are dropped,
+    // but their text is kept
+    private String toAsciiDoc(String doc) {
+        String fragment = sanitizer.sanitize(doc);
+        if (fragment == null) {
+            return null;
+        }
+        StringBuilder adoc = new StringBuilder();
+        Deque<String> lists = new ArrayDeque<>();
+        boolean pre = false;
+        try {
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(new StringReader("<div>" + fragment + "</div>"));
+            try {
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = reader.getLocalName().toLowerCase();
+                        switch (name) {
+                            case "p":
+                                startBlock(adoc, lists.isEmpty());
+                                break;
+                            case "ul":
+                            case "ol":
+                                if (lists.isEmpty()) {
+                                    startBlock(adoc, true);
+                                }
+                                lists.push(name);
+                                break;
+                            case "li":
+                                startBlock(adoc, false);
+                                adoc.append(getListMarker(lists)).append(' ');
+                                break;
+                            case "pre":
+                                startBlock(adoc, true);
+                                adoc.append("----\n");
+                                pre = true;
+                                break;
+                            case "br":
+                                adoc.append(" +\n");
+                                break;
+                            default:
+                                adoc.append(getInlineMarker(name));
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        String name = reader.getLocalName().toLowerCase();
+                        switch (name) {
+                            case "ul":
+                            case "ol":
+                                lists.pop();
+                                break;
+                            case "pre":
+                                trimTrailingWhitespace(adoc);
+                                adoc.append("\n----");
+                                pre = false;
+                                break;
+                            default:
+                                adoc.append(getInlineMarker(name));
+                        }
+                    } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                        appendText(adoc, reader.getText(), pre);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            return sanitizer.toText(doc);
+        }
+        String ret = adoc.toString().trim();
+        return ret.length() != 0 ? ret : null;
+    }
+
+    // Start a block on a new line, separated by an empty line from the previous block if requested
+    private void startBlock(StringBuilder adoc, boolean separate) {
+        trimTrailingWhitespace(adoc);
+        if (adoc.length() == 0) {
+            return;
+        }
+        int newLines = 0;
+        for (int i = adoc.length() - 1; i >= 0 && adoc.charAt(i) == '\n'; i--) {
+            newLines++;
+        }
+        for (int i = newLines; i < (separate ? 2 : 1); i++) {
+            adoc.append('\n');
+        }
+    }
+
+    private String getListMarker(Deque<String> lists) {
+        StringBuilder marker = new StringBuilder();
+        char c = "ol".equals(lists.peek()) ? '.' : '*';
+        for (int i = 0; i < Math.max(lists.size(), 1); i++) {
+            marker.append(c);
+        }
+        return marker.toString();
+    }
+
+    private String getInlineMarker(String name) {
+        switch (name) {
+            case "code":
+            case "tt":
+            case "var":
+                return "`";
+            case "em":
+            case "i":
+                return "_";
+            case "strong":
+            case "b":
+                return "*";
+            case "sub":
+                return "~";
+            case "sup":
+                return "^";
+            default:
+                return "";
+        }
+    }
+
+    private void appendText(StringBuilder adoc, String text, boolean preformatted) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (preformatted) {
+                adoc.append(c);
+            } else if (Character.isWhitespace(c)) {
+                if (adoc.length() != 0 && !Character.isWhitespace(adoc.charAt(adoc.length() - 1))) {
+                    adoc.append(' ');
+                }
+            } else {
+                adoc.append(c);
+            }
+        }
+    }
+
+    private void trimTrailingWhitespace(StringBuilder adoc) {
+        while (adoc.length() != 0 && adoc.charAt(adoc.length() - 1) == ' ') {
+            adoc.setLength(adoc.length() - 1);
+        }
+    }
+}
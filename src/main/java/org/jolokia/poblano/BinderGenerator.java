@@ -0,0 +1,532 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.*;
+import javax.lang.model.type.*;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.JavaFileObject;
+
+import org.jolokia.poblano.model.ConfigElement;
+import org.jolokia.poblano.model.Configuration;
+
+/**
+ * Generates a binder class per mojo, which stream-parses a <code>&lt;configuration&gt;</code> block
+ * and assigns the mojo's parameters directly, without reflection. The structure is taken from the
+ * configuration model, the Java elements are only consulted for how a parameter can be assigned:
+ * Through a setter (preferred, like the Plexus configurator does) or an accessible field.
+ *
+ * Everything the binder can't handle on its own makes it return <code>false</code>, so that the
+ * caller applies the configuration with the standard configurator instead. These are elements
+ * without accessible setter or field, maps, types without a converter or accessible no-arg
+ * constructor, attributes (e.g. <code>implementation</code>), property expressions and relative
+ * files (which Maven resolves against the project's base directory).
+ *
+ * The generated code only depends on the JDK and the plugin's own classes.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+class BinderGenerator {
+
+    // Appended to the mojo's class name
+    static final String BINDER_SUFFIX = "PoblanoBinder";
+
+    // Value types with their conversion from the element text (given as "%s")
+    private static final Map<String, String> CONVERSIONS = new HashMap<>();
+    private static final Map<String, String> BOXED_TYPES = new HashMap<>();
+
+    static {
+        CONVERSIONS.put("java.lang.String", "%s");
+        for (String[] types : new String[][] {
+            { "boolean", "java.lang.Boolean" }, { "int", "java.lang.Integer" }, { "long", "java.lang.Long" },
+            { "short", "java.lang.Short" }, { "byte", "java.lang.Byte" }, { "float", "java.lang.Float" },
+            { "double", "java.lang.Double" }
+        }) {
+            CONVERSIONS.put(types[0], types[1] + ".valueOf(%s)");
+            CONVERSIONS.put(types[1], types[1] + ".valueOf(%s)");
+            BOXED_TYPES.put(types[0], types[1]);
+        }
+        CONVERSIONS.put("char", "character(%s)");
+        CONVERSIONS.put("java.lang.Character", "character(%s)");
+        BOXED_TYPES.put("char", "java.lang.Character");
+        CONVERSIONS.put("java.io.File", "file(%s)");
+        CONVERSIONS.put("java.math.BigInteger", "new java.math.BigInteger(%s)");
+        CONVERSIONS.put("java.math.BigDecimal", "new java.math.BigDecimal(%s)");
+    }
+
+    // Implementations created for collection interfaces, the same as used by Plexus
+    private static final Map<String, String> COLLECTION_IMPLEMENTATIONS = new HashMap<>();
+
+    static {
+        for (String type : Arrays.asList("java.util.Collection", "java.util.List", "java.util.ArrayList")) {
+            COLLECTION_IMPLEMENTATIONS.put(type, "java.util.ArrayList");
+        }
+        for (String type : Arrays.asList("java.util.Set", "java.util.HashSet")) {
+            COLLECTION_IMPLEMENTATIONS.put(type, "java.util.HashSet");
+        }
+        for (String type : Arrays.asList("java.util.SortedSet", "java.util.NavigableSet", "java.util.TreeSet")) {
+            COLLECTION_IMPLEMENTATIONS.put(type, "java.util.TreeSet");
+        }
+        COLLECTION_IMPLEMENTATIONS.put("java.util.LinkedHashSet", "java.util.LinkedHashSet");
+        COLLECTION_IMPLEMENTATIONS.put("java.util.LinkedList", "java.util.LinkedList");
+    }
+
+    private final ProcessingEnvironment processingEnv;
+    private final Elements elementUtils;
+    private final Types typeUtils;
+
+    BinderGenerator(ProcessingEnvironment processingEnv) {
+        this.processingEnv = processingEnv;
+        this.elementUtils = processingEnv.getElementUtils();
+        this.typeUtils = processingEnv.getTypeUtils();
+    }
+
+    /**
+     * Generate the binder for a mojo as source file
+     *
+     * @param config configuration model containing the mojo's configuration
+     * @param goal goal of the mojo
+     * @param mojoType the mojo class
+     * @param hierarchy the mojo class and all its super classes
+     * @param binderName qualified name of the binder class, which must be in the mojo's package
+     *                   so that package private fields can be assigned
+     * @return names of the mojo's parameters which can't be bound directly
+     * @throws IOException if the source file can't be written
+     */
+    List<String> generate(Configuration config, String goal, TypeElement mojoType, List<TypeElement> hierarchy,
+                          String binderName) throws IOException {
+        Source source = new Source(GoalFilter.forGoal(config, goal), elementUtils.getPackageOf(mojoType));
+        List<ConfigElement> roots = new ArrayList<>();
+        for (ConfigElement element : config.getRootElements()) {
+            if (source.filter.accepts(element)) {
+                roots.add(element);
+            }
+        }
+        List<String> unbound = source.addBindMethod("bind0", mojoType.getQualifiedName().toString(), hierarchy, roots);
+        // Methods for nested types are added while generating
+        for (int i = 0; i < source.pendingTypes.size(); i++) {
+            ConfigElement type = source.pendingTypes.get(i);
+            source.addBindMethod(source.typeMethods.get(type.getType()), type.getType(),
+                                 getClasses(getTypeElement(type.getType())), type.getChildren());
+        }
+
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(binderName, mojoType);
+        try (Writer writer = file.openWriter()) {
+            writer.write(createClass(binderName, goal, mojoType.getQualifiedName().toString(), source));
+        }
+        return unbound;
+    }
+
+    private String createClass(String binderName, String goal, String mojoName, Source source) {
+        int idx = binderName.lastIndexOf('.');
+        String simpleName = binderName.substring(idx + 1);
+        StringBuilder java = new StringBuilder();
+        java.append("// Generated by Poblano from the configuration of goal \"").append(goal).append("\", do not edit\n");
+        if (idx >= 0) {
+            java.append("package ").append(binderName.substring(0, idx)).append(";\n");
+        }
+        java.append("\n")
+            .append("import javax.xml.stream.XMLInputFactory;\n")
+            .append("import javax.xml.stream.XMLStreamConstants;\n")
+            .append("import javax.xml.stream.XMLStreamException;\n")
+            .append("import javax.xml.stream.XMLStreamReader;\n")
+            .append("\n")
+            .append("/**\n")
+            .append(" * Binds the configuration of goal <code>").append(goal).append("</code> to a {@link ")
+            .append(mojoName).append("} without reflection.\n")
+            .append(" * If a part of the configuration can't be bound directly, the configuration must be applied\n")
+            .append(" * by the standard configurator, which sets all parameters again.\n")
+            .append(" */\n")
+            .append("public final class ").append(simpleName).append(" {\n")
+            .append("\n")
+            .append("    private ").append(simpleName).append("() {\n")
+            .append("    }\n")
+            .append("\n")
+            .append("    /**\n")
+            .append("     * Bind a configuration block, whose root element is the configuration element\n")
+            .append("     *\n")
+            .append("     * @return true if the whole configuration has been bound, false if the standard configurator must be used\n")
+            .append("     */\n")
+            .append("    public static boolean bind(").append(mojoName).append(" mojo, java.io.Reader configuration) {\n")
+            .append("        try {\n")
+            .append("            XMLInputFactory factory = XMLInputFactory.newInstance();\n")
+            .append("            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);\n")
+            .append("            factory.setProperty(XMLInputFactory.IS_COALESCING, true);\n")
+            .append("            XMLStreamReader xml = factory.createXMLStreamReader(configuration);\n")
+            .append("            try {\n")
+            .append("                xml.nextTag();\n")
+            .append("                return bind(mojo, xml);\n")
+            .append("            } finally {\n")
+            .append("                xml.close();\n")
+            .append("            }\n")
+            .append("        } catch (XMLStreamException e) {\n")
+            .append("            return false;\n")
+            .append("        }\n")
+            .append("    }\n")
+            .append("\n")
+            .append("    /**\n")
+            .append("     * Bind a configuration block from a reader positioned at the start of the configuration element\n")
+            .append("     *\n")
+            .append("     * @return true if the whole configuration has been bound, false if the standard configurator must be used\n")
+            .append("     */\n")
+            .append("    public static boolean bind(").append(mojoName).append(" mojo, XMLStreamReader xml) {\n")
+            .append("        try {\n")
+            .append("            bind0(xml, mojo);\n")
+            .append("            return true;\n")
+            .append("        } catch (XMLStreamException | Fallback | RuntimeException e) {\n")
+            .append("            return false;\n")
+            .append("        }\n")
+            .append("    }\n")
+            .append(source.methods)
+            .append("\n")
+            .append("    // Name of the next child element or null at the end of the parent element\n")
+            .append("    private static String nextElement(XMLStreamReader xml) throws XMLStreamException, Fallback {\n")
+            .append("        if (xml.nextTag() != XMLStreamConstants.START_ELEMENT) {\n")
+            .append("            return null;\n")
+            .append("        }\n")
+            .append("        if (xml.getAttributeCount() != 0) {\n")
+            .append("            throw new Fallback();\n")
+            .append("        }\n")
+            .append("        return xml.getLocalName();\n")
+            .append("    }\n")
+            .append("\n")
+            .append("    // Expressions are evaluated by Maven\n")
+            .append("    private static String text(XMLStreamReader xml) throws XMLStreamException, Fallback {\n")
+            .append("        String value = xml.getElementText().trim();\n")
+            .append("        if (value.contains(\"${\")) {\n")
+            .append("            throw new Fallback();\n")
+            .append("        }\n")
+            .append("        return value;\n")
+            .append("    }\n")
+            .append("\n")
+            .append("    // Relative files are resolved against the base directory by Maven\n")
+            .append("    private static java.io.File file(String value) throws Fallback {\n")
+            .append("        java.io.File file = new java.io.File(value);\n")
+            .append("        if (!file.isAbsolute()) {\n")
+            .append("            throw new Fallback();\n")
+            .append("        }\n")
+            .append("        return file;\n")
+            .append("    }\n")
+            .append("\n")
+            .append("    private static char character(String value) throws Fallback {\n")
+            .append("        if (value.length() != 1) {\n")
+            .append("            throw new Fallback();\n")
+            .append("        }\n")
+            .append("        return value.charAt(0);\n")
+            .append("    }\n")
+            .append("\n")
+            .append("    private static final class Fallback extends Exception {\n")
+            .append("        Fallback() {\n")
+            .append("            super(null, null, false, false);\n")
+            .append("        }\n")
+            .append("    }\n")
+            .append("}\n");
+        return java.toString();
+    }
+
+    // ==========================================================================================
+
+    // Source of the bind methods, one per configuration type
+    private final class Source {
+
+        private final GoalFilter filter;
+        private final PackageElement pkg;
+        private final StringBuilder methods = new StringBuilder();
+
+        // Configuration types mapped to the name of their bind method. The content of a type is
+        // the same wherever it is used, so the first element found represents the type.
+        private final Map<String, String> typeMethods = new HashMap<>();
+        private final List<ConfigElement> pendingTypes = new ArrayList<>();
+
+        private Source(GoalFilter filter, PackageElement pkg) {
+            this.filter = filter;
+            this.pkg = pkg;
+        }
+
+        // Returns the names of elements which can't be bound
+        private List<String> addBindMethod(String methodName, String targetType, List<TypeElement> classes,
+                                           List<ConfigElement> elements) {
+            List<String> unbound = new ArrayList<>();
+            methods.append("\n")
+                   .append("    private static void ").append(methodName).append("(XMLStreamReader xml, ")
+                   .append(targetType).append(" target)\n")
+                   .append("        throws XMLStreamException, Fallback {\n")
+                   .append("        for (String name = nextElement(xml); name != null; name = nextElement(xml)) {\n")
+                   .append("            switch (name) {\n");
+            for (ConfigElement element : elements) {
+                if (!filter.accepts(element)) {
+                    continue;
+                }
+                String code = createAssignment(classes, element);
+                if (code == null) {
+                    unbound.add(element.getName());
+                    continue;
+                }
+                methods.append("                case \"").append(element.getName()).append("\": {\n")
+                       .append(code)
+                       .append("                    break;\n")
+                       .append("                }\n");
+            }
+            methods.append("                default:\n")
+                   .append("                    throw new Fallback();\n")
+                   .append("            }\n")
+                   .append("        }\n")
+                   .append("    }\n");
+            return unbound;
+        }
+
+        // Statements for parsing and assigning a parameter or null if it can't be bound
+        private String createAssignment(List<TypeElement> classes, ConfigElement element) {
+            VariableElement field = findField(classes, element.getName());
+            if (field == null) {
+                return null;
+            }
+            String indent = "                    ";
+            String setter = getSetter(classes, field);
+            String target = setter != null ? "target." + setter + "(%s);\n" : "target." + element.getName() + " = %s;\n";
+            if (setter == null && (!isAccessible(field) || field.getModifiers().contains(Modifier.FINAL))) {
+                return null;
+            }
+
+            if (element.isListLike()) {
+                return createListAssignment(field, element, indent, target);
+            }
+            String value = createValue(element, "text(xml)");
+            if (value != null) {
+                return indent + String.format(target, value);
+            }
+            String bean = createBean(element, "value", indent);
+            return bean != null ? bean + indent + String.format(target, "value") : null;
+        }
+
+        // Lists and arrays are collected item by item. Only items with the name from the model are accepted.
+        private String createListAssignment(VariableElement field, ConfigElement element, String indent, String target) {
+            List<ConfigElement> items = element.getChildren();
+            if (items.size() != 1 || !filter.accepts(items.get(0))) {
+                return null;
+            }
+            ConfigElement item = items.get(0);
+            String itemType = item.getType();
+            String boxedType = BOXED_TYPES.containsKey(itemType) ? BOXED_TYPES.get(itemType) : itemType;
+            String value = createValue(item, "text(xml)");
+            String bean = value == null ? createBean(item, "item", indent + "        ") : null;
+            if (value == null && bean == null) {
+                return null;
+            }
+
+            StringBuilder code = new StringBuilder();
+            String listType;
+            if (element.isArray()) {
+                TypeMirror fieldType = field.asType();
+                if (fieldType.getKind() != TypeKind.ARRAY ||
+                    !((ArrayType) fieldType).getComponentType().toString().equals(itemType) ||
+                    itemType.contains("<")) {
+                    return null;
+                }
+                listType = "java.util.ArrayList<" + boxedType + ">";
+            } else {
+                String implementation = getCollectionImplementation(field, itemType);
+                if (implementation == null) {
+                    return null;
+                }
+                listType = implementation + "<" + itemType + ">";
+            }
+            code.append(indent).append(listType).append(" items = new ").append(listType).append("();\n")
+                .append(indent).append("for (String itemName = nextElement(xml); itemName != null; itemName = nextElement(xml)) {\n")
+                .append(indent).append("    if (!\"").append(item.getName()).append("\".equals(itemName)) {\n")
+                .append(indent).append("        throw new Fallback();\n")
+                .append(indent).append("    }\n");
+            if (value != null) {
+                code.append(indent).append("    items.add(").append(value).append(");\n");
+            } else {
+                code.append(indent).append("    {\n")
+                    .append(bean)
+                    .append(indent).append("        items.add(item);\n")
+                    .append(indent).append("    }\n");
+            }
+            code.append(indent).append("}\n");
+
+            if (element.isArray()) {
+                if (BOXED_TYPES.containsKey(itemType)) {
+                    code.append(indent).append(itemType).append("[] value = new ").append(itemType).append("[items.size()];\n")
+                        .append(indent).append("for (int i = 0; i < value.length; i++) {\n")
+                        .append(indent).append("    value[i] = items.get(i);\n")
+                        .append(indent).append("}\n");
+                } else {
+                    code.append(indent).append(itemType).append("[] value = items.toArray(new ").append(itemType)
+                        .append("[items.size()]);\n");
+                }
+                code.append(indent).append(String.format(target, "value"));
+            } else {
+                code.append(indent).append(String.format(target, "items"));
+            }
+            return code.toString();
+        }
+
+        // Expression converting the text to a simple value or null if this is not a simple value
+        private String createValue(ConfigElement element, String text) {
+            if (element.isEnum()) {
+                return isAccessibleType(element.getType()) ? element.getType() + ".valueOf(" + text + ")" : null;
+            }
+            if (element.isComplexType() || element.isReference() || element.isMap() || element.isListLike()) {
+                return null;
+            }
+            String conversion = CONVERSIONS.get(element.getType());
+            return conversion != null ? String.format(conversion, text) : null;
+        }
+
+        // Statements creating a configuration object in the given variable and binding its content
+        private String createBean(ConfigElement element, String variable, String indent) {
+            ConfigElement type = element.isReference() ? element.getReference() : element;
+            if (!type.isComplexType() || type.isMap() || type.isListLike() || !isInstantiable(type.getType())) {
+                return null;
+            }
+            String method = typeMethods.get(type.getType());
+            if (method == null) {
+                method = "bind" + (typeMethods.size() + 1);
+                typeMethods.put(type.getType(), method);
+                pendingTypes.add(type);
+            }
+            return indent + type.getType() + " " + variable + " = new " + type.getType() + "();\n" +
+                   indent + method + "(xml, " + variable + ");\n";
+        }
+
+        // Collection created for a field or null if the field's item type doesn't match the model
+        private String getCollectionImplementation(VariableElement field, String itemType) {
+            if (field.asType().getKind() != TypeKind.DECLARED) {
+                return null;
+            }
+            DeclaredType fieldType = (DeclaredType) field.asType();
+            List<? extends TypeMirror> arguments = fieldType.getTypeArguments();
+            if (arguments.size() == 1) {
+                String argument = arguments.get(0).toString();
+                if (!argument.equals(itemType) && !argument.equals("? extends " + itemType)) {
+                    return null;
+                }
+            } else if (arguments.size() != 0 || !"java.lang.String".equals(itemType)) {
+                return null;
+            }
+            TypeElement fieldClass = (TypeElement) fieldType.asElement();
+            String implementation = COLLECTION_IMPLEMENTATIONS.get(fieldClass.getQualifiedName().toString());
+            if (implementation == null && isInstantiable(fieldClass.getQualifiedName().toString())) {
+                implementation = fieldClass.getQualifiedName().toString();
+            }
+            return implementation;
+        }
+
+        // Public members are accessible, package private and protected ones only from the same package
+        private boolean isAccessible(Element member) {
+            Set<Modifier> modifiers = member.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC)) {
+                return false;
+            }
+            return modifiers.contains(Modifier.PUBLIC) || pkg.equals(elementUtils.getPackageOf(member));
+        }
+
+        // All classes mentioned in a type, including its type arguments, must be accessible
+        private boolean isAccessibleType(String type) {
+            for (String part : type.replace("? extends ", "").split("[<>,]")) {
+                String name = part.trim();
+                if (name.length() == 0) {
+                    continue;
+                }
+                TypeElement element = elementUtils.getTypeElement(name);
+                if (element == null) {
+                    return false;
+                }
+                for (Element el = element; el instanceof TypeElement; el = el.getEnclosingElement()) {
+                    if (el.getModifiers().contains(Modifier.PRIVATE) ||
+                        (!el.getModifiers().contains(Modifier.PUBLIC) && !pkg.equals(elementUtils.getPackageOf(el)))) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        // Concrete, accessible class with an accessible no-arg constructor
+        private boolean isInstantiable(String type) {
+            TypeElement element = getTypeElement(type);
+            if (element == null || element.getKind() != ElementKind.CLASS ||
+                element.getModifiers().contains(Modifier.ABSTRACT) || !isAccessibleType(type) ||
+                (element.getEnclosingElement() instanceof TypeElement && !element.getModifiers().contains(Modifier.STATIC))) {
+                return false;
+            }
+            for (ExecutableElement constructor : ElementFilter.constructorsIn(element.getEnclosedElements())) {
+                if (constructor.getParameters().isEmpty()) {
+                    return isAccessible(constructor);
+                }
+            }
+            return false;
+        }
+
+        // Setter taking the field's type, like looked up by the Plexus configurator
+        private String getSetter(List<TypeElement> classes, VariableElement field) {
+            String name = field.getSimpleName().toString();
+            String setterName = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            for (TypeElement type : classes) {
+                for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+                    if (method.getSimpleName().contentEquals(setterName) && method.getParameters().size() == 1 &&
+                        isAccessible(method) &&
+                        typeUtils.isSameType(typeUtils.erasure(method.getParameters().get(0).asType()),
+                                             typeUtils.erasure(field.asType()))) {
+                        return setterName;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    // ==========================================================================================
+
+    private VariableElement findField(List<TypeElement> classes, String name) {
+        for (TypeElement type : classes) {
+            for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+                if (field.getSimpleName().contentEquals(name)) {
+                    return field;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Class for a type as given in the model, i.e. with type arguments
+    private TypeElement getTypeElement(String type) {
+        int idx = type.indexOf('<');
+        return elementUtils.getTypeElement(idx >= 0 ? type.substring(0, idx) : type);
+    }
+
+    // The class and its super classes
+    private List<TypeElement> getClasses(TypeElement type) {
+        List<TypeElement> ret = new ArrayList<>();
+        while (type != null) {
+            ret.add(type);
+            TypeMirror superclass = type.getSuperclass();
+            type = superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,490 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.*;
+import javax.lang.model.type.*;
+import javax.lang.model.util.ElementFilter;
+
+import org.apache.maven.plugins.annotations.Parameter;
+import org.jolokia.poblano.TypeClassifier.Kind;
+import org.jolokia.poblano.annotation.PoblanoElement;
+import org.jolokia.poblano.annotation.PoblanoIgnore;
+import org.jolokia.poblano.model.ConfigElement;
+import org.jolokia.poblano.model.EnumValueElement;
+
+/**
+ * Collects the configuration relevant data of a type and all types reachable from it as
+ * {@link TypeRecord}s. This is the only part of building the model which needs the compiler's
+ * elements and types, so it has to run on the compiler thread. The configuration elements are
+ * created from the records by the {@link ModelBuilder}.
+ *
+ * The type graph is walked iteratively with a work list, so that deeply nested configuration
+ * does not exhaust the call stack. Generic configuration types are walked with their type
+ * arguments substituted (see {@link TypeResolver}), so each parameterization gets its own record.
+ *
+ * An extractor lives for the whole processor run. As the compiler may hand out new element
+ * instances in every round, all caches are keyed by the types' qualified names.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+class ConfigExtractor {
+
+    private final ProcessingEnvironment processingEnv;
+    private final TypeClassifier classifier;
+    private final JavadocCache javadocs;
+    private final TypeResolver resolver;
+    private final Metrics metrics;
+
+    // Records of all (parameterized) types collected so far, keyed by their name including the type arguments
+    private final Map<String, TypeRecord> records = new HashMap<>();
+
+    // Values of enum types, shared by all fields of this type
+    private final Map<String, List<EnumValueElement>> enumValues = new HashMap<>();
+
+    // Digests of the configuration relevant parts of a type, used for fingerprinting.
+    // Only signatures of completely resolved types are kept.
+    private final Map<String, TypeSignature> typeSignatures = new HashMap<>();
+
+    ConfigExtractor(ProcessingEnvironment processingEnv, TypeClassifier classifier) {
+        this(processingEnv, classifier, Metrics.DISABLED);
+    }
+
+    ConfigExtractor(ProcessingEnvironment processingEnv, TypeClassifier classifier, Metrics metrics) {
+        this(processingEnv, classifier, new JavadocCache(processingEnv, metrics), metrics);
+    }
+
+    ConfigExtractor(ProcessingEnvironment processingEnv, TypeClassifier classifier, JavadocCache javadocs, Metrics metrics) {
+        this.processingEnv = processingEnv;
+        this.classifier = classifier;
+        this.javadocs = javadocs;
+        this.resolver = new TypeResolver(processingEnv, metrics);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Drop everything referring to elements or types of the previous round. Caches holding
+     * only model data are kept.
+     */
+    void nextRound() {
+        resolver.nextRound();
+    }
+
+    /**
+     * Get a mojo class and its super classes, with the type arguments given to the super classes
+     *
+     * @param mojoType the mojo class
+     * @return types to extract, starting with the mojo class
+     */
+    List<DeclaredType> getHierarchy(TypeElement mojoType) {
+        return resolver.getHierarchy(mojoType);
+    }
+
+    /**
+     * Collect the records of a parameterized type and all types reachable from its parameters.
+     * Records are kept for the whole run, so every type is collected only once, no matter how
+     * many fields or mojos use it.
+     *
+     * @param rootType type to collect
+     * @return record of the given type
+     */
+    TypeRecord collect(DeclaredType rootType) {
+        Deque<DeclaredType> toVisit = new ArrayDeque<>();
+        TypeRecord ret = lookup(rootType, toVisit);
+        while (!toVisit.isEmpty()) {
+            DeclaredType type = toVisit.poll();
+            TypeRecord record = records.get(resolver.key(type));
+            for (TypeResolver.Member member : resolver.getFields(type)) {
+                VariableElement field = member.getField();
+                Parameter paramAnno = field.getAnnotation(Parameter.class);
+                if (paramAnno != null && field.getAnnotation(PoblanoIgnore.class) == null) {
+                    record.add(createField(field, member.getType(), paramAnno, toVisit));
+                }
+            }
+        }
+        return ret;
+    }
+
+    // Record of a type, created empty and queued for collecting its fields if not known yet
+    private TypeRecord lookup(DeclaredType type, Deque<DeclaredType> toVisit) {
+        String key = resolver.key(type);
+        TypeRecord ret = records.get(key);
+        if (ret == null) {
+            metrics.count("types.visited");
+            ret = new TypeRecord(key, key((TypeElement) type.asElement()));
+            records.put(key, ret);
+            toVisit.add(type);
+        } else {
+            metrics.count("types.reused");
+        }
+        return ret;
+    }
+
+    private TypeRecord.Field createField(VariableElement field, TypeMirror fieldType, Parameter paramAnno,
+                                         Deque<DeclaredType> toVisit) {
+        Kind kind = classifier.classify(fieldType);
+        String name = extractName(field);
+        List<EnumValueElement> enumValueElements = null;
+        String itemName = null;
+        String itemType = null;
+        TypeRecord complexType = null;
+        if (kind == Kind.ENUM) {
+            enumValueElements = extractEnumValues((DeclaredType) fieldType);
+        } else {
+            // If a list kind of element there is an extra config element for the list type
+            if (kind == Kind.ARRAY || kind == Kind.COLLECTION) {
+                TypeMirror listItemType = extractListElementType(fieldType, kind);
+                if (listItemType == null) {
+                    listItemType = processingEnv.getElementUtils().getTypeElement("java.lang.String").asType();
+                }
+                itemType = listItemType.toString();
+                itemName = extractItemName(field, name, listItemType);
+            }
+            // Check for a complex type to decent into
+            DeclaredType nestedType = extractComplexType(fieldType, kind);
+            if (nestedType != null) {
+                complexType = lookup(nestedType, toVisit);
+            }
+        }
+        return new TypeRecord.Field(name, extractType(fieldType, kind), kind, paramAnno.defaultValue(),
+                                    paramAnno.property(), javadocs.get(field), enumValueElements,
+                                    itemName, itemType, complexType);
+    }
+
+    /**
+     * Calculate a fingerprint over all sources the configuration of a mojo is extracted from:
+     * The mojo class with its super classes and all types reachable from their parameters.
+     * Anything which influences the extracted configuration (parameter names, types, annotations
+     * and documentation) is included.
+     *
+     * @param mojoGoal goal of the mojo
+     * @param hierarchy mojo class and its super classes
+     * @return fingerprint as hex string
+     */
+    String fingerprint(String mojoGoal, List<TypeElement> hierarchy) {
+        MessageDigest digest = createDigest();
+        update(digest, mojoGoal);
+        Set<String> visited = new HashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>(keys(hierarchy));
+        while (!toVisit.isEmpty()) {
+            String type = toVisit.poll();
+            if (visited.add(type)) {
+                TypeSignature signature = getTypeSignature(type);
+                update(digest, type);
+                digest.update(signature.digest);
+                toVisit.addAll(signature.referencedTypes);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Check whether all types the configuration of a mojo is extracted from are resolved. Types
+     * which are generated by other processors in a later round are not known yet, so the mojo
+     * would be extracted with an incomplete model.
+     *
+     * @param hierarchy mojo class and its super classes
+     * @return true if neither a super class nor a type reachable from a parameter is unresolved
+     */
+    boolean isComplete(List<TypeElement> hierarchy) {
+        for (TypeElement type : hierarchy) {
+            if (type.getSuperclass().getKind() == TypeKind.ERROR) {
+                return false;
+            }
+        }
+        Set<String> visited = new HashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>(keys(hierarchy));
+        while (!toVisit.isEmpty()) {
+            String type = toVisit.poll();
+            if (visited.add(type)) {
+                TypeSignature signature = getTypeSignature(type);
+                if (!signature.complete) {
+                    return false;
+                }
+                toVisit.addAll(signature.referencedTypes);
+            }
+        }
+        return true;
+    }
+
+    // Signatures are kept by name, the type is looked up in the current round only if needed
+    private TypeSignature getTypeSignature(String key) {
+        TypeSignature signature = typeSignatures.get(key);
+        if (signature == null) {
+            TypeElement type = processingEnv.getElementUtils().getTypeElement(key);
+            if (type == null) {
+                return new TypeSignature(new byte[0], Collections.<String>emptyList(), false);
+            }
+            metrics.count("types.fingerprinted");
+            signature = createTypeSignature(type);
+            if (signature.complete) {
+                typeSignatures.put(key, signature);
+            }
+        }
+        return signature;
+    }
+
+    private List<String> keys(List<TypeElement> types) {
+        List<String> ret = new ArrayList<>();
+        for (TypeElement type : types) {
+            ret.add(key(type));
+        }
+        return ret;
+    }
+
+    private TypeSignature createTypeSignature(TypeElement type) {
+        MessageDigest digest = createDigest();
+        List<String> referencedTypes = new ArrayList<>();
+        boolean complete = true;
+        // Type arguments given to the super class influence the super class' configuration
+        TypeMirror superclass = type.getSuperclass();
+        update(digest, superclass.toString());
+        collectReferencedTypes(superclass, referencedTypes, new HashSet<TypeMirror>());
+        if (type.getKind() == ElementKind.ENUM) {
+            for (Element valueElement : type.getEnclosedElements()) {
+                if (valueElement.getKind() == ElementKind.ENUM_CONSTANT) {
+                    update(digest, valueElement.getSimpleName().toString());
+                    update(digest, javadocs.get(valueElement).getRaw());
+                }
+            }
+        }
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            Parameter paramAnno = field.getAnnotation(Parameter.class);
+            if (paramAnno == null) {
+                continue;
+            }
+            boolean ignore = field.getAnnotation(PoblanoIgnore.class) != null;
+            PoblanoElement poblanoElement = field.getAnnotation(PoblanoElement.class);
+            update(digest, extractName(field));
+            update(digest, field.asType().toString());
+            update(digest, String.valueOf(ignore));
+            update(digest, paramAnno.name());
+            update(digest, paramAnno.alias());
+            update(digest, paramAnno.property());
+            update(digest, paramAnno.defaultValue());
+            update(digest, String.valueOf(paramAnno.required()));
+            update(digest, String.valueOf(paramAnno.readonly()));
+            update(digest, poblanoElement != null ? poblanoElement.value() : null);
+            update(digest, javadocs.get(field).getRaw());
+            if (!ignore) {
+                complete &= !containsError(field.asType());
+                collectReferencedTypes(field.asType(), referencedTypes, new HashSet<TypeMirror>());
+            }
+        }
+        return new TypeSignature(digest.digest(), referencedTypes, complete);
+    }
+
+    // All non plain classes within a type, including type arguments and bounds, since type
+    // arguments get substituted into generic configuration classes
+    private void collectReferencedTypes(TypeMirror type, List<String> referencedTypes, Set<TypeMirror> visitedVariables) {
+        switch (type.getKind()) {
+            case DECLARED: {
+                DeclaredType declared = (DeclaredType) type;
+                if (classifier.classify(type) != Kind.PLAIN) {
+                    referencedTypes.add(key((TypeElement) declared.asElement()));
+                }
+                for (TypeMirror arg : declared.getTypeArguments()) {
+                    collectReferencedTypes(arg, referencedTypes, visitedVariables);
+                }
+                break;
+            }
+            case ARRAY:
+                collectReferencedTypes(((ArrayType) type).getComponentType(), referencedTypes, visitedVariables);
+                break;
+            case WILDCARD:
+            case TYPEVAR: {
+                // Recursive bounds like "T extends Comparable<T>" are followed only once
+                if (type.getKind() == TypeKind.WILDCARD || visitedVariables.add(type)) {
+                    TypeMirror bound = resolver.normalize(type);
+                    if (bound != type) {
+                        collectReferencedTypes(bound, referencedTypes, visitedVariables);
+                    }
+                }
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    // Unresolved type, possibly nested as array component or type argument
+    private boolean containsError(TypeMirror type) {
+        switch (type.getKind()) {
+            case ERROR:
+                return true;
+            case ARRAY:
+                return containsError(((ArrayType) type).getComponentType());
+            case DECLARED:
+                for (TypeMirror arg : ((DeclaredType) type).getTypeArguments()) {
+                    if (containsError(arg)) {
+                        return true;
+                    }
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    // Digest of a single type together with the types it refers to
+    private static final class TypeSignature {
+        private final byte[] digest;
+        // Qualified names, since elements are only valid within a round
+        private final List<String> referencedTypes;
+        // false if a parameter's type couldn't be resolved (yet)
+        private final boolean complete;
+
+        private TypeSignature(byte[] digest, List<String> referencedTypes, boolean complete) {
+            this.digest = digest;
+            this.referencedTypes = referencedTypes;
+            this.complete = complete;
+        }
+    }
+
+    // Cache key, stable across rounds
+    private String key(TypeElement type) {
+        return type.getQualifiedName().toString();
+    }
+
+    private MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("No SHA-1 digest available", e);
+        }
+    }
+
+    // Values are length prefixed so that different sequences of values always give different digests
+    private void update(MessageDigest digest, String value) {
+        if (value == null) {
+            digest.update((byte) 0);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            digest.update((byte) 1);
+            digest.update(new byte[] {
+                (byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16), (byte) (bytes.length >>> 8), (byte) bytes.length
+            });
+            digest.update(bytes);
+        }
+    }
+
+    private String toHex(byte[] bytes) {
+        StringBuilder ret = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            ret.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return ret.toString();
+    }
+
+    private List<EnumValueElement> extractEnumValues(DeclaredType enumType) {
+        TypeElement enumElement = (TypeElement) enumType.asElement();
+        List<EnumValueElement> ret = enumValues.get(key(enumElement));
+        if (ret == null) {
+            ret = new ArrayList<>();
+            for (Element valueElement : enumElement.getEnclosedElements()) {
+                if (valueElement.getKind() == ElementKind.ENUM_CONSTANT) {
+                    ret.add(new EnumValueElement(valueElement.getSimpleName().toString(),
+                                                 javadocs.get(valueElement).getBody()));
+                }
+            }
+            enumValues.put(key(enumElement), ret);
+        }
+        return ret;
+    }
+
+    private String extractItemName(VariableElement field, String name, TypeMirror listItemType) {
+        PoblanoElement poblanoElement = field.getAnnotation(PoblanoElement.class);
+        if (poblanoElement != null) {
+            return poblanoElement.value();
+        } else {
+            return itemTypeToName(name, listItemType);
+        }
+    }
+
+    private String itemTypeToName(String listName, TypeMirror listItemType) {
+        if (classifier.isComplexType(listItemType)) {
+            String itemTypeName = listItemType.toString();
+            int idx = itemTypeName.lastIndexOf(".");
+            if (idx > -1) {
+                return itemTypeName.substring(idx+1).toLowerCase();
+            } else {
+                return itemTypeName.toLowerCase();
+            }
+        } else {
+            // Try to determine singular form if list is named in plural
+            if (listName.endsWith("s")) {
+                return listName.substring(0,listName.length() - 1).toLowerCase();
+            } else {
+                return "item";
+            }
+        }
+    }
+
+    // Type to walk for nested configuration, with its type arguments
+    private DeclaredType extractComplexType(TypeMirror fieldType, Kind kind) {
+        if (kind == Kind.ARRAY || kind == Kind.COLLECTION) {
+            TypeMirror listElementType = extractListElementType(fieldType, kind);
+            if (listElementType != null && classifier.isComplexType(listElementType)) {
+                return (DeclaredType) listElementType;
+            }
+        } else if (kind == Kind.COMPLEX) {
+            return (DeclaredType) fieldType;
+        }
+        return null;
+    }
+
+    private String extractType(TypeMirror fieldType, Kind kind) {
+        switch (kind) {
+            case MAP:
+                return ConfigElement.MAP_TYPE;
+            case ARRAY:
+                return ConfigElement.ARRAY_TYPE;
+            case COLLECTION:
+                return ConfigElement.COLLECTION_TYPE;
+            default:
+                return fieldType.toString();
+        }
+    }
+
+    // The given type is either an array or a collection. Try to find out the type of their items:
+    // Declared types (with wildcards replaced by their bound), primitives or nested arrays.
+    // null if unknown, e.g. for raw collections or unbounded type variables.
+    private TypeMirror extractListElementType(TypeMirror fieldType, Kind kind) {
+        TypeMirror ret = null;
+        if (kind == Kind.ARRAY) {
+            ret = resolver.normalize(((ArrayType) fieldType).getComponentType());
+        } else if (kind == Kind.COLLECTION) {
+            List<? extends TypeMirror> typeArgs = ((DeclaredType) fieldType).getTypeArguments();
+            if (typeArgs.size() == 1) {
+                ret = resolver.normalize(typeArgs.get(0));
+            }
+        }
+        return ret != null && (ret.getKind() == TypeKind.DECLARED || ret.getKind() == TypeKind.ARRAY ||
+                               ret.getKind().isPrimitive()) ? ret : null;
+    }
+
+    private String extractName(Element el) {
+        return el.getSimpleName().toString();
+    }
+}
@@ -0,0 +1,364 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.*;
+
+import org.jolokia.poblano.model.ConfigElement;
+import org.jolokia.poblano.model.Configuration;
+import org.jolokia.poblano.model.EnumValueElement;
+
+/**
+ * Generates a static descriptor class for the configuration of a mojo, so that tools can
+ * look up parameter metadata at runtime without parsing <code>plugin.xml</code> or scanning
+ * classes.
+ *
+ * The elements of the goal are flattened in pre-order and each one is identified by its index.
+ * Names, types, defaults, properties, parents, children and enum values are stored in constant
+ * arrays, so that every lookup is an array access. The arrays are packed into string literals,
+ * which are unpacked once when the class is initialized. This keeps the class initializer
+ * far below the JVM's 64k code size limit, even for large configurations.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+final class DescriptorGenerator {
+
+    static final String DESCRIPTOR_SUFFIX = "PoblanoDescriptor";
+
+    // Separators within the packed string arrays
+    private static final char SEPARATOR = '\u0000';
+    private static final char NULL_VALUE = '\u0001';
+
+    // Characters per string literal, well below the class file's 64k limit for constants
+    private static final int CHUNK_SIZE = 8000;
+
+    private DescriptorGenerator() {
+    }
+
+    /**
+     * Create the source of the descriptor for a mojo
+     *
+     * @param config configuration model containing the mojo's configuration
+     * @param goal goal of the mojo
+     * @param mojoName qualified name of the mojo class
+     * @param descriptorName qualified name of the descriptor class
+     * @return source of the descriptor class
+     * @throws IllegalArgumentException if the configuration is too large for a descriptor
+     */
+    static String createSource(Configuration config, String goal, String mojoName, String descriptorName) {
+        Table table = new Table(GoalFilter.forGoal(config, goal));
+        table.addAll(config.getRootElements(), -1);
+        table.resolveChildren();
+
+        int idx = descriptorName.lastIndexOf('.');
+        String simpleName = descriptorName.substring(idx + 1);
+        StringBuilder java = new StringBuilder();
+        java.append("// Generated by Poblano from the configuration of goal \"").append(goal).append("\", do not edit\n");
+        if (idx >= 0) {
+            java.append("package ").append(descriptorName.substring(0, idx)).append(";\n");
+        }
+        java.append("\n")
+            .append("/**\n")
+            .append(" * Parameters of goal <code>").append(goal).append("</code> ({@link ").append(mojoName).append("}).\n")
+            .append(" * Elements are numbered in pre-order, nested elements of configuration types included.\n")
+            .append(" * Elements of a configuration type used at several places are listed once, all usages share them as children.\n")
+            .append(" */\n")
+            .append("public final class ").append(simpleName).append(" {\n")
+            .append("\n")
+            .append("    public static final String GOAL = ").append(literal(goal)).append(";\n")
+            .append("\n");
+        appendStrings(java, "NAMES", table.names);
+        appendStrings(java, "TYPES", table.types);
+        appendStrings(java, "DEFAULTS", table.defaults);
+        appendStrings(java, "PROPERTIES", table.properties);
+        appendStrings(java, "ENUM_VALUES", table.enumValues);
+        appendInts(java, "PARENTS", table.parents);
+        appendInts(java, "ROOTS", table.roots);
+        appendInts(java, "CHILD_OFFSETS", table.childOffsets);
+        appendInts(java, "CHILDREN", table.children);
+        appendInts(java, "ENUM_OFFSETS", table.enumOffsets);
+        java.append("\n")
+            .append("    private ").append(simpleName).append("() {\n")
+            .append("    }\n")
+            .append("\n")
+            .append("    /** @return number of elements */\n")
+            .append("    public static int size() {\n")
+            .append("        return NAMES.length;\n")
+            .append("    }\n")
+            .append("\n")
+            .append("    /** @return indices of the mojo's parameters */\n")
+            .append("    public static int[] getRoots() {\n")
+            .append("        return ROOTS.clone();\n")
+            .append("    }\n")
+            .append("\n")
+            .append("    public static String getName(int index) {\n")
+            .append("        return NAMES[index];\n")
+            .append("    }\n")
+            .append("\n")
+            .append("    /** @return Java type, or \"list\", \"array\" or \"map\" for collections */\n")
+            .append("    public static String getType(int index) {\n")
+            .append("        return TYPES[index];\n")
+            .append("    }\n")
+            .append("\n")
+            .append("    /** @return default value or null */\n")
+            .append("    public static String getDefaultValue(int index) {\n")
+            .append("        return DEFAULTS[index];\n")
+            .append("    }\n")
+            .append("\n")
+            .append("    /** @return user property of a parameter or null */\n")
+            .append("    public static String getProperty(int index) {\n")
+            .append("        return PROPERTIES[index];\n")
+            .append("    }\n")
+            .append("\n")
+            .append("    /** @return index of the enclosing element, -1 for parameters */\n")
+            .append("    public static int getParent(int index) {\n")
+            .append("        return PARENTS[index];\n")
+            .append("    }\n")
+            .append("\n")
+            .append("    public static int[] getChildren(int index) {\n")
+            .append("        return java.util.Arrays.copyOfRange(CHILDREN, CHILD_OFFSETS[index], CHILD_OFFSETS[index + 1]);\n")
+            .append("    }\n")
+            .append("\n")
+            .append("    /** @return allowed values, empty if the element is not an enum */\n")
+            .append("    public static String[] getEnumValues(int index) {\n")
+            .append("        return java.util.Arrays.copyOfRange(ENUM_VALUES, ENUM_OFFSETS[index], ENUM_OFFSETS[index + 1]);\n")
+            .append("    }\n")
+            .append("\n")
+            .append("    /**\n")
+            .append("     * Look up an element by its path\n")
+            .append("     *\n")
+            .append("     * @param path element names separated by dots, e.g. \"server.host\"\n")
+            .append("     * @return index or -1 if there is no such element\n")
+            .append("     */\n")
+            .append("    public static int indexOf(String path) {\n")
+            .append("        int[] candidates = ROOTS;\n")
+            .append("        int from = 0;\n")
+            .append("        int to = ROOTS.length;\n")
+            .append("        int found = -1;\n")
+            .append("        for (String name : path.split(\"\\\\.\", -1)) {\n")
+            .append("            found = -1;\n")
+            .append("            for (int i = from; i < to && found < 0; i++) {\n")
+            .append("                if (NAMES[candidates[i]].equals(name)) {\n")
+            .append("                    found = candidates[i];\n")
+            .append("                }\n")
+            .append("            }\n")
+            .append("            if (found < 0) {\n")
+            .append("                return -1;\n")
+            .append("            }\n")
+            .append("            candidates = CHILDREN;\n")
+            .append("            from = CHILD_OFFSETS[found];\n")
+            .append("            to = CHILD_OFFSETS[found + 1];\n")
+            .append("        }\n")
+            .append("        return found;\n")
+            .append("    }\n")
+            .append("\n")
+            .append("    /** @return index of the parameter set by a user property or -1 */\n")
+            .append("    public static int indexOfProperty(String property) {\n")
+            .append("        for (int root : ROOTS) {\n")
+            .append("            if (property.equals(PROPERTIES[root])) {\n")
+            .append("                return root;\n")
+            .append("            }\n")
+            .append("        }\n")
+            .append("        return -1;\n")
+            .append("    }\n")
+            .append("\n")
+            .append("    private static String[] strings(int size, String... chunks) {\n")
+            .append("        String[] ret = new String[size];\n")
+            .append("        if (size > 0) {\n")
+            .append("            String[] values = join(chunks).split(\"").append(escape(SEPARATOR)).append("\", -1);\n")
+            .append("            for (int i = 0; i < size; i++) {\n")
+            .append("                ret[i] = values[i].equals(\"").append(escape(NULL_VALUE)).append("\") ? null : values[i];\n")
+            .append("            }\n")
+            .append("        }\n")
+            .append("        return ret;\n")
+            .append("    }\n")
+            .append("\n")
+            .append("    // Each value is stored as a single char, shifted by one so that -1 can be represented\n")
+            .append("    private static int[] ints(String... chunks) {\n")
+            .append("        String packed = join(chunks);\n")
+            .append("        int[] ret = new int[packed.length()];\n")
+            .append("        for (int i = 0; i < ret.length; i++) {\n")
+            .append("            ret[i] = packed.charAt(i) - 1;\n")
+            .append("        }\n")
+            .append("        return ret;\n")
+            .append("    }\n")
+            .append("\n")
+            .append("    private static String join(String... chunks) {\n")
+            .append("        StringBuilder ret = new StringBuilder();\n")
+            .append("        for (String chunk : chunks) {\n")
+            .append("            ret.append(chunk);\n")
+            .append("        }\n")
+            .append("        return ret.toString();\n")
+            .append("    }\n")
+            .append("}\n");
+        return java.toString();
+    }
+
+    // ==========================================================================================
+
+    private static void appendStrings(StringBuilder java, String name, List<String> values) {
+        StringBuilder packed = new StringBuilder();
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                packed.append(SEPARATOR);
+            }
+            String value = values.get(i);
+            if (value != null) {
+                packed.append(value);
+            } else {
+                packed.append(NULL_VALUE);
+            }
+        }
+        java.append("    private static final String[] ").append(name).append(" = strings(").append(values.size());
+        appendChunks(java, packed);
+        java.append(");\n");
+    }
+
+    // Each value must fit into a single char after shifting it by one
+    private static void appendInts(StringBuilder java, String name, List<Integer> values) {
+        StringBuilder packed = new StringBuilder();
+        for (int value : values) {
+            if (value > Character.MAX_VALUE - 1) {
+                throw new IllegalArgumentException("Configuration too large for a descriptor: " + name + " contains " +
+                                                   value + ", at most " + (Character.MAX_VALUE - 1) + " is supported");
+            }
+            packed.append((char) (value + 1));
+        }
+        java.append("    private static final int[] ").append(name).append(" = ints(");
+        appendChunks(java, packed);
+        java.append(");\n");
+    }
+
+    private static void appendChunks(StringBuilder java, CharSequence packed) {
+        for (int i = 0; i < packed.length(); i += CHUNK_SIZE) {
+            java.append(java.charAt(java.length() - 1) == '(' ? "" : ",")
+                .append("\n        ")
+                .append(literal(packed.subSequence(i, Math.min(packed.length(), i + CHUNK_SIZE))));
+        }
+    }
+
+    // Java string literal, everything outside of printable ASCII is escaped
+    static String literal(CharSequence value) {
+        StringBuilder ret = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                ret.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                ret.append(escape(c));
+            } else {
+                ret.append(c);
+            }
+        }
+        return ret.append('"').toString();
+    }
+
+    // Control characters are octal escapes, as an escaped line feed would end the literal
+    private static String escape(char c) {
+        return c < 0x20 ? String.format("\\%03o", (int) c) : String.format("\\u%04x", (int) c);
+    }
+
+    // Flattened elements of a goal
+    private static final class Table {
+
+        private final GoalFilter filter;
+
+        private final Map<ConfigElement, Integer> indices = new IdentityHashMap<>();
+        // Reference targets outside of the goal, whose children have been flattened
+        private final Set<ConfigElement> expanded = Collections.newSetFromMap(new IdentityHashMap<ConfigElement, Boolean>());
+        private final List<ConfigElement> elements = new ArrayList<>();
+
+        private final List<String> names = new ArrayList<>();
+        private final List<String> types = new ArrayList<>();
+        private final List<String> defaults = new ArrayList<>();
+        private final List<String> properties = new ArrayList<>();
+        private final List<Integer> parents = new ArrayList<>();
+        private final List<Integer> roots = new ArrayList<>();
+        private final List<Integer> childOffsets = new ArrayList<>();
+        private final List<Integer> children = new ArrayList<>();
+        private final List<Integer> enumOffsets = new ArrayList<>();
+        private final List<String> enumValues = new ArrayList<>();
+
+        private Table(GoalFilter filter) {
+            this.filter = filter;
+        }
+
+        private void addAll(List<ConfigElement> elements, int parent) {
+            for (ConfigElement element : elements) {
+                if (filter.accepts(element)) {
+                    add(element, parent);
+                }
+            }
+        }
+
+        private void add(ConfigElement element, int parent) {
+            int index = elements.size();
+            indices.put(element, index);
+            elements.add(element);
+            names.add(element.getName());
+            types.add(element.getType());
+            defaults.add(emptyToNull(element.getDefaultVal()));
+            properties.add(element.getProperty());
+            parents.add(parent);
+            if (parent < 0) {
+                roots.add(index);
+            }
+            enumOffsets.add(enumValues.size());
+            if (element.isEnum()) {
+                for (EnumValueElement value : element.getEnumValues()) {
+                    enumValues.add(value.getValue());
+                }
+            }
+            if (!element.isReference()) {
+                addAll(element.getChildren(), index);
+            } else if (!isInView(element.getReference()) && expanded.add(element.getReference())) {
+                // The type's elements are held by an element of another goal, so they are listed here
+                addAll(element.getReference().getChildren(), index);
+            }
+        }
+
+        private boolean isInView(ConfigElement element) {
+            for (ConfigElement current = element; current != null; current = current.getParent()) {
+                if (!filter.accepts(current)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // References might point to elements flattened later, so all indices are known only afterwards
+        private void resolveChildren() {
+            for (ConfigElement element : elements) {
+                childOffsets.add(children.size());
+                ConfigElement target = element.isReference() ? element.getReference() : element;
+                for (ConfigElement child : target.getChildren()) {
+                    Integer index = indices.get(child);
+                    if (index != null) {
+                        children.add(index);
+                    }
+                }
+            }
+            childOffsets.add(children.size());
+            enumOffsets.add(enumValues.size());
+        }
+
+        private String emptyToNull(String value) {
+            return value != null && value.length() != 0 ? value : null;
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.*;
+
+import org.w3c.tidy.Tidy;
+
+/**
+ * Turns JavaDoc HTML into well formed XHTML fragments.
+ *
+ * Most documentation is plain text or uses only a handful of simple tags, which
+ * are normalized directly. Only HTML outside of this subset (unclosed list items,
+ * attributes, unknown tags or entities) is handed over to JTidy. The result is
+ * cached by content, so documentation shared by many elements (e.g. parameters
+ * inherited by many mojos) is sanitized only once.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+public class DocumentationSanitizer {
+
+    // Tags which are allowed within text
+    private static final Set<String> INLINE_TAGS = new HashSet<>(Arrays.asList(
+        "em", "strong", "b", "i", "code", "tt", "var", "sub", "sup"));
+
+    private static final Pattern TAG_PATTERN = Pattern.compile("<(/?)([a-zA-Z][a-zA-Z0-9]*)\\s*(/?)>");
+    private static final Pattern ENTITY_PATTERN = Pattern.compile("&(#[0-9]+|#x[0-9a-fA-F]+|[a-zA-Z]+);");
+    private static final Set<String> XML_ENTITIES = new HashSet<>(Arrays.asList("amp", "lt", "gt", "quot", "apos"));
+
+    // Block elements which are separated by a line break in plain text
+    private static final Set<String> BLOCK_TAGS = new HashSet<>(Arrays.asList("p", "pre", "ul", "ol", "li", "br"));
+
+    private final Tidy tidy;
+    private final XMLInputFactory inputFactory;
+    private final Metrics metrics;
+
+    // Sanitized fragments and plain text, keyed by the documentation they have been created from
+    private final ConcurrentMap<String, String> cache = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> textCache = new ConcurrentHashMap<>();
+
+    public DocumentationSanitizer() {
+        this(Metrics.DISABLED);
+    }
+
+    DocumentationSanitizer(Metrics metrics) {
+        this.metrics = metrics;
+        tidy = createTidy();
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    /**
+     * Sanitize documentation
+     *
+     * @param doc documentation as found in the JavaDoc
+     * @return well formed XHTML fragment (without namespace) or <code>null</code> if there is no documentation
+     */
+    public String sanitize(String doc) {
+        if (doc == null) {
+            return null;
+        }
+        String sanitized = cache.get(doc);
+        if (sanitized == null) {
+            metrics.count("doc.cache.miss");
+            Metrics.Timer timer = metrics.start("sanitize");
+            String trimmed = doc.trim();
+            if (trimmed.length() == 0) {
+                sanitized = "";
+            } else {
+                sanitized = normalize(trimmed);
+                if (sanitized == null) {
+                    metrics.count("doc.tidy");
+                    sanitized = tidy(trimmed).trim();
+                }
+            }
+            cache.put(doc, sanitized);
+            timer.stop();
+        } else {
+            metrics.count("doc.cache.hit");
+        }
+        return sanitized.length() != 0 ? sanitized : null;
+    }
+
+    /**
+     * Convert documentation to plain text. Block elements are separated by line breaks,
+     * list items are prefixed with a dash.
+     *
+     * @param doc documentation as found in the JavaDoc
+     * @return plain text or <code>null</code> if there is no documentation
+     */
+    public String toText(String doc) {
+        String fragment = sanitize(doc);
+        if (fragment == null) {
+            return null;
+        }
+        String text = textCache.get(fragment);
+        if (text == null) {
+            text = extractText(fragment);
+            textCache.put(fragment, text);
+        }
+        return text.length() != 0 ? text : null;
+    }
+
+    /**
+     * Normalize documentation which uses only plain text, inline tags, paragraphs, lists and
+     * preformatted blocks. Like JTidy, text on the top level is enclosed in paragraphs. Paragraph
+     * tags without any closing tag are treated as paragraph separators, as it is common in JavaDoc.
+     *
+     * @param doc documentation to normalize
+     * @return well formed XHTML or <code>null</code> if the documentation needs to be processed by JTidy
+     */
+    String normalize(String doc) {
+        boolean paragraphsClosed = doc.contains("</p>") || doc.contains("</P>");
+        StringBuilder out = new StringBuilder();
+        // Text and inline elements on the top level which are enclosed in a paragraph
+        StringBuilder run = new StringBuilder();
+        Deque<String> open = new ArrayDeque<>();
+
+        Matcher matcher = TAG_PATTERN.matcher(doc);
+        int pos = 0;
+        while (pos < doc.length()) {
+            int tagStart = doc.indexOf('<', pos);
+            int textEnd = tagStart == -1 ? doc.length() : tagStart;
+            if (textEnd > pos) {
+                String container = open.peek();
+                if ("ul".equals(container) || "ol".equals(container)) {
+                    if (doc.substring(pos, textEnd).trim().length() != 0) {
+                        return null;
+                    }
+                } else if (!appendText(target(open, out, run), doc, pos, textEnd, open.contains("pre"))) {
+                    return null;
+                }
+            }
+            if (tagStart == -1) {
+                break;
+            }
+            matcher.region(tagStart, doc.length());
+            if (!matcher.lookingAt()) {
+                return null;
+            }
+            pos = matcher.end();
+
+            String name = matcher.group(2).toLowerCase();
+            boolean end = matcher.group(1).length() != 0;
+            boolean empty = matcher.group(3).length() != 0;
+            if (end && empty) {
+                return null;
+            }
+
+            if ("br".equals(name)) {
+                if (end || isListContainer(open.peek())) {
+                    return null;
+                }
+                target(open, out, run).append("<br/>");
+            } else if (empty) {
+                return null;
+            } else if (end) {
+                if (!name.equals(open.peek())) {
+                    return null;
+                }
+                target(open, out, run).append("</").append(name).append('>');
+                open.pop();
+            } else if (INLINE_TAGS.contains(name)) {
+                if (isListContainer(open.peek())) {
+                    return null;
+                }
+                target(open, out, run).append('<').append(name).append('>');
+                open.push(name);
+            } else if ("p".equals(name) || "pre".equals(name)) {
+                if (!open.isEmpty()) {
+                    return null;
+                }
+                flushRun(out, run);
+                if ("pre".equals(name) || paragraphsClosed) {
+                    out.append('<').append(name).append('>');
+                    open.push(name);
+                }
+            } else if ("ul".equals(name) || "ol".equals(name)) {
+                if (!open.isEmpty() && !"li".equals(open.peek())) {
+                    return null;
+                }
+                flushRun(out, run);
+                out.append('<').append(name).append('>');
+                open.push(name);
+            } else if ("li".equals(name)) {
+                if (!isListContainer(open.peek())) {
+                    return null;
+                }
+                out.append("<li>");
+                open.push(name);
+            } else {
+                return null;
+            }
+        }
+        if (!open.isEmpty()) {
+            return null;
+        }
+        flushRun(out, run);
+        return out.toString();
+    }
+
+    // Top level text and inline elements go into the paragraph run
+    private StringBuilder target(Deque<String> open, StringBuilder out, StringBuilder run) {
+        return open.isEmpty() || INLINE_TAGS.contains(open.peekLast()) ? run : out;
+    }
+
+    private boolean isListContainer(String name) {
+        return "ul".equals(name) || "ol".equals(name);
+    }
+
+    private void flushRun(StringBuilder out, StringBuilder run) {
+        String text = run.toString().trim();
+        if (text.length() != 0) {
+            out.append("<p>").append(text).append("</p>");
+        }
+        run.setLength(0);
+    }
+
+    // Escape text and collapse whitespace (except within preformatted text). Returns false
+    // if an entity is found which is not known to XML
+    private boolean appendText(StringBuilder target, String doc, int start, int end, boolean preformatted) {
+        boolean lastWasSpace = false;
+        for (int i = start; i < end; i++) {
+            char c = doc.charAt(i);
+            if (!preformatted && Character.isWhitespace(c)) {
+                if (!lastWasSpace) {
+                    target.append(' ');
+                }
+                lastWasSpace = true;
+                continue;
+            }
+            lastWasSpace = false;
+            if (c == '&') {
+                Matcher entity = ENTITY_PATTERN.matcher(doc).region(i, end);
+                if (entity.lookingAt()) {
+                    String ref = entity.group(1);
+                    if (ref.charAt(0) != '#' && !XML_ENTITIES.contains(ref)) {
+                        return false;
+                    }
+                    target.append(entity.group());
+                    i = entity.end() - 1;
+                } else {
+                    target.append("&amp;");
+                }
+            } else if (c == '>') {
+                target.append("&gt;");
+            } else {
+                target.append(c);
+            }
+        }
+        return true;
+    }
+
+    private String extractText(String fragment) {
+        StringBuilder text = new StringBuilder();
+        try {
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(new StringReader("<div>" + fragment + "</div>"));
+            try {
+                int pre = 0;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT || event == XMLStreamConstants.END_ELEMENT) {
+                        String name = reader.getLocalName().toLowerCase();
+                        if ("pre".equals(name)) {
+                            pre += event == XMLStreamConstants.START_ELEMENT ? 1 : -1;
+                        }
+                        if (BLOCK_TAGS.contains(name)) {
+                            trimTrailingSpace(text);
+                            if (text.length() != 0 && text.charAt(text.length() - 1) != '\n') {
+                                text.append('\n');
+                            }
+                            if (event == XMLStreamConstants.START_ELEMENT && "li".equals(name)) {
+                                text.append("- ");
+                            }
+                        }
+                    } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                        appendCollapsed(text, reader.getText(), pre > 0);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            // Should not happen for sanitized documentation, but if so the markup is simply dropped
+            return fragment.replaceAll("<[^>]*>", "").trim();
+        }
+        return text.toString().trim();
+    }
+
+    private void appendCollapsed(StringBuilder text, String value, boolean preformatted) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (preformatted) {
+                text.append(c);
+            } else if (Character.isWhitespace(c)) {
+                if (text.length() != 0 && !Character.isWhitespace(text.charAt(text.length() - 1))) {
+                    text.append(' ');
+                }
+            } else {
+                text.append(c);
+            }
+        }
+    }
+
+    private void trimTrailingSpace(StringBuilder text) {
+        while (text.length() != 0 && text.charAt(text.length() - 1) == ' ') {
+            text.setLength(text.length() - 1);
+        }
+    }
+
+    // Tidy instances are not thread safe
+    private synchronized String tidy(String doc) {
+        StringReader reader =  new StringReader(doc);
+        StringWriter writer = new StringWriter();
+        tidy.parse(reader, writer);
+        return writer.toString();
+    }
+
+    private Tidy createTidy() {
+        Tidy tidy = new Tidy();
+        tidy.setXHTML(true);
+        tidy.setQuiet(true);
+        tidy.setShowWarnings(false);
+        tidy.setPrintBodyOnly(true);
+        tidy.setEncloseText(true);
+        tidy.setTrimEmptyElements(true);
+        // Named HTML entities are not known to the XML parser reading the result
+        tidy.setNumEntities(true);
+        return tidy;
+    }
+}
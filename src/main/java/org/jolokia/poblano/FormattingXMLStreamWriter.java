@@ -0,0 +1,302 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Stream writer decorator which indents nested elements and writes elements
+ * without any content as empty elements. Elements containing text are
+ * considered to be mixed content and their children are not indented.
+ *
+ * Start tags are held back until the next event so that it is known whether the
+ * element has any content. Only this single element is buffered, so memory
+ * usage does not depend on the document size.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+class FormattingXMLStreamWriter implements XMLStreamWriter {
+
+    private final XMLStreamWriter delegate;
+    private final String indent;
+
+    // Per open element: [0] = has child elements, [1] = has text content
+    private final Deque<boolean[]> openElements = new ArrayDeque<>();
+
+    // Start element which has not been written yet
+    private String[] pendingElement;
+    private final List<String[]> pendingNamespaces = new ArrayList<>();
+    private final List<String[]> pendingAttributes = new ArrayList<>();
+
+    /**
+     * Create a formatting writer
+     *
+     * @param delegate writer to write to
+     * @param indent indentation to use per nesting level
+     */
+    FormattingXMLStreamWriter(XMLStreamWriter delegate, String indent) {
+        this.delegate = delegate;
+        this.indent = indent;
+    }
+
+    public void writeStartElement(String localName) throws XMLStreamException {
+        writeStartElement(null, localName, null);
+    }
+
+    public void writeStartElement(String namespaceURI, String localName) throws XMLStreamException {
+        writeStartElement(null, localName, namespaceURI);
+    }
+
+    public void writeStartElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+        flushPending();
+        pendingElement = new String[] { prefix, localName, namespaceURI };
+    }
+
+    public void writeEmptyElement(String namespaceURI, String localName) throws XMLStreamException {
+        writeEmptyElement(null, localName, namespaceURI);
+    }
+
+    public void writeEmptyElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+        flushPending();
+        startChildElement();
+        if (prefix != null) {
+            delegate.writeEmptyElement(prefix, localName, namespaceURI);
+        } else if (namespaceURI != null) {
+            delegate.writeEmptyElement(namespaceURI, localName);
+        } else {
+            delegate.writeEmptyElement(localName);
+        }
+    }
+
+    public void writeEmptyElement(String localName) throws XMLStreamException {
+        writeEmptyElement(null, localName, null);
+    }
+
+    public void writeEndElement() throws XMLStreamException {
+        if (pendingElement != null) {
+            // No content at all, so write as empty element
+            String[] element = pendingElement;
+            pendingElement = null;
+            writeEmptyElement(element[0], element[1], element[2]);
+            writePendingNamespacesAndAttributes();
+            return;
+        }
+        boolean[] state = openElements.pop();
+        if (state[0] && !state[1]) {
+            newLine(openElements.size());
+        }
+        delegate.writeEndElement();
+    }
+
+    public void writeEndDocument() throws XMLStreamException {
+        flushPending();
+        delegate.writeEndDocument();
+        if (indent != null) {
+            delegate.writeCharacters("\n");
+        }
+    }
+
+    public void close() throws XMLStreamException {
+        delegate.close();
+    }
+
+    public void flush() throws XMLStreamException {
+        delegate.flush();
+    }
+
+    public void writeAttribute(String localName, String value) throws XMLStreamException {
+        writeAttribute(null, null, localName, value);
+    }
+
+    public void writeAttribute(String prefix, String namespaceURI, String localName, String value) throws XMLStreamException {
+        if (pendingElement != null) {
+            pendingAttributes.add(new String[] { prefix, namespaceURI, localName, value });
+        } else if (prefix != null) {
+            delegate.writeAttribute(prefix, namespaceURI, localName, value);
+        } else if (namespaceURI != null) {
+            delegate.writeAttribute(namespaceURI, localName, value);
+        } else {
+            delegate.writeAttribute(localName, value);
+        }
+    }
+
+    public void writeAttribute(String namespaceURI, String localName, String value) throws XMLStreamException {
+        writeAttribute(null, namespaceURI, localName, value);
+    }
+
+    public void writeNamespace(String prefix, String namespaceURI) throws XMLStreamException {
+        if (pendingElement != null) {
+            pendingNamespaces.add(new String[] { prefix, namespaceURI });
+        } else {
+            delegate.writeNamespace(prefix, namespaceURI);
+        }
+    }
+
+    public void writeDefaultNamespace(String namespaceURI) throws XMLStreamException {
+        writeNamespace(null, namespaceURI);
+    }
+
+    public void writeComment(String data) throws XMLStreamException {
+        flushPending();
+        startChildElement();
+        delegate.writeComment(data);
+    }
+
+    public void writeProcessingInstruction(String target) throws XMLStreamException {
+        flushPending();
+        delegate.writeProcessingInstruction(target);
+    }
+
+    public void writeProcessingInstruction(String target, String data) throws XMLStreamException {
+        flushPending();
+        delegate.writeProcessingInstruction(target, data);
+    }
+
+    public void writeCData(String data) throws XMLStreamException {
+        startText();
+        delegate.writeCData(data);
+    }
+
+    public void writeDTD(String dtd) throws XMLStreamException {
+        delegate.writeDTD(dtd);
+    }
+
+    public void writeEntityRef(String name) throws XMLStreamException {
+        startText();
+        delegate.writeEntityRef(name);
+    }
+
+    public void writeStartDocument() throws XMLStreamException {
+        delegate.writeStartDocument();
+    }
+
+    public void writeStartDocument(String version) throws XMLStreamException {
+        delegate.writeStartDocument(version);
+    }
+
+    public void writeStartDocument(String encoding, String version) throws XMLStreamException {
+        delegate.writeStartDocument(encoding, version);
+    }
+
+    public void writeCharacters(String text) throws XMLStreamException {
+        startText();
+        delegate.writeCharacters(text);
+    }
+
+    public void writeCharacters(char[] text, int start, int len) throws XMLStreamException {
+        startText();
+        delegate.writeCharacters(text, start, len);
+    }
+
+    public String getPrefix(String uri) throws XMLStreamException {
+        return delegate.getPrefix(uri);
+    }
+
+    public void setPrefix(String prefix, String uri) throws XMLStreamException {
+        delegate.setPrefix(prefix, uri);
+    }
+
+    public void setDefaultNamespace(String uri) throws XMLStreamException {
+        delegate.setDefaultNamespace(uri);
+    }
+
+    public void setNamespaceContext(NamespaceContext context) throws XMLStreamException {
+        delegate.setNamespaceContext(context);
+    }
+
+    public NamespaceContext getNamespaceContext() {
+        return delegate.getNamespaceContext();
+    }
+
+    public Object getProperty(String name) throws IllegalArgumentException {
+        return delegate.getProperty(name);
+    }
+
+    // ==========================================================================================
+
+    private void flushPending() throws XMLStreamException {
+        if (pendingElement != null) {
+            String[] element = pendingElement;
+            pendingElement = null;
+            startChildElement();
+            if (element[0] != null) {
+                delegate.writeStartElement(element[0], element[1], element[2]);
+            } else if (element[2] != null) {
+                delegate.writeStartElement(element[2], element[1]);
+            } else {
+                delegate.writeStartElement(element[1]);
+            }
+            writePendingNamespacesAndAttributes();
+            openElements.push(new boolean[2]);
+        }
+    }
+
+    private void writePendingNamespacesAndAttributes() throws XMLStreamException {
+        for (String[] ns : pendingNamespaces) {
+            if (ns[0] == null || ns[0].length() == 0) {
+                delegate.writeDefaultNamespace(ns[1]);
+            } else {
+                delegate.writeNamespace(ns[0], ns[1]);
+            }
+        }
+        pendingNamespaces.clear();
+        for (String[] attr : pendingAttributes) {
+            writeAttribute(attr[0], attr[1], attr[2], attr[3]);
+        }
+        pendingAttributes.clear();
+    }
+
+    // Called before a child element is written to the current element
+    private void startChildElement() throws XMLStreamException {
+        boolean[] parent = openElements.peek();
+        if (parent != null) {
+            parent[0] = true;
+            if (!parent[1]) {
+                newLine(openElements.size());
+            }
+        } else if (indent != null) {
+            // Root element on its own line after the XML declaration
+            delegate.writeCharacters("\n");
+        }
+    }
+
+    private void startText() throws XMLStreamException {
+        flushPending();
+        boolean[] current = openElements.peek();
+        if (current != null) {
+            current[1] = true;
+        }
+    }
+
+    private void newLine(int level) throws XMLStreamException {
+        if (indent != null) {
+            StringBuilder ws = new StringBuilder("\n");
+            for (int i = 0; i < level; i++) {
+                ws.append(indent);
+            }
+            delegate.writeCharacters(ws.toString());
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.jolokia.poblano.model.Configuration;
+
+/**
+ * Generator creating output from the extracted configuration model. Generators
+ * are selected by name with the option <code>poblano.generators</code>. Besides the
+ * built-in generators, additional generators can be registered as service
+ * (<code>META-INF/services/org.jolokia.poblano.Generator</code>).
+ *
+ * Generators run concurrently with each other, so they must not share any mutable state.
+ * The configuration model given to generators is frozen.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+public interface Generator {
+
+    /**
+     * Name by which this generator is selected
+     *
+     * @return the name of this generator
+     */
+    String getName();
+
+    /**
+     * Generate output for a configuration
+     *
+     * @param config configuration model
+     * @param context context providing options and the outputs to write to
+     * @throws IOException if the output could not be created
+     */
+    void generate(Configuration config, GeneratorContext context) throws IOException;
+}
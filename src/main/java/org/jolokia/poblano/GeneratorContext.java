@@ -0,0 +1,64 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Context given to a {@link Generator}
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+public interface GeneratorContext {
+
+    /**
+     * Namespace of the configuration
+     *
+     * @return the namespace
+     */
+    String getNamespace();
+
+    /**
+     * Get a processor option
+     *
+     * @param key option key
+     * @param defaultValue value to return if the option is not set
+     * @return option value or the given default value
+     */
+    String getOption(String key, String defaultValue);
+
+    /**
+     * Goals for which separate output, restricted to the configuration of this goal,
+     * should be created in addition (option <code>poblano.goals</code>)
+     *
+     * @return goals for which to create separate output, might be empty
+     */
+    List<String> getGoalViews();
+
+    /**
+     * Create an output file. The content is written to the output location
+     * configured when all generators are finished.
+     *
+     * @param path path relative to the output location
+     * @return stream to write to
+     * @throws IOException if the path has already been used
+     */
+    OutputStream createOutput(String path) throws IOException;
+}
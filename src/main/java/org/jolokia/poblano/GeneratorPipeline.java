@@ -0,0 +1,277 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jolokia.poblano.model.Configuration;
+
+/**
+ * Runs the selected generators concurrently on a bounded thread pool. Generators write
+ * into memory buffers, which are handed back to the caller when all generators are done.
+ * This way the caller can write all files on its own thread (e.g. via the Filer, which
+ * is not thread safe).
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+class GeneratorPipeline {
+
+    private final List<Generator> generators;
+    private final Metrics metrics;
+
+    GeneratorPipeline(List<Generator> generators) {
+        this(generators, Metrics.DISABLED);
+    }
+
+    GeneratorPipeline(List<Generator> generators, Metrics metrics) {
+        this.generators = generators;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Create generators by name. The built-in generators share the same documentation sanitizer,
+     * other generators are looked up as service.
+     *
+     * @param names names of the generators to create
+     * @param classLoader class loader used for looking up generator services
+     * @param metrics metrics to record generation and documentation processing
+     * @return pipeline for the given generators
+     * @throws IllegalArgumentException if no generator exists for a name
+     */
+    static GeneratorPipeline create(List<String> names, ClassLoader classLoader, Metrics metrics) {
+        return create(names, classLoader, new DocumentationSanitizer(metrics), metrics);
+    }
+
+    /**
+     * Create generators by name, with the built-in generators using the given documentation sanitizer
+     *
+     * @param names names of the generators to create
+     * @param classLoader class loader used for looking up generator services
+     * @param sanitizer sanitizer shared by the built-in generators
+     * @param metrics metrics to record generation
+     * @return pipeline for the given generators
+     * @throws IllegalArgumentException if no generator exists for a name
+     */
+    static GeneratorPipeline create(List<String> names, ClassLoader classLoader, DocumentationSanitizer sanitizer,
+                                    Metrics metrics) {
+        List<Generator> generators = new ArrayList<>();
+        Map<String, Generator> services = null;
+        for (String name : names) {
+            if ("xsd".equals(name)) {
+                generators.add(new XSDGenerator(XSDGenerator.Mode.STREAMING, sanitizer));
+            } else if ("asciidoc".equals(name)) {
+                generators.add(new AsciiDocGenerator(sanitizer));
+            } else if ("json".equals(name)) {
+                generators.add(new JsonSchemaGenerator(sanitizer));
+            } else {
+                if (services == null) {
+                    services = lookupServices(classLoader);
+                }
+                Generator generator = services.get(name);
+                if (generator == null) {
+                    throw new IllegalArgumentException("No generator '" + name + "' found (option " +
+                                                       PoblanoOptions.GENERATORS + ")");
+                }
+                generators.add(generator);
+            }
+        }
+        return new GeneratorPipeline(generators, metrics);
+    }
+
+    /**
+     * Run all generators. The generators are started concurrently, so the overall time is
+     * determined by the slowest generator. A failing generator doesn't affect the others.
+     *
+     * @param config configuration model, which gets frozen
+     * @param options processor options
+     * @return results in the order of the generators
+     */
+    List<Result> run(final Configuration config, final PoblanoOptions options) {
+        // Frozen configurations can be read from all generator threads
+        config.freeze();
+        List<Result> results = new ArrayList<>();
+        if (generators.size() == 1) {
+            results.add(runGenerator(generators.get(0), config, options));
+            return results;
+        }
+
+        int threads = Math.min(generators.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1), new GeneratorThreadFactory());
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (final Generator generator : generators) {
+                futures.add(executor.submit(new Callable<Result>() {
+                    public Result call() {
+                        return runGenerator(generator, config, options);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                results.add(getResult(generators.get(i), futures.get(i)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Run all generators in the background. Used for starting the generation while the
+     * compiler is still busy with further rounds.
+     *
+     * @param config configuration model, which gets frozen
+     * @param options processor options
+     * @return future for the results in the order of the generators. Cancelling it interrupts
+     *         the generation.
+     */
+    Future<List<Result>> start(final Configuration config, final PoblanoOptions options) {
+        config.freeze();
+        ExecutorService executor = Executors.newSingleThreadExecutor(new GeneratorThreadFactory());
+        try {
+            return executor.submit(new Callable<List<Result>>() {
+                public List<Result> call() {
+                    return run(config, options);
+                }
+            });
+        } finally {
+            // Lets the submitted task finish, the thread goes away afterwards
+            executor.shutdown();
+        }
+    }
+
+    private Result runGenerator(Generator generator, Configuration config, PoblanoOptions options) {
+        BufferingContext context = new BufferingContext(options, config);
+        // Timed on the generator's thread, so that allocations are measured for this generator only
+        Metrics.Timer timer = metrics.start("generate:" + generator.getName());
+        try {
+            generator.generate(config, context);
+            return new Result(generator, context.getOutputs(), null);
+        } catch (IOException | RuntimeException e) {
+            return new Result(generator, null, e);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private Result getResult(Generator generator, Future<Result> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Result(generator, null, e);
+        } catch (ExecutionException e) {
+            return new Result(generator, null, e.getCause());
+        }
+    }
+
+    private static Map<String, Generator> lookupServices(ClassLoader classLoader) {
+        Map<String, Generator> ret = new HashMap<>();
+        for (Generator generator : ServiceLoader.load(Generator.class, classLoader)) {
+            ret.put(generator.getName(), generator);
+        }
+        return ret;
+    }
+
+    // ===============================================================================
+
+    /**
+     * Outcome of a single generator
+     */
+    static class Result {
+
+        private final Generator generator;
+        private final Map<String, byte[]> outputs;
+        private final Throwable error;
+
+        Result(Generator generator, Map<String, byte[]> outputs, Throwable error) {
+            this.generator = generator;
+            this.outputs = outputs;
+            this.error = error;
+        }
+
+        Generator getGenerator() {
+            return generator;
+        }
+
+        // Paths mapped to the content generated, in the order of creation
+        Map<String, byte[]> getOutputs() {
+            return outputs;
+        }
+
+        Throwable getError() {
+            return error;
+        }
+    }
+
+    // Context collecting all output in memory
+    private static class BufferingContext implements GeneratorContext {
+
+        private final PoblanoOptions options;
+        private final Configuration config;
+        private final Map<String, ByteArrayOutputStream> outputs = new LinkedHashMap<>();
+
+        BufferingContext(PoblanoOptions options, Configuration config) {
+            this.options = options;
+            this.config = config;
+        }
+
+        public String getNamespace() {
+            return options.getNamespace();
+        }
+
+        public String getOption(String key, String defaultValue) {
+            return options.get(key, defaultValue);
+        }
+
+        public List<String> getGoalViews() {
+            return options.getGoalViews(config.getGoals());
+        }
+
+        public OutputStream createOutput(String path) throws IOException {
+            if (outputs.containsKey(path)) {
+                throw new IOException("Output " + path + " has already been created");
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            outputs.put(path, out);
+            return out;
+        }
+
+        Map<String, byte[]> getOutputs() {
+            Map<String, byte[]> ret = new LinkedHashMap<>();
+            for (Map.Entry<String, ByteArrayOutputStream> entry : outputs.entrySet()) {
+                ret.put(entry.getKey(), entry.getValue().toByteArray());
+            }
+            return ret;
+        }
+    }
+
+    // Daemon threads, so that a hanging generator doesn't block the compiler from exiting
+    private static class GeneratorThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "poblano-generator-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
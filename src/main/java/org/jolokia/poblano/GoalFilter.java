@@ -0,0 +1,62 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jolokia.poblano.model.ConfigElement;
+import org.jolokia.poblano.model.Configuration;
+
+/**
+ * Selects the elements of a single goal when generating output for this goal only. The
+ * goal is resolved to its id once, so that each check is a single bit test.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+final class GoalFilter {
+
+    // Filter accepting all elements
+    static final GoalFilter ALL = new GoalFilter(-1);
+
+    private final int goalId;
+
+    private GoalFilter(int goalId) {
+        this.goalId = goalId;
+    }
+
+    /**
+     * Create a filter for a goal
+     *
+     * @param config configuration to filter
+     * @param goal goal to select or <code>null</code> for all goals
+     * @return the filter
+     * @throws IllegalArgumentException if the configuration doesn't contain the goal
+     */
+    static GoalFilter forGoal(Configuration config, String goal) {
+        if (goal == null) {
+            return ALL;
+        }
+        int goalId = config.getGoalId(goal);
+        if (goalId < 0) {
+            throw new IllegalArgumentException("No mojo with goal '" + goal + "' found");
+        }
+        return new GoalFilter(goalId);
+    }
+
+    boolean accepts(ConfigElement element) {
+        return goalId < 0 || element.appliesTo(goalId);
+    }
+}
@@ -0,0 +1,61 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Parsed JavaDoc comment of a single element
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+final class Javadoc {
+
+    // Element without any comment
+    static final Javadoc NONE = new Javadoc(null, null, null, null);
+
+    private final String raw;
+    private final String body;
+    private final String summary;
+    private final String since;
+
+    Javadoc(String raw, String body, String summary, String since) {
+        this.raw = raw;
+        this.body = body;
+        this.summary = summary;
+        this.since = since;
+    }
+
+    // Comment as returned by Elements.getDocComment(), used for fingerprinting
+    String getRaw() {
+        return raw;
+    }
+
+    // Main description (without block tags) with all inline tags resolved to HTML
+    String getBody() {
+        return body;
+    }
+
+    // First sentence of the body
+    String getSummary() {
+        return summary;
+    }
+
+    // Value of the @since tag
+    String getSince() {
+        return since;
+    }
+}
@@ -0,0 +1,292 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.*;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+
+/**
+ * Cache of parsed JavaDoc comments, kept for the whole processor run. Fields of base classes
+ * and constants of shared enums are reached once per mojo (or even once per field using the
+ * enum), but their comments are fetched and parsed only once. Entries are kept by name, since
+ * the elements of a type are different objects in each round.
+ *
+ * Parsing splits off the block tags (only <code>@since</code> is kept), resolves inline tags
+ * to HTML and extracts the first sentence like the JavaDoc tool does. As the generated
+ * documentation can't link to the JavaDoc, <code>{@link}</code> is rendered as code with the
+ * simple name of the referenced type and member.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+class JavadocCache {
+
+    // Block tags start at the beginning of a line
+    private static final Pattern BLOCK_TAG_PATTERN = Pattern.compile("^\\s*@(\\w+)", Pattern.MULTILINE);
+
+    // End of the first sentence: A period followed by whitespace or a block level HTML element
+    private static final Pattern SENTENCE_END_PATTERN =
+        Pattern.compile("\\.(?=\\s|$)|(?=<(?i:p|pre|ul|ol|dl|table|h[1-6]|hr|div|blockquote)\\b)");
+
+    private final Elements elementUtils;
+    private final Metrics metrics;
+
+    // Qualified name of a type or the member's name appended to its type's key
+    private final Map<String, Javadoc> cache = new HashMap<>();
+
+    JavadocCache(ProcessingEnvironment processingEnv) {
+        this(processingEnv, Metrics.DISABLED);
+    }
+
+    JavadocCache(ProcessingEnvironment processingEnv, Metrics metrics) {
+        this.elementUtils = processingEnv.getElementUtils();
+        this.metrics = metrics;
+    }
+
+    /**
+     * Get the parsed JavaDoc of an element
+     *
+     * @param element field, enum constant or type
+     * @return the parsed comment, {@link Javadoc#NONE} if there is no comment
+     */
+    Javadoc get(Element element) {
+        String key = key(element);
+        Javadoc javadoc = cache.get(key);
+        if (javadoc == null) {
+            metrics.count("javadoc.cache.miss");
+            javadoc = parse(element, elementUtils.getDocComment(element));
+            cache.put(key, javadoc);
+        } else {
+            metrics.count("javadoc.cache.hit");
+        }
+        return javadoc;
+    }
+
+    private String key(Element element) {
+        if (element instanceof TypeElement) {
+            return ((TypeElement) element).getQualifiedName().toString();
+        }
+        return key(element.getEnclosingElement()) + "#" + element.getSimpleName();
+    }
+
+    // ==========================================================================================
+
+    Javadoc parse(Element element, String raw) {
+        if (raw == null) {
+            return Javadoc.NONE;
+        }
+        Matcher blockTag = BLOCK_TAG_PATTERN.matcher(raw);
+        String description = raw;
+        String since = null;
+        if (blockTag.find()) {
+            description = raw.substring(0, blockTag.start());
+            boolean more = true;
+            while (more) {
+                String tag = blockTag.group(1);
+                int start = blockTag.end();
+                more = blockTag.find();
+                if ("since".equals(tag) && since == null) {
+                    since = emptyToNull(raw.substring(start, more ? blockTag.start() : raw.length()).trim());
+                }
+            }
+        }
+        String body = resolveInlineTags(element, description);
+        return new Javadoc(raw, emptyToNull(body.trim()) != null ? body : null, extractSummary(body), since);
+    }
+
+    private String extractSummary(String body) {
+        String trimmed = body.trim();
+        Matcher matcher = SENTENCE_END_PATTERN.matcher(trimmed);
+        while (matcher.find()) {
+            // A block element at the very beginning doesn't end the sentence
+            if (matcher.end() > 0) {
+                return trimmed.substring(0, matcher.end()).trim();
+            }
+        }
+        return emptyToNull(trimmed);
+    }
+
+    // Replace {@...} tags. Braces within a tag must be balanced.
+    private String resolveInlineTags(Element element, String text) {
+        int idx = text.indexOf("{@");
+        if (idx < 0) {
+            return text;
+        }
+        StringBuilder ret = new StringBuilder();
+        int pos = 0;
+        while (idx >= 0) {
+            int end = findClosingBrace(text, idx + 1);
+            if (end < 0) {
+                break;
+            }
+            ret.append(text, pos, idx);
+            String tag = text.substring(idx + 2, end);
+            int nameEnd = 0;
+            while (nameEnd < tag.length() && !Character.isWhitespace(tag.charAt(nameEnd))) {
+                nameEnd++;
+            }
+            ret.append(resolveInlineTag(element, tag.substring(0, nameEnd), tag.substring(nameEnd).trim()));
+            pos = end + 1;
+            idx = text.indexOf("{@", pos);
+        }
+        ret.append(text, pos, text.length());
+        return ret.toString();
+    }
+
+    private int findClosingBrace(String text, int start) {
+        int depth = 0;
+        for (int i = start; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                if (depth == 0) {
+                    return i;
+                }
+                depth--;
+            }
+        }
+        return -1;
+    }
+
+    private String resolveInlineTag(Element element, String name, String content) {
+        switch (name) {
+            case "code":
+                return "<code>" + escape(content) + "</code>";
+            case "literal":
+                return escape(content);
+            case "link":
+            case "linkplain": {
+                String[] refAndLabel = splitReference(content);
+                String label = refAndLabel[1].length() != 0 ? refAndLabel[1] : escape(formatReference(element, refAndLabel[0]));
+                return "link".equals(name) ? "<code>" + label + "</code>" : label;
+            }
+            case "value":
+                return escape(resolveValue(element, content));
+            case "inheritDoc":
+            case "docRoot":
+                return "";
+            default:
+                return content;
+        }
+    }
+
+    // Reference and label. The reference's parameter list may contain whitespace.
+    private String[] splitReference(String content) {
+        int end = 0;
+        int parens = 0;
+        while (end < content.length()) {
+            char c = content.charAt(end);
+            if (c == '(') {
+                parens++;
+            } else if (c == ')') {
+                parens--;
+            } else if (parens == 0 && Character.isWhitespace(c)) {
+                break;
+            }
+            end++;
+        }
+        return new String[] { content.substring(0, end), content.substring(end).trim() };
+    }
+
+    // "pkg.Type#member" is shown as "Type.member"
+    private String formatReference(Element context, String reference) {
+        int hash = reference.indexOf('#');
+        String typeName = hash >= 0 ? reference.substring(0, hash) : reference;
+        String member = hash >= 0 ? reference.substring(hash + 1) : "";
+        String type = "";
+        if (typeName.length() != 0) {
+            TypeElement resolved = resolveType(context, typeName);
+            type = resolved != null ?
+                resolved.getSimpleName().toString() :
+                typeName.substring(typeName.lastIndexOf('.') + 1);
+        }
+        if (type.length() == 0) {
+            return member;
+        }
+        return member.length() != 0 ? type + "." + member : type;
+    }
+
+    // Value of a constant, either the element itself or a referenced field
+    private String resolveValue(Element context, String reference) {
+        Element field = context;
+        if (reference.length() != 0) {
+            int hash = reference.indexOf('#');
+            TypeElement type = hash > 0 ? resolveType(context, reference.substring(0, hash)) : getEnclosingType(context);
+            field = null;
+            if (type != null) {
+                for (VariableElement candidate : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+                    if (candidate.getSimpleName().contentEquals(reference.substring(hash + 1))) {
+                        field = candidate;
+                    }
+                }
+            }
+        }
+        Object value = field instanceof VariableElement ? ((VariableElement) field).getConstantValue() : null;
+        if (value == null) {
+            return reference;
+        }
+        return value instanceof String ? "\"" + value + "\"" : value.toString();
+    }
+
+    // Type referenced from within a comment: Qualified, nested in an enclosing type or in the same package
+    private TypeElement resolveType(Element context, String name) {
+        for (TypeElement type = getEnclosingType(context); type != null; type = getEnclosingType(type.getEnclosingElement())) {
+            if (type.getSimpleName().contentEquals(name)) {
+                return type;
+            }
+            for (TypeElement member : ElementFilter.typesIn(type.getEnclosedElements())) {
+                if (member.getSimpleName().contentEquals(name)) {
+                    return member;
+                }
+            }
+        }
+        TypeElement type = elementUtils.getTypeElement(name);
+        if (type == null && context != null) {
+            PackageElement pkg = elementUtils.getPackageOf(context);
+            if (!pkg.isUnnamed()) {
+                type = elementUtils.getTypeElement(pkg.getQualifiedName() + "." + name);
+            }
+        }
+        if (type == null) {
+            type = elementUtils.getTypeElement("java.lang." + name);
+        }
+        return type;
+    }
+
+    private TypeElement getEnclosingType(Element element) {
+        while (element != null && !(element instanceof TypeElement)) {
+            element = element.getEnclosingElement();
+        }
+        return (TypeElement) element;
+    }
+
+    private String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private String emptyToNull(String value) {
+        return value != null && value.length() != 0 ? value : null;
+    }
+}
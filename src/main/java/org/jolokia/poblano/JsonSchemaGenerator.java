@@ -0,0 +1,217 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import org.jolokia.poblano.model.ConfigElement;
+import org.jolokia.poblano.model.Configuration;
+import org.jolokia.poblano.model.EnumValueElement;
+
+/**
+ * Generates a JSON schema (draft 4) for the configuration, e.g. for editors supporting
+ * configuration in JSON or YAML. Lists and arrays are mapped to JSON arrays of their
+ * items, maps to objects with arbitrary properties.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+public class JsonSchemaGenerator implements Generator {
+
+    private static final String SCHEMA = "http://json-schema.org/draft-04/schema#";
+
+    // Mapping from Java class to JSON types
+    private static final Map<String, String> JSON_TYPE_LOOKUP;
+
+    private final DocumentationSanitizer sanitizer;
+
+    public JsonSchemaGenerator() {
+        this(new DocumentationSanitizer());
+    }
+
+    public JsonSchemaGenerator(DocumentationSanitizer sanitizer) {
+        this.sanitizer = sanitizer;
+    }
+
+    /** {@inheritDoc} */
+    public String getName() {
+        return "json";
+    }
+
+    /** {@inheritDoc} */
+    public void generate(Configuration config, GeneratorContext context) throws IOException {
+        String jsonFile = context.getOption(PoblanoOptions.JSON_FILE, PoblanoOptions.DEFAULT_JSON_FILE);
+        try (OutputStream out = context.createOutput(jsonFile)) {
+            generate(out, context.getNamespace(), config);
+        }
+        for (String goal : context.getGoalViews()) {
+            try (OutputStream out = context.createOutput(PoblanoOptions.getGoalPath(jsonFile, goal))) {
+                generate(out, context.getNamespace(), config, goal);
+            }
+        }
+    }
+
+    public void generate(OutputStream out, String id, Configuration config) throws IOException {
+        generate(out, id, config, null);
+    }
+
+    /**
+     * Generate a schema for the configuration of a single goal
+     *
+     * @param out stream to write to
+     * @param id id of the schema
+     * @param config configuration model
+     * @param goal goal for which to create the schema or <code>null</code> for a schema covering all goals
+     * @throws IOException if the schema could not be written
+     */
+    public void generate(OutputStream out, String id, Configuration config, String goal) throws IOException {
+        GoalFilter filter = GoalFilter.forGoal(config, goal);
+        JsonWriter json = new JsonWriter();
+        Map<ConfigElement, String> namedTypes = TypeNames.collectReferencedTypes(config.getRootElements(), filter);
+
+        json.beginObject();
+        json.name("$schema").value(SCHEMA);
+        json.name("id").value(id);
+        json.name("type").value("object");
+        addProperties(json, namedTypes, config.getRootElements(), filter);
+        if (!namedTypes.isEmpty()) {
+            json.name("definitions").beginObject();
+            for (Map.Entry<ConfigElement, String> entry : namedTypes.entrySet()) {
+                json.name(entry.getValue()).beginObject();
+                // Definitions are shared by all goals
+                addType(json, namedTypes, entry.getKey(), GoalFilter.ALL);
+                json.endObject();
+            }
+            json.endObject();
+        }
+        json.endObject();
+
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        writer.write(json.toString());
+        writer.write('\n');
+        writer.flush();
+    }
+
+    private void addProperties(JsonWriter json, Map<ConfigElement, String> namedTypes,
+                               List<ConfigElement> elements, GoalFilter filter) {
+        json.name("properties").beginObject();
+        for (ConfigElement element : elements) {
+            if (!filter.accepts(element)) {
+                continue;
+            }
+            json.name(element.getName()).beginObject();
+            addElement(json, namedTypes, element, filter);
+            json.endObject();
+        }
+        json.endObject();
+        json.name("additionalProperties").value(false);
+    }
+
+    private void addElement(JsonWriter json, Map<ConfigElement, String> namedTypes, ConfigElement element, GoalFilter filter) {
+        // Other keywords next to a "$ref" are ignored, so the documentation is on the definition
+        ConfigElement target = element.isReference() ? element.getReference() : element;
+        String typeName = namedTypes.get(target);
+        if (typeName != null) {
+            json.name("$ref").value("#/definitions/" + typeName);
+        } else {
+            addType(json, namedTypes, element, filter);
+        }
+    }
+
+    private void addType(JsonWriter json, Map<ConfigElement, String> namedTypes, ConfigElement element, GoalFilter filter) {
+        String description = sanitizer.toText(element.getDocumentation());
+        // The first sentence as title, if there is more to say
+        String title = sanitizer.toText(element.getSummary());
+        if (title != null && !title.equals(description)) {
+            json.name("title").value(title);
+        }
+        if (description != null) {
+            json.name("description").value(description);
+        }
+        if (element.isMap()) {
+            json.name("type").value("object");
+            json.name("additionalProperties").beginObject().name("type").value("string").endObject();
+        } else if (element.isEnum()) {
+            json.name("type").value("string");
+            json.name("enum").beginArray();
+            for (EnumValueElement enumValue : element.getEnumValues()) {
+                json.value(enumValue.getValue());
+            }
+            json.endArray();
+            addDefault(json, "string", element.getDefaultVal());
+        } else if (element.isListLike()) {
+            json.name("type").value("array");
+            json.name("items").beginObject();
+            if (element.hasChildren()) {
+                addElement(json, namedTypes, element.getChildren().get(0), filter);
+            }
+            json.endObject();
+        } else if (element.isComplexType()) {
+            json.name("type").value("object");
+            addProperties(json, namedTypes, element.getChildren(), filter);
+        } else {
+            String type = convertSimpleType(element.getType());
+            json.name("type").value(type);
+            addDefault(json, type, element.getDefaultVal());
+        }
+    }
+
+    // Defaults are only added when they are set, valid for the type and not a Maven expression
+    private void addDefault(JsonWriter json, String type, String defaultVal) {
+        if (defaultVal == null || defaultVal.length() == 0 || defaultVal.contains("${")) {
+            return;
+        }
+        if ("string".equals(type)) {
+            json.name("default").value(defaultVal);
+        } else if ("boolean".equals(type) && ("true".equals(defaultVal) || "false".equals(defaultVal))) {
+            json.name("default").literal(defaultVal);
+        } else if ("integer".equals(type) && defaultVal.matches("-?[0-9]+")) {
+            json.name("default").literal(defaultVal);
+        } else if ("number".equals(type) && defaultVal.matches("-?[0-9]+(\\.[0-9]+)?([eE][-+]?[0-9]+)?")) {
+            json.name("default").literal(defaultVal);
+        }
+    }
+
+    private String convertSimpleType(String type) {
+        String ret = JSON_TYPE_LOOKUP.get(type);
+        return ret != null ? ret : "string";
+    }
+
+    static {
+        String[] types = {
+            String.class.getName(), "string",
+            Integer.class.getName(), "integer",
+            "int", "integer",
+            Long.class.getName(), "integer",
+            "long", "integer",
+            Float.class.getName(), "number",
+            "float", "number",
+            Double.class.getName(), "number",
+            "double", "number",
+            Boolean.class.getName(), "boolean",
+            "boolean", "boolean"
+        };
+
+        Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < types.length; i+=2) {
+            map.put(types[i], types[i + 1]);
+        }
+        JSON_TYPE_LOOKUP = Collections.unmodifiableMap(map);
+    }
+}
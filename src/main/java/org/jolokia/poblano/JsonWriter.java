@@ -0,0 +1,160 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Minimal writer for pretty printed JSON
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+class JsonWriter {
+
+    private final StringBuilder out = new StringBuilder();
+
+    // Number of members written so far, per open object or array
+    private final Deque<int[]> counts = new ArrayDeque<>();
+
+    JsonWriter beginObject() {
+        return begin('{');
+    }
+
+    JsonWriter endObject() {
+        return end('}');
+    }
+
+    JsonWriter beginArray() {
+        return begin('[');
+    }
+
+    JsonWriter endArray() {
+        return end(']');
+    }
+
+    JsonWriter name(String name) {
+        nextMember();
+        string(name);
+        out.append(": ");
+        return this;
+    }
+
+    // Write a string value, either as array member or as value of a property
+    JsonWriter value(String value) {
+        if (isInArray()) {
+            nextMember();
+        }
+        string(value);
+        return this;
+    }
+
+    JsonWriter value(boolean value) {
+        return literal(Boolean.toString(value));
+    }
+
+    JsonWriter value(long value) {
+        return literal(Long.toString(value));
+    }
+
+    JsonWriter value(double value) {
+        return literal(Double.toString(value));
+    }
+
+    JsonWriter literal(String value) {
+        if (isInArray()) {
+            nextMember();
+        }
+        out.append(value);
+        return this;
+    }
+
+    private JsonWriter begin(char c) {
+        if (isInArray()) {
+            nextMember();
+        }
+        out.append(c);
+        // [0] = number of members, [1] = 1 for arrays
+        counts.push(new int[] { 0, c == '[' ? 1 : 0 });
+        return this;
+    }
+
+    private JsonWriter end(char c) {
+        int[] count = counts.pop();
+        if (count[0] > 0) {
+            newLine();
+        }
+        out.append(c);
+        return this;
+    }
+
+    private boolean isInArray() {
+        int[] count = counts.peek();
+        return count != null && count[1] == 1;
+    }
+
+    private void nextMember() {
+        int[] count = counts.peek();
+        if (count[0]++ > 0) {
+            out.append(',');
+        }
+        newLine();
+    }
+
+    private void newLine() {
+        out.append('\n');
+        for (int i = 0; i < counts.size(); i++) {
+            out.append("  ");
+        }
+    }
+
+    private void string(String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    public String toString() {
+        return out.toString();
+    }
+}
@@ -0,0 +1,281 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects timings per processing phase and round as well as counters, for finding
+ * out where the time goes when processing is slow. Enabled with the option
+ * <code>poblano.metrics</code>, otherwise all methods are no-ops.
+ *
+ * Phases can be nested (e.g. documentation sanitizing happens while generating the XSD), so the
+ * times of all phases don't add up to the overall time. Generators run concurrently, so
+ * all methods are thread safe. Allocated bytes are measured for the thread starting
+ * a timer, if enabled and supported by the JVM.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+class Metrics {
+
+    // Metrics which don't record anything
+    static final Metrics DISABLED = new Metrics(false, false);
+
+    private static final Timer NO_TIMER = new Timer(null, null, 0, 0);
+
+    private final boolean enabled;
+    private final ThreadMXBean allocationBean;
+
+    // Phases per round, in the order they were first seen
+    private final List<ConcurrentMap<String, Phase>> rounds = new ArrayList<>();
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    Metrics(boolean enabled, boolean trackAllocation) {
+        this.enabled = enabled;
+        this.allocationBean = enabled && trackAllocation ? lookupAllocationBean() : null;
+        if (enabled) {
+            rounds.add(new ConcurrentHashMap<String, Phase>());
+        }
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    boolean isTrackingAllocation() {
+        return allocationBean != null;
+    }
+
+    /**
+     * Start a new round. Phases started afterwards are recorded for this round. Must be
+     * called from the processor thread only.
+     */
+    synchronized void nextRound() {
+        if (enabled && !rounds.get(rounds.size() - 1).isEmpty()) {
+            rounds.add(new ConcurrentHashMap<String, Phase>());
+        }
+    }
+
+    /**
+     * Start timing a phase. The phase ends when the returned timer is stopped.
+     *
+     * @param phase name of the phase
+     * @return timer to stop when the phase is finished
+     */
+    Timer start(String phase) {
+        if (!enabled) {
+            return NO_TIMER;
+        }
+        return new Timer(this, phase, System.nanoTime(), getAllocatedBytes());
+    }
+
+    /**
+     * Increment a counter
+     *
+     * @param counter name of the counter
+     */
+    void count(String counter) {
+        count(counter, 1);
+    }
+
+    void count(String counter, long delta) {
+        if (enabled) {
+            AtomicLong value = counters.get(counter);
+            if (value == null) {
+                AtomicLong newValue = new AtomicLong();
+                value = counters.putIfAbsent(counter, newValue);
+                if (value == null) {
+                    value = newValue;
+                }
+            }
+            value.addAndGet(delta);
+        }
+    }
+
+    long getCounter(String counter) {
+        AtomicLong value = counters.get(counter);
+        return value != null ? value.get() : 0;
+    }
+
+    /**
+     * Summary of all rounds for printing as a compiler note
+     *
+     * @return human readable summary
+     */
+    String getSummary() {
+        StringBuilder ret = new StringBuilder("Poblano metrics:");
+        List<ConcurrentMap<String, Phase>> allRounds = getRounds();
+        for (int i = 0; i < allRounds.size(); i++) {
+            ret.append("\n  Round ").append(i + 1).append(':');
+            for (Phase phase : sortedPhases(allRounds.get(i))) {
+                ret.append(String.format("\n    %-40s %5dx %10.2f ms", phase.name, phase.count.get(), phase.nanos.get() / 1e6));
+                if (allocationBean != null) {
+                    ret.append(String.format(" %10.1f KB", phase.allocatedBytes.get() / 1024.0));
+                }
+            }
+        }
+        ret.append("\n  Counters:");
+        for (Map.Entry<String, AtomicLong> entry : new TreeMap<>(counters).entrySet()) {
+            ret.append(String.format("\n    %-40s %8d", entry.getKey(), entry.getValue().get()));
+        }
+        return ret.toString();
+    }
+
+    /**
+     * Report of all rounds as JSON
+     *
+     * @return JSON report
+     */
+    String toJson() {
+        JsonWriter json = new JsonWriter();
+        json.beginObject();
+        json.name("allocationTracking").value(allocationBean != null);
+        json.name("rounds").beginArray();
+        List<ConcurrentMap<String, Phase>> allRounds = getRounds();
+        for (int i = 0; i < allRounds.size(); i++) {
+            json.beginObject();
+            json.name("round").value(i + 1);
+            json.name("phases").beginObject();
+            for (Phase phase : sortedPhases(allRounds.get(i))) {
+                json.name(phase.name).beginObject();
+                json.name("count").value(phase.count.get());
+                json.name("timeMs").value(phase.nanos.get() / 1e6);
+                if (allocationBean != null) {
+                    json.name("allocatedBytes").value(phase.allocatedBytes.get());
+                }
+                json.endObject();
+            }
+            json.endObject();
+            json.endObject();
+        }
+        json.endArray();
+        json.name("counters").beginObject();
+        for (Map.Entry<String, AtomicLong> entry : new TreeMap<>(counters).entrySet()) {
+            json.name(entry.getKey()).value(entry.getValue().get());
+        }
+        json.endObject();
+        json.endObject();
+        return json.toString() + "\n";
+    }
+
+    // ========================================================================================
+
+    private void record(String name, long nanos, long allocatedBytes) {
+        ConcurrentMap<String, Phase> round;
+        synchronized (this) {
+            round = rounds.get(rounds.size() - 1);
+        }
+        Phase phase = round.get(name);
+        if (phase == null) {
+            Phase newPhase = new Phase(name, System.nanoTime());
+            phase = round.putIfAbsent(name, newPhase);
+            if (phase == null) {
+                phase = newPhase;
+            }
+        }
+        phase.count.incrementAndGet();
+        phase.nanos.addAndGet(nanos);
+        phase.allocatedBytes.addAndGet(allocatedBytes);
+    }
+
+    private synchronized List<ConcurrentMap<String, Phase>> getRounds() {
+        return new ArrayList<>(rounds);
+    }
+
+    // Phases in the order they were first recorded
+    private List<Phase> sortedPhases(Map<String, Phase> phases) {
+        List<Phase> ret = new ArrayList<>(phases.values());
+        Collections.sort(ret, new Comparator<Phase>() {
+            public int compare(Phase p1, Phase p2) {
+                return p1.firstSeen < p2.firstSeen ? -1 : (p1.firstSeen > p2.firstSeen ? 1 : p1.name.compareTo(p2.name));
+            }
+        });
+        return ret;
+    }
+
+    private long getAllocatedBytes() {
+        if (allocationBean == null) {
+            return 0;
+        }
+        return ((com.sun.management.ThreadMXBean) allocationBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // Allocated bytes per thread can only be measured on JVMs providing the HotSpot extension
+    private static ThreadMXBean lookupAllocationBean() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+                if (sunBean.isThreadAllocatedMemorySupported()) {
+                    sunBean.setThreadAllocatedMemoryEnabled(true);
+                    return bean;
+                }
+            }
+        } catch (NoClassDefFoundError | UnsupportedOperationException e) {
+            // Not available on this JVM
+        }
+        return null;
+    }
+
+    // Accumulated values of a phase
+    private static class Phase {
+        private final String name;
+        private final long firstSeen;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+        private final AtomicLong allocatedBytes = new AtomicLong();
+
+        Phase(String name, long firstSeen) {
+            this.name = name;
+            this.firstSeen = firstSeen;
+        }
+    }
+
+    /**
+     * Timer for a single execution of a phase
+     */
+    static class Timer {
+
+        private final Metrics metrics;
+        private final String phase;
+        private final long start;
+        private final long startAllocated;
+
+        private Timer(Metrics metrics, String phase, long start, long startAllocated) {
+            this.metrics = metrics;
+            this.phase = phase;
+            this.start = start;
+            this.startAllocated = startAllocated;
+        }
+
+        /**
+         * Stop this timer and record the time since it was started
+         */
+        void stop() {
+            if (metrics != null) {
+                long allocated = metrics.getAllocatedBytes() - startAllocated;
+                metrics.record(phase, System.nanoTime() - start, Math.max(allocated, 0));
+            }
+        }
+    }
+}
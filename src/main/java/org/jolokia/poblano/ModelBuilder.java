@@ -0,0 +1,357 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import org.jolokia.poblano.TypeClassifier.Kind;
+import org.jolokia.poblano.model.ConfigElement;
+import org.jolokia.poblano.model.Configuration;
+import org.jolokia.poblano.model.EnumValueElement;
+import org.jolokia.poblano.model.ModelIndex;
+
+/**
+ * Builds the configuration model of mojos from the {@link TypeRecord}s collected by the
+ * {@link ConfigExtractor}. Parameters of the mojo class and its super classes are root
+ * elements, complex types are walked for nested parameters. A type which is reached again while
+ * it is still being walked (i.e. a self referencing configuration class) is not entered again,
+ * instead the element gets a reference to the element which holds the type's configuration.
+ *
+ * Records don't refer to the compiler's elements, so the models of the mojos are built in a
+ * fork-join pipeline while the compiler thread only collects the records: Every mojo is
+ * built into its own configuration (or restored from the model index) concurrently. These
+ * are then merged pairwise in the order of the mojos. This way no locking is needed and the
+ * order of the elements is the same as for a sequential build. The documentation of the
+ * elements is sanitized on the way, so that the generators find it in the sanitizer's cache.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+class ModelBuilder {
+
+    private final int threads;
+    private final DocumentationSanitizer sanitizer;
+    private final Metrics metrics;
+
+    /**
+     * @param threads maximum number of threads used for building
+     * @param sanitizer sanitizer to normalize the documentation with, shared with the generators
+     * @param metrics metrics to record the time spent per mojo
+     */
+    ModelBuilder(int threads, DocumentationSanitizer sanitizer, Metrics metrics) {
+        this.threads = Math.max(1, threads);
+        this.sanitizer = sanitizer;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Build the configuration of each mojo
+     *
+     * @param mojos mojos to build
+     * @return configurations holding a single mojo each, in the order of the mojos
+     */
+    List<Configuration> build(List<MojoRecord> mojos) {
+        Configuration[] ret = new Configuration[mojos.size()];
+        invoke(new BuildTask(this, mojos, ret, 0), mojos.size());
+        return Arrays.asList(ret);
+    }
+
+    /**
+     * Merge the configurations of mojos into a target configuration, in the order of the mojos.
+     * As configurations are merged pairwise, the mojos' configurations might be changed, too.
+     *
+     * @param target configuration to update
+     * @param mojos mojos to merge
+     * @param configs configuration of each mojo as built by {@link #build(List)}
+     */
+    void merge(Configuration target, List<MojoRecord> mojos, List<Configuration> configs) {
+        List<Configuration> all = new ArrayList<>(configs.size() + 1);
+        List<String> goals = new ArrayList<>(configs.size() + 1);
+        all.add(target);
+        // The target is never merged into another configuration
+        goals.add(null);
+        for (int i = 0; i < configs.size(); i++) {
+            all.add(configs.get(i));
+            goals.add(mojos.get(i).goal);
+        }
+        invoke(new MergeTask(all, goals), (all.size() + 1) / 2);
+    }
+
+    private <T> T invoke(ForkJoinTask<T> task, int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(threads, parallelism)));
+        try {
+            return pool.invoke(task);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Configuration of a single mojo
+    private Configuration build(MojoRecord mojo) {
+        Configuration config = new Configuration();
+        config.updateHierarchy(mojo.goal, mojo.hierarchy);
+        if (mojo.index != null) {
+            Metrics.Timer timer = metrics.start("restore:" + mojo.goal);
+            mojo.index.restore(config, mojo.goal);
+            timer.stop();
+            metrics.count("mojos.restored");
+        } else {
+            Metrics.Timer timer = metrics.start("extract:" + mojo.goal);
+            MojoBuild build = new MojoBuild(config, mojo.goal);
+            for (TypeRecord type : mojo.types) {
+                build.extract(type);
+            }
+            timer.stop();
+            metrics.count("mojos.extracted");
+        }
+        return config;
+    }
+
+    private void sanitize(String doc) {
+        if (sanitizer != null) {
+            sanitizer.sanitize(doc);
+        }
+    }
+
+    // ==========================================================================================
+
+    /**
+     * A mojo to build, either from the records of its class and super classes or from
+     * the model index
+     */
+    static final class MojoRecord {
+
+        private final String goal;
+        private final List<String> hierarchy;
+        private final List<TypeRecord> types;
+        private final ModelIndex index;
+
+        private MojoRecord(String goal, List<String> hierarchy, List<TypeRecord> types, ModelIndex index) {
+            this.goal = goal;
+            this.hierarchy = hierarchy;
+            this.types = types;
+            this.index = index;
+        }
+
+        /**
+         * @param goal goal of the mojo
+         * @param hierarchy qualified names of the mojo class and its super classes
+         * @param types records of the mojo class and its super classes
+         * @return mojo whose configuration is built from the records
+         */
+        static MojoRecord extracted(String goal, List<String> hierarchy, List<TypeRecord> types) {
+            return new MojoRecord(goal, hierarchy, types, null);
+        }
+
+        /**
+         * @param goal goal of the mojo
+         * @param hierarchy qualified names of the mojo class and its super classes
+         * @param index index holding the mojo's up to date configuration
+         * @return mojo whose configuration is restored from the index
+         */
+        static MojoRecord restored(String goal, List<String> hierarchy, ModelIndex index) {
+            return new MojoRecord(goal, hierarchy, Collections.<TypeRecord>emptyList(), index);
+        }
+
+        String getGoal() {
+            return goal;
+        }
+    }
+
+    /**
+     * Builds the configurations of a range of mojos by splitting it until single mojos are left
+     */
+    private static final class BuildTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ModelBuilder builder;
+        private final List<MojoRecord> mojos;
+        // Results of all mojos and the index of this range's first mojo
+        private final Configuration[] results;
+        private final int offset;
+
+        private BuildTask(ModelBuilder builder, List<MojoRecord> mojos, Configuration[] results, int offset) {
+            this.builder = builder;
+            this.mojos = mojos;
+            this.results = results;
+            this.offset = offset;
+        }
+
+        @Override
+        protected void compute() {
+            if (mojos.size() == 1) {
+                results[offset] = builder.build(mojos.get(0));
+            } else if (mojos.size() > 1) {
+                int middle = mojos.size() / 2;
+                invokeAll(new BuildTask(builder, mojos.subList(0, middle), results, offset),
+                          new BuildTask(builder, mojos.subList(middle, mojos.size()), results, offset + middle));
+            }
+        }
+    }
+
+    /**
+     * Merges a range of configurations by splitting it until single configurations are left.
+     * The results of both halves are joined by merging the mojos of the right configuration
+     * into the left one. The mojos are given explicitly, since a mojo without any parameters
+     * has only its hierarchy in the configuration.
+     */
+    private static final class MergeTask extends RecursiveTask<Configuration> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Configuration> configs;
+        // Goal of the mojo held by each configuration
+        private final List<String> goals;
+
+        private MergeTask(List<Configuration> configs, List<String> goals) {
+            this.configs = configs;
+            this.goals = goals;
+        }
+
+        @Override
+        protected Configuration compute() {
+            if (configs.size() == 1) {
+                return configs.get(0);
+            }
+            int middle = configs.size() / 2;
+            MergeTask left = new MergeTask(configs.subList(0, middle), goals.subList(0, middle));
+            left.fork();
+            Configuration right = new MergeTask(configs.subList(middle, configs.size()),
+                                                goals.subList(middle, goals.size())).compute();
+            Configuration ret = left.join();
+            for (String goal : goals.subList(middle, goals.size())) {
+                ret.merge(right, goal);
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * Creates the elements of a single mojo. Types already extracted for this mojo are grafted
+     * for further fields of this type.
+     */
+    private final class MojoBuild {
+
+        private final Configuration config;
+        private final String goal;
+
+        // Top level config elements already extracted for a (parameterized) type
+        private final Map<String, List<ConfigElement>> extractedTypes = new HashMap<>();
+
+        private MojoBuild(Configuration config, String goal) {
+            this.config = config;
+            this.goal = goal;
+        }
+
+        private void extract(TypeRecord rootType) {
+            // Classes currently on the stack, mapped to the element holding their configuration
+            // (null for the root type). Keyed by the class only, so that recursive generic types
+            // whose type arguments grow with each level are cut off, too.
+            Map<String, ConfigElement> inProgress = new HashMap<>();
+            Deque<Frame> stack = new ArrayDeque<>();
+            enter(stack, inProgress, null, rootType);
+
+            while (!stack.isEmpty()) {
+                Frame frame = stack.peek();
+                if (!frame.fields.hasNext()) {
+                    stack.pop();
+                    inProgress.remove(frame.type.getClassName());
+                    extractedTypes.put(frame.type.getKey(), frame.extracted);
+                    continue;
+                }
+
+                TypeRecord.Field field = frame.fields.next();
+                ConfigElement current = createElement(frame, field);
+                frame.extracted.add(current);
+                if (field.getItemName() != null) {
+                    current = config.updateElement(current, goal, field.getItemName(), field.getItemType(), null, null);
+                }
+
+                TypeRecord complexType = field.getComplexType();
+                if (complexType != null) {
+                    String className = complexType.getClassName();
+                    if (inProgress.containsKey(className)) {
+                        // Cycle: Refer to the element already holding this type's configuration
+                        ConfigElement target = inProgress.get(className);
+                        if (target != null) {
+                            config.updateReference(current, target);
+                        }
+                    } else {
+                        enter(stack, inProgress, current, complexType);
+                    }
+                }
+            }
+        }
+
+        private ConfigElement createElement(Frame frame, TypeRecord.Field field) {
+            Javadoc javadoc = field.getJavadoc();
+            ConfigElement ret;
+            if (field.getKind() == Kind.ENUM) {
+                ret = config.updateEnum(frame.parent, field.getEnumValues(), goal, field.getName(), field.getType(),
+                                        field.getDefaultValue(), javadoc.getBody());
+                for (EnumValueElement value : field.getEnumValues()) {
+                    sanitize(value.getDocumentation());
+                }
+            } else {
+                ret = config.updateElement(frame.parent, goal, field.getName(), field.getType(),
+                                           field.getDefaultValue(), javadoc.getBody());
+            }
+            config.updateDocumentation(ret, javadoc.getSummary(), javadoc.getSince());
+            sanitize(javadoc.getBody());
+            sanitize(javadoc.getSummary());
+            // Parameters of the root frame are declared by the mojo class or super class itself.
+            // The first class wins for elements shared by several mojos.
+            if (frame.parent == null && ret.getDeclaringType() == null) {
+                config.updateDeclaringType(ret, frame.type.getClassName());
+            }
+            config.updateProperty(ret, field.getProperty());
+            return ret;
+        }
+
+        // Either graft an already extracted type or push a new frame for walking it
+        private void enter(Deque<Frame> stack, Map<String, ConfigElement> inProgress, ConfigElement parent, TypeRecord type) {
+            List<ConfigElement> cached = extractedTypes.get(type.getKey());
+            if (cached != null) {
+                // Copy over its elements or only add the mojo if they are already attached to this parent
+                metrics.count("types.grafted");
+                config.graft(parent, cached, goal);
+            } else {
+                inProgress.put(type.getClassName(), parent);
+                stack.push(new Frame(type, parent));
+            }
+        }
+    }
+
+    // A type whose fields are currently walked
+    private static final class Frame {
+        private final TypeRecord type;
+        private final ConfigElement parent;
+        private final Iterator<TypeRecord.Field> fields;
+        private final List<ConfigElement> extracted = new ArrayList<>();
+
+        private Frame(TypeRecord type, ConfigElement parent) {
+            this.type = type;
+            this.parent = parent;
+            this.fields = type.getFields().iterator();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Writes generated outputs only when their content changed. A rewritten file with the same
+ * content still gets a new timestamp, which makes downstream steps (packaging, resource copying,
+ * IDEs reloading schemas) believe that something changed.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+public final class OutputFiles {
+
+    private OutputFiles() {
+    }
+
+    /**
+     * Write content to a file unless the file already holds exactly this content
+     *
+     * @param file file to write
+     * @param content content to write
+     * @return true if the file has been written, false if it was unchanged
+     * @throws IOException if the file cannot be read or written
+     */
+    public static boolean write(File file, byte[] content) throws IOException {
+        // Files of a different size can't have the same content
+        if (file.isFile() && file.length() == content.length) {
+            try (InputStream in = new FileInputStream(file)) {
+                if (hasContent(in, content)) {
+                    return false;
+                }
+            }
+        }
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+        return true;
+    }
+
+    /**
+     * Check whether a stream holds the given content by comparing their digests.
+     * The stream is read until its end, but not closed.
+     *
+     * @param in stream with the previous content
+     * @param content content to compare with
+     * @return true if the stream's content is the same
+     * @throws IOException if the stream cannot be read
+     */
+    public static boolean hasContent(InputStream in, byte[] content) throws IOException {
+        MessageDigest digest = createDigest();
+        byte[] buffer = new byte[8192];
+        for (int len = in.read(buffer); len >= 0; len = in.read(buffer)) {
+            digest.update(buffer, 0, len);
+        }
+        return MessageDigest.isEqual(digest.digest(), createDigest().digest(content));
+    }
+
+    static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("No SHA-1 digest available", e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder ret = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            ret.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return ret.toString();
+    }
+}
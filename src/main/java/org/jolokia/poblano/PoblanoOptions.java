@@ -0,0 +1,207 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.*;
+
+import javax.tools.StandardLocation;
+
+/**
+ * Options for the annotation processor, given as <code>-A&lt;key&gt;=&lt;value&gt;</code>
+ * to the compiler.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+class PoblanoOptions {
+
+    // Target namespace of the generated XSD
+    static final String NAMESPACE = "poblano.namespace";
+
+    // Location where to put generated files: CLASS_OUTPUT or SOURCE_OUTPUT
+    static final String LOCATION = "poblano.location";
+
+    // Path of the generated XSD, relative to the output location
+    static final String XSD_FILE = "poblano.xsd.file";
+
+    // Layout of the generated XSD: PRETTY or MINIFIED
+    static final String XSD_FORMAT = "poblano.xsd.format";
+
+    // Whether to gzip the generated XSD (true/false)
+    static final String XSD_GZIP = "poblano.xsd.gzip";
+
+    // Whether to include the documentation in the generated XSD (true/false)
+    static final String XSD_DOCUMENTATION = "poblano.xsd.documentation";
+
+    // File for storing the extracted model between builds. Written directly, not via the Filer,
+    // so no index is used unless given.
+    static final String INDEX = "poblano.index";
+
+    // Maximum number of threads for building the model of the mojos
+    static final String THREADS = "poblano.threads";
+
+    // Comma separated list of generators to run
+    static final String GENERATORS = "poblano.generators";
+
+    // Directory for AsciiDoc snippets, relative to the output location
+    static final String ASCIIDOC_DIR = "poblano.asciidoc.dir";
+
+    // Path of the JSON schema, relative to the output location
+    static final String JSON_FILE = "poblano.json.file";
+
+    // Comma separated list of goals for which separate schemas are created ("*" for all goals)
+    static final String GOALS = "poblano.goals";
+
+    // Generate a configuration binder class per mojo (true/false)
+    static final String BINDERS = "poblano.binders";
+
+    // Generate a static parameter descriptor class per mojo (true/false)
+    static final String DESCRIPTORS = "poblano.descriptors";
+
+    // Collect and report metrics (true/false)
+    static final String METRICS = "poblano.metrics";
+
+    // Include allocated bytes in the metrics (true/false)
+    static final String METRICS_ALLOCATION = "poblano.metrics.allocation";
+
+    // File for the JSON metrics report, none is written unless given
+    static final String METRICS_FILE = "poblano.metrics.file";
+
+    static final String DEFAULT_NAMESPACE = "urn:poblano:configuration";
+    static final String DEFAULT_XSD_FILE = "META-INF/poblano/configuration.xsd";
+    static final String DEFAULT_GENERATORS = "xsd";
+    static final String DEFAULT_ASCIIDOC_DIR = "META-INF/poblano/asciidoc";
+    static final String DEFAULT_JSON_FILE = "META-INF/poblano/configuration-schema.json";
+
+    private final Map<String, String> options;
+
+    PoblanoOptions(Map<String, String> options) {
+        this.options = options;
+    }
+
+    String getNamespace() {
+        return get(NAMESPACE, DEFAULT_NAMESPACE);
+    }
+
+    StandardLocation getLocation() {
+        String location = get(LOCATION, StandardLocation.CLASS_OUTPUT.name());
+        if (StandardLocation.SOURCE_OUTPUT.name().equalsIgnoreCase(location)) {
+            return StandardLocation.SOURCE_OUTPUT;
+        } else if (StandardLocation.CLASS_OUTPUT.name().equalsIgnoreCase(location)) {
+            return StandardLocation.CLASS_OUTPUT;
+        } else {
+            throw new IllegalArgumentException("Invalid value '" + location + "' for option " + LOCATION +
+                                               " (must be either CLASS_OUTPUT or SOURCE_OUTPUT)");
+        }
+    }
+
+    String getXsdFile() {
+        return get(XSD_FILE, DEFAULT_XSD_FILE);
+    }
+
+    String getIndexFile() {
+        return get(INDEX, null);
+    }
+
+    int getThreads() {
+        String threads = get(THREADS, null);
+        if (threads == null) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        try {
+            int ret = Integer.parseInt(threads);
+            if (ret > 0) {
+                return ret;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid value '" + threads + "' for option " + THREADS +
+                                           " (must be a positive number)");
+    }
+
+    boolean isBindersEnabled() {
+        return Boolean.parseBoolean(get(BINDERS, "false"));
+    }
+
+    boolean isDescriptorsEnabled() {
+        return Boolean.parseBoolean(get(DESCRIPTORS, "false"));
+    }
+
+    boolean isMetricsEnabled() {
+        return Boolean.parseBoolean(get(METRICS, "false"));
+    }
+
+    boolean isMetricsAllocationEnabled() {
+        return Boolean.parseBoolean(get(METRICS_ALLOCATION, "false"));
+    }
+
+    String getMetricsFile() {
+        return get(METRICS_FILE, null);
+    }
+
+    List<String> getGenerators() {
+        List<String> ret = new ArrayList<>();
+        for (String name : get(GENERATORS, DEFAULT_GENERATORS).split("\\s*,\\s*")) {
+            if (name.length() != 0 && !ret.contains(name)) {
+                ret.add(name);
+            }
+        }
+        return ret;
+    }
+
+    // Goals for which separate output is requested
+    List<String> getGoalViews(List<String> allGoals) {
+        String goals = get(GOALS, null);
+        if (goals == null) {
+            return Collections.emptyList();
+        }
+        if ("*".equals(goals)) {
+            return allGoals;
+        }
+        List<String> ret = new ArrayList<>();
+        for (String goal : goals.split("\\s*,\\s*")) {
+            if (goal.length() != 0 && !ret.contains(goal)) {
+                ret.add(goal);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Path of the output for a single goal, created by adding the goal to the file name.
+     * E.g. "META-INF/poblano/configuration.xsd" for goal "build" is
+     * "META-INF/poblano/configuration-build.xsd"
+     *
+     * @param path path of the output for all goals
+     * @param goal goal to add
+     * @return the path for the goal
+     */
+    static String getGoalPath(String path, String goal) {
+        int slash = path.lastIndexOf('/');
+        int dot = path.lastIndexOf('.');
+        if (dot <= slash + 1) {
+            return path + "-" + goal;
+        }
+        return path.substring(0, dot) + "-" + goal + path.substring(dot);
+    }
+
+    String get(String key, String defaultValue) {
+        String value = options.get(key);
+        return value != null && value.trim().length() != 0 ? value.trim() : defaultValue;
+    }
+}
@@ -1,296 +1,486 @@
 package org.jolokia.poblano;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.annotation.processing.*;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.*;
 import javax.lang.model.type.*;
-import javax.lang.model.util.ElementFilter;
-import javax.lang.model.util.Elements;
-import javax.lang.model.util.Types;
 import javax.tools.Diagnostic;
+import javax.tools.FileObject;
 
 import com.google.auto.service.AutoService;
 import org.apache.maven.plugins.annotations.Mojo;
-import org.apache.maven.plugins.annotations.Parameter;
-import org.jolokia.poblano.annotation.PoblanoElement;
-import org.jolokia.poblano.annotation.PoblanoIgnore;
 import org.jolokia.poblano.model.ConfigElement;
 import org.jolokia.poblano.model.Configuration;
-import org.jolokia.poblano.model.EnumValueElement;
+import org.jolokia.poblano.model.ModelIndex;
 
 
 @SupportedAnnotationTypes({
     "org.apache.maven.plugins.annotations.Parameter",
     "org.apache.maven.plugins.annotations.Mojo"
 })
+@SupportedOptions({
+    PoblanoOptions.NAMESPACE,
+    PoblanoOptions.LOCATION,
+    PoblanoOptions.XSD_FILE,
+    PoblanoOptions.XSD_FORMAT,
+    PoblanoOptions.XSD_GZIP,
+    PoblanoOptions.XSD_DOCUMENTATION,
+    PoblanoOptions.INDEX,
+    PoblanoOptions.THREADS,
+    PoblanoOptions.GENERATORS,
+    PoblanoOptions.ASCIIDOC_DIR,
+    PoblanoOptions.JSON_FILE,
+    PoblanoOptions.GOALS,
+    PoblanoOptions.BINDERS,
+    PoblanoOptions.DESCRIPTORS,
+    PoblanoOptions.METRICS,
+    PoblanoOptions.METRICS_ALLOCATION,
+    PoblanoOptions.METRICS_FILE
+})
 @SupportedSourceVersion(SourceVersion.RELEASE_7)
 @AutoService(Processor.class)
 public class PoblanoProcessor extends AbstractProcessor {
 
-    // Object type considered to be plain configuration options
-    private static final Set<String> PLAIN_TYPES = new HashSet<>(Arrays.asList(
-        String.class.getName(),
-        Integer.class.getName(),
-        Long.class.getName(),
-        Float.class.getName(),
-        Double.class.getName(),
-        Boolean.class.getName()));
-
     private Messager messager;
     private Configuration config;
+    private TypeClassifier classifier;
+    private JavadocCache javadocs;
+    private ConfigExtractor extractor;
+    private ModelBuilder modelBuilder;
+    private DocumentationSanitizer sanitizer;
+    private BinderGenerator binders;
+    private PoblanoOptions options;
+    private Metrics metrics;
+
+    // All mojos processed, registered as originating elements of the generated files
+    private List<Element> mojoElements;
+
+    // Model stored by a previous build and the file where to store it. The index is a plain
+    // file outside of the Filer, so it is only used if its location is given explicitly.
+    private File indexFile;
+    private ModelIndex index;
+
+    // Fingerprints of all mojos processed
+    private Map<String, String> fingerprints;
+
+    // Qualified names of all mojo classes already processed in an earlier round
+    private Set<String> processedMojos;
 
-    private WildcardType wildcardTypeNull;
+    // Mojos whose configuration refers to types not available yet, retried in the next round
+    private Set<String> deferredMojos;
+
+    // Generation started at the end of a round, and whether the model changed since then
+    private Future<List<GeneratorPipeline.Result>> earlyGeneration;
+    private boolean modelChanged;
 
     @Override
     public synchronized void init(ProcessingEnvironment processingEnv) {
         super.init(processingEnv);
         messager = processingEnv.getMessager();
         config = new Configuration();
-        wildcardTypeNull = processingEnv.getTypeUtils().getWildcardType(null, null);
+        options = new PoblanoOptions(processingEnv.getOptions());
+        metrics = options.isMetricsEnabled() ?
+            new Metrics(true, options.isMetricsAllocationEnabled()) :
+            Metrics.DISABLED;
+        classifier = new TypeClassifier(processingEnv, metrics);
+        javadocs = new JavadocCache(processingEnv, metrics);
+        extractor = new ConfigExtractor(processingEnv, classifier, javadocs, metrics);
+        sanitizer = new DocumentationSanitizer(metrics);
+        modelBuilder = new ModelBuilder(getThreads(), sanitizer, metrics);
+        binders = new BinderGenerator(processingEnv);
+        mojoElements = new ArrayList<>();
+        fingerprints = new LinkedHashMap<>();
+        processedMojos = new HashSet<>();
+        deferredMojos = new LinkedHashSet<>();
+        indexFile = options.getIndexFile() != null ? new File(options.getIndexFile()) : null;
+        Metrics.Timer timer = metrics.start("index.read");
+        index = readIndex(indexFile);
+        timer.stop();
     }
 
     /** {@inheritDoc} */
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
-        for (Element el : roundEnv.getElementsAnnotatedWith(Mojo.class)) {
-            Mojo mojo = el.getAnnotation(Mojo.class);
-            info("%s: Processing ...", mojo.name());
-            while (el != null) {
-                // TODO: Remember the inheritance hierarchie so that asciidoc generation
-                // can create separate documents for base and super class
-                extractConfig(config, mojo.name(), new Stack<ConfigElement>(), el);
-                el = getSuperClassElement((TypeElement) el);
+        metrics.nextRound();
+        extractor.nextRound();
+        boolean lastRound = roundEnv.processingOver();
+        List<TypeElement> mojoTypes = new ArrayList<>();
+        List<List<DeclaredType>> hierarchies = new ArrayList<>();
+        List<ModelBuilder.MojoRecord> mojos = new ArrayList<>();
+        for (TypeElement mojoType : getMojosForRound(roundEnv)) {
+            String className = mojoType.getQualifiedName().toString();
+            if (processedMojos.contains(className)) {
+                continue;
+            }
+            Mojo mojo = mojoType.getAnnotation(Mojo.class);
+            List<DeclaredType> hierarchy = extractor.getHierarchy(mojoType);
+            // Types generated by other processors show up in a later round
+            if (!extractor.isComplete(asElements(hierarchy))) {
+                if (!lastRound) {
+                    info("%s: Configuration refers to unresolved types, deferring to next round", mojo.name());
+                    deferredMojos.add(className);
+                    metrics.count("mojos.deferred");
+                    continue;
+                }
+                warning("%s: Configuration refers to unresolved types, the model might be incomplete", mojo.name());
             }
+            deferredMojos.remove(className);
+            processedMojos.add(className);
+            mojoTypes.add(mojoType);
+            hierarchies.add(hierarchy);
+            mojos.add(collectMojo(mojo.name(), mojoType, hierarchy));
         }
-
-        if (roundEnv.processingOver()) {
-            try {
-                XSDGenerator xsdGenerator = new XSDGenerator();
-                xsdGenerator.generate(new File("/tmp/test.xsd"), "http://fabric8.io/docker-maven-plugin", config);
-            } catch (IOException e) {
-                error("Error while writing XSD: %s", e.getMessage());
+        if (!mojos.isEmpty()) {
+            // Classes are generated from each mojo's own model, before they are merged
+            List<Configuration> mojoConfigs = buildModels(mojos);
+            for (int i = 0; i < mojos.size(); i++) {
+                generateSources(mojos.get(i).getGoal(), mojoTypes.get(i), hierarchies.get(i), mojoConfigs.get(i), lastRound);
             }
+            mergeModels(mojos, mojoConfigs);
+        }
+
+        if (!lastRound) {
+            startEarlyGeneration();
+        } else {
+            generate();
+            Metrics.Timer timer = metrics.start("index.write");
+            writeIndex();
+            timer.stop();
+            reportMetrics();
         }
         return false;
     }
 
-    // Recursively extract configuration from basic and complext typs
-    private void extractConfig(Configuration config, String mojoGoal, Stack<ConfigElement> parents, Element element) {
-        List<VariableElement> fields = ElementFilter.fieldsIn(element.getEnclosedElements());
-        for (VariableElement field : fields) {
-            Parameter paramAnno = field.getAnnotation(Parameter.class);
-            PoblanoIgnore ignore = field.getAnnotation(PoblanoIgnore.class);
-            if (ignore == null && paramAnno != null) {
-                String type = extractType(field);
-                String name = extractName(field);
-                String documentation = extractDocumentation(field);
-                ConfigElement parent = parents.empty() ? null : parents.peek();
-
-                if (isEnum(field)) {
-                    List<EnumValueElement> enumValueElements = extracEnumValuesFromFieldElement(field);
-                    config.updateEnum(parent, enumValueElements, mojoGoal, name, type, paramAnno.defaultValue(), documentation);
-                    continue;
-                }
-
-                // Check for a complex type to decent into
-                ConfigElement current = config.updateElement(parent, mojoGoal, name, type, paramAnno.defaultValue(), documentation);
-
-                // If a list kind of element insert an extra config element for the list type
-                if (isArray(field) || isCollection(field)) {
-                    current = insertListItemElement(config, field, current, name, mojoGoal);
-                }
-
-                // Recursively examine included type
-                Element complexElement = extractComplexElement(field);
-                if (complexElement != null) {
-                    parents.push(current);
-                    extractConfig(config, mojoGoal, parents, complexElement);
-                    parents.pop();
-                }
+    // Mojos found in this round together with the mojos deferred in a previous round.
+    // Deferred mojos are looked up again, since their elements might be stale by now.
+    private List<TypeElement> getMojosForRound(RoundEnvironment roundEnv) {
+        List<TypeElement> ret = new ArrayList<>();
+        for (String className : deferredMojos) {
+            TypeElement type = processingEnv.getElementUtils().getTypeElement(className);
+            if (type != null) {
+                ret.add(type);
             }
         }
+        for (Element el : roundEnv.getElementsAnnotatedWith(Mojo.class)) {
+            if (el instanceof TypeElement && !deferredMojos.contains(((TypeElement) el).getQualifiedName().toString())) {
+                ret.add((TypeElement) el);
+            }
+        }
+        return ret;
     }
 
-    private List<EnumValueElement> extracEnumValuesFromFieldElement(VariableElement element) {
-        if (isEnum(element)) {
-            Elements elementUtils = processingEnv.getElementUtils();
-            List<EnumValueElement> ret = new ArrayList<>();
-            // Cast is save because of the isEnum() above
-            DeclaredType type = (DeclaredType) element.asType();
-            Element enumElement = type.asElement();
-            for (Element valueElement : enumElement.getEnclosedElements()) {
-                if (valueElement.getKind() == ElementKind.ENUM_CONSTANT) {
-                    ret.add(new EnumValueElement(valueElement.getSimpleName().toString(),
-                                                 elementUtils.getDocComment(valueElement)));
-                }
-            }
-            return ret;
-        } else {
-            return null;
+    // Use the mojo's model from the index or collect the records for extracting it. This is
+    // everything which needs the compiler's elements, the model is built afterwards.
+    private ModelBuilder.MojoRecord collectMojo(String goal, TypeElement mojoType, List<DeclaredType> hierarchy) {
+        mojoElements.add(mojoType);
+        modelChanged = true;
+        Metrics.Timer timer = metrics.start("fingerprint");
+        String fingerprint = extractor.fingerprint(goal, asElements(hierarchy));
+        timer.stop();
+        fingerprints.put(goal, fingerprint);
+        List<String> classes = getQualifiedNames(hierarchy);
+        if (index != null && index.isUpToDate(goal, fingerprint)) {
+            info("%s: Unchanged, using model from index", goal);
+            return ModelBuilder.MojoRecord.restored(goal, classes, index);
         }
 
+        info("%s: Processing ...", goal);
+        timer = metrics.start("collect:" + goal);
+        List<TypeRecord> types = new ArrayList<>(hierarchy.size());
+        for (DeclaredType type : hierarchy) {
+            types.add(extractor.collect(type));
+        }
+        timer.stop();
+        return ModelBuilder.MojoRecord.extracted(goal, classes, types);
     }
 
-    private ConfigElement insertListItemElement(Configuration config, VariableElement field, ConfigElement current, String name, String mojo) {
-        DeclaredType listItemType = extractListElementType(field);
-        if (listItemType == null) {
-            listItemType = (DeclaredType) processingEnv.getElementUtils().getTypeElement("java.lang.String").asType();
+    // Build the models of this round's mojos concurrently
+    private List<Configuration> buildModels(List<ModelBuilder.MojoRecord> mojos) {
+        Metrics.Timer timer = metrics.start("build");
+        try {
+            return modelBuilder.build(mojos);
+        } finally {
+            timer.stop();
         }
-        String itemType = listItemType.toString();
-        String itemName = extractItemName(field, name, listItemType);
-        current = config.updateElement(current, mojo, itemName, itemType, null, null);
-        return current;
     }
 
-    private String extractItemName(VariableElement field, String name, DeclaredType listItemType) {
-        PoblanoElement poblanoElement = field.getAnnotation(PoblanoElement.class);
-        if (poblanoElement != null) {
-            return poblanoElement.value();
-        } else {
-            return itemTypeToName(name, listItemType);
+    // Merge the models of this round's mojos into the overall model, in the order of the mojos
+    private void mergeModels(List<ModelBuilder.MojoRecord> mojos, List<Configuration> mojoConfigs) {
+        Metrics.Timer timer = metrics.start("merge");
+        modelBuilder.merge(config, mojos, mojoConfigs);
+        timer.stop();
+    }
+
+    // Classes generated per mojo. Sources created in the last round would not be compiled anymore.
+    private void generateSources(String goal, TypeElement mojoType, List<DeclaredType> hierarchy, Configuration mojoConfig,
+                                 boolean lastRound) {
+        if (!options.isBindersEnabled() && !options.isDescriptorsEnabled()) {
+            return;
+        }
+        if (lastRound) {
+            warning("%s: Mojo processed in the last round, no classes generated", goal);
+            return;
+        }
+        if (options.isBindersEnabled()) {
+            generateBinder(goal, mojoType, hierarchy, mojoConfig);
+        }
+        if (options.isDescriptorsEnabled()) {
+            generateDescriptor(goal, mojoType, mojoConfig);
         }
     }
 
-    private String itemTypeToName(String listName, DeclaredType listItemType) {
-        if (isComplexType(listItemType)) {
-            String itemTypeName = listItemType.toString();
-            int idx = itemTypeName.lastIndexOf(".");
-            if (idx > -1) {
-                return itemTypeName.substring(idx+1).toLowerCase();
-            } else {
-                return itemTypeName.toLowerCase();
-            }
-        } else {
-            // Try to determine singular form if list is named in plural
-            if (listName.endsWith("s")) {
-                return listName.substring(0,listName.length() - 1).toLowerCase();
-            } else {
-                return "item";
+    private void generateBinder(String goal, TypeElement mojoType, List<DeclaredType> hierarchy, Configuration mojoConfig) {
+        String binderName = getGeneratedClassName(mojoType, BinderGenerator.BINDER_SUFFIX);
+        Metrics.Timer timer = metrics.start("binder:" + goal);
+        try {
+            List<String> unbound = binders.generate(mojoConfig, goal, mojoType, asElements(hierarchy), binderName);
+            metrics.count("binders.generated");
+            if (!unbound.isEmpty()) {
+                info("%s: Parameters %s can't be bound without reflection, binder falls back when they are configured",
+                     goal, unbound);
             }
+        } catch (IOException e) {
+            error("%s: Cannot generate binder %s: %s", goal, binderName, e.getMessage());
+        } finally {
+            timer.stop();
         }
     }
 
-    private Element extractComplexElement(VariableElement field) {
-        if (isArray(field) || isCollection(field)) {
-            DeclaredType listElementType = extractListElementType(field);
-            if (listElementType != null) {
-                if (isComplexType(listElementType)) {
-                    return listElementType.asElement();
-                }
+    private void generateDescriptor(String goal, TypeElement mojoType, Configuration mojoConfig) {
+        String descriptorName = getGeneratedClassName(mojoType, DescriptorGenerator.DESCRIPTOR_SUFFIX);
+        Metrics.Timer timer = metrics.start("descriptor:" + goal);
+        try {
+            String source = DescriptorGenerator.createSource(mojoConfig, goal, mojoType.getQualifiedName().toString(),
+                                                             descriptorName);
+            try (Writer writer = processingEnv.getFiler().createSourceFile(descriptorName, mojoType).openWriter()) {
+                writer.write(source);
             }
-        } else if (isComplexType(field.asType())) {
-            DeclaredType declareFieldType = (DeclaredType) field.asType();
-            return declareFieldType.asElement();
+            metrics.count("descriptors.generated");
+        } catch (IOException | IllegalArgumentException e) {
+            error("%s: Cannot generate descriptor %s: %s", goal, descriptorName, e.getMessage());
+        } finally {
+            timer.stop();
         }
-        return null;
     }
 
-    private String extractType(VariableElement field) {
-        if (isMap(field)) {
-            return ConfigElement.MAP_TYPE;
-        } else if (isArray(field)) {
-            return ConfigElement.ARRAY_TYPE;
-        } else if (isCollection(field)) {
-            return ConfigElement.COLLECTION_TYPE;
-        } else {
-            return field.asType().toString();
-        }
+    // Generated classes live in the mojo's package. Nested mojo classes are flattened.
+    private String getGeneratedClassName(TypeElement mojoType, String suffix) {
+        String pkg = processingEnv.getElementUtils().getPackageOf(mojoType).getQualifiedName().toString();
+        String name = mojoType.getQualifiedName().toString().substring(pkg.length() == 0 ? 0 : pkg.length() + 1);
+        return (pkg.length() == 0 ? "" : pkg + ".") + name.replace('.', '_') + suffix;
     }
 
-    // The given field is either an array or a collection. Try to find out the complex type
-    // for them
-    private DeclaredType extractListElementType(VariableElement field) {
-        if (isArray(field)) {
-            ArrayType arrayType = (ArrayType) field.asType();
-            return (DeclaredType) arrayType.getComponentType();
-        } else if (isCollection(field) || isArray(field)){
-            DeclaredType declaredType = (DeclaredType) field.asType();
-
-            List<? extends TypeMirror> typeArgs = declaredType.getTypeArguments();
-            if (typeArgs != null && typeArgs.size() == 1) {
-                return (DeclaredType) typeArgs.get(0);
-            }
+    // When no mojo is waiting for types of a later round, the model is most likely complete
+    // already. The generators then run on a snapshot of the model while the compiler continues,
+    // and the result is used if the model didn't change until the last round.
+    private void startEarlyGeneration() {
+        if (!modelChanged || !deferredMojos.isEmpty()) {
+            return;
         }
+        cancelEarlyGeneration();
+        try {
+            earlyGeneration = createPipeline().start(config.copy(), options);
+            modelChanged = false;
+        } catch (IllegalArgumentException e) {
+            // Reported when generating in the last round
+        }
+    }
 
-        return null;
+    private void cancelEarlyGeneration() {
+        if (earlyGeneration != null) {
+            earlyGeneration.cancel(true);
+            earlyGeneration = null;
+        }
     }
 
-    private Element getSuperClassElement(TypeElement el) {
-        TypeMirror supertype =  el.getSuperclass();
-        if (supertype.getKind() != TypeKind.NONE) {
-            DeclaredType declared = (DeclaredType) supertype;
-            return declared.asElement();
-        } else {
+    private List<GeneratorPipeline.Result> getEarlyGenerationResults() {
+        if (earlyGeneration == null || modelChanged) {
+            cancelEarlyGeneration();
+            return null;
+        }
+        try {
+            List<GeneratorPipeline.Result> results = earlyGeneration.get();
+            metrics.count("generation.early");
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | CancellationException e) {
             return null;
+        } finally {
+            earlyGeneration = null;
         }
     }
 
-    private boolean isComplexType(TypeMirror type) {
-        return type.getKind() == TypeKind.DECLARED && !PLAIN_TYPES.contains(type.toString());
+    private GeneratorPipeline createPipeline() {
+        GeneratorPipeline pipeline = GeneratorPipeline.create(options.getGenerators(), PoblanoProcessor.class.getClassLoader(),
+                                                              sanitizer, metrics);
+        return pipeline;
     }
 
-    private boolean isEnum(VariableElement element) {
-        TypeMirror type = element.asType();
-        if (type.getKind() == TypeKind.DECLARED) {
-            return ((DeclaredType) type).asElement().getKind() == ElementKind.ENUM;
+    // Run all generators concurrently and write their output on this thread, since
+    // the Filer must not be used from other threads
+    private void generate() {
+        List<GeneratorPipeline.Result> results = getEarlyGenerationResults();
+        if (results == null) {
+            try {
+                results = createPipeline().run(config, options);
+            } catch (IllegalArgumentException e) {
+                error("%s", e.getMessage());
+                return;
+            }
+        }
+        int unchanged = 0;
+        int total = 0;
+        for (GeneratorPipeline.Result result : results) {
+            String name = result.getGenerator().getName();
+            if (result.getError() != null) {
+                error("Error while generating %s: %s", name, result.getError().getMessage());
+                continue;
+            }
+            for (Map.Entry<String, byte[]> output : result.getOutputs().entrySet()) {
+                Metrics.Timer timer = metrics.start("write");
+                total++;
+                try {
+                    if (writeOutput(output.getKey(), output.getValue())) {
+                        metrics.count("outputs.written");
+                        metrics.count("outputs.bytes", output.getValue().length);
+                    } else {
+                        metrics.count("outputs.unchanged");
+                        unchanged++;
+                    }
+                } catch (IOException | IllegalArgumentException e) {
+                    error("Error while writing %s output %s: %s", name, output.getKey(), e.getMessage());
+                } finally {
+                    timer.stop();
+                }
+            }
+        }
+        if (unchanged > 0) {
+            info("%d of %d outputs unchanged, not written again", unchanged, total);
         }
-        return false;
     }
 
-    private boolean isArray(VariableElement field) {
-        TypeMirror type = field.asType();
-        return type.getKind() == TypeKind.ARRAY;
+    // Every output is created via the Filer with its originating elements, since incremental
+    // builds (like Gradle's for aggregating processors) track the generated files this way.
+    // Only an output already holding the same content is not written again, so that it keeps its timestamp.
+    private boolean writeOutput(String path, byte[] content) throws IOException {
+        boolean unchanged = hasPreviousOutput(path, content);
+        FileObject file = processingEnv.getFiler().createResource(options.getLocation(), "", path,
+                                                                  mojoElements.toArray(new Element[mojoElements.size()]));
+        if (unchanged) {
+            return false;
+        }
+        try (OutputStream out = file.openOutputStream()) {
+            out.write(content);
+        }
+        return true;
     }
 
-    private boolean isCollection(VariableElement field) {
-        return isAssignable(field,"java.util.Collection", 1);
+    private boolean hasPreviousOutput(String path, byte[] content) {
+        try {
+            FileObject previous = processingEnv.getFiler().getResource(options.getLocation(), "", path);
+            try (InputStream in = previous.openInputStream()) {
+                return OutputFiles.hasContent(in, content);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // No previous output
+            return false;
+        }
     }
 
-    private boolean isMap(VariableElement field) {
-        return isAssignable(field,"java.util.Map", 2);
+    private void writeIndex() {
+        if (indexFile != null) {
+            try {
+                ModelIndex.write(indexFile, config, fingerprints);
+            } catch (IOException e) {
+                warning("Cannot write model index %s: %s", indexFile, e.getMessage());
+            }
+        }
     }
 
-    private boolean isAssignable(VariableElement field, String assignableTo, int nrWildcads) {
-        TypeMirror type = field.asType();
-
+    // Summary as note and, if a file is configured, full report as JSON
+    private void reportMetrics() {
+        if (!metrics.isEnabled()) {
+            return;
+        }
+        metrics.count("elements", countElements(config.getRootElements()));
+        info("%s", metrics.getSummary());
+        String path = options.getMetricsFile();
+        if (path != null) {
+            File file = new File(path);
+            try {
+                File dir = file.getParentFile();
+                if (dir != null && !dir.exists() && !dir.mkdirs()) {
+                    throw new IOException("Cannot create directory " + dir);
+                }
+                try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                    writer.write(metrics.toJson());
+                }
+            } catch (IOException e) {
+                warning("Cannot write metrics %s: %s", file, e.getMessage());
+            }
+        }
+    }
 
-        if (type.getKind() == TypeKind.DECLARED) {
-            Types typeUtils = processingEnv.getTypeUtils();
-            Elements elementUtils = processingEnv.getElementUtils();
+    private int countElements(List<ConfigElement> elements) {
+        int count = elements.size();
+        for (ConfigElement element : elements) {
+            count += countElements(element.getChildren());
+        }
+        return count;
+    }
 
-            TypeElement assignableElement = elementUtils.getTypeElement(assignableTo);
-            TypeMirror[] wildCards = new TypeMirror[nrWildcads];
-            for (int i = 0; i < nrWildcads; i++) {
-                wildCards[i] = wildcardTypeNull;
+    private ModelIndex readIndex(File file) {
+        if (file != null) {
+            try {
+                return ModelIndex.read(file);
+            } catch (IOException e) {
+                warning("Cannot read model index %s, extracting all mojos: %s", file, e.getMessage());
             }
-            DeclaredType declaredType = typeUtils.getDeclaredType(assignableElement, wildCards);
-            boolean isAssignable = typeUtils.isAssignable(type, declaredType);
-
-            return isAssignable;
-        } else {
-            return false;
         }
+        return null;
     }
 
-    private String extractDocumentation(VariableElement el) {
-        return processingEnv.getElementUtils().getDocComment(el);
+    private int getThreads() {
+        try {
+            return options.getThreads();
+        } catch (IllegalArgumentException e) {
+            error("%s", e.getMessage());
+            return 1;
+        }
     }
 
-    private String extractName(Element el) {
-        return el.getSimpleName().toString();
+    private List<String> getQualifiedNames(List<DeclaredType> types) {
+        List<String> ret = new ArrayList<>(types.size());
+        for (TypeElement type : asElements(types)) {
+            ret.add(type.getQualifiedName().toString());
+        }
+        return ret;
     }
 
-    private String extractType(Element el) {
-        return el.getSimpleName().toString();
+    private List<TypeElement> asElements(List<DeclaredType> types) {
+        List<TypeElement> ret = new ArrayList<>(types.size());
+        for (DeclaredType type : types) {
+            ret.add((TypeElement) type.asElement());
+        }
+        return ret;
     }
 
     private void info(String format, Object ... args) {
         messager.printMessage(Diagnostic.Kind.NOTE, String.format(format,args));
     }
 
+    private void warning(String format, Object ... args) {
+        messager.printMessage(Diagnostic.Kind.WARNING, String.format(format,args));
+    }
+
     private void error(String format, Object ... args) {
         messager.printMessage(Diagnostic.Kind.ERROR, String.format(format,args));
     }
@@ -0,0 +1,138 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.*;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.*;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * Classifies the type of configuration fields. The type mirrors used for checking
+ * assignability are created only once and the kind of each type is remembered,
+ * so that every type needs to be checked only once. The kind doesn't depend on type
+ * arguments, so declared types are remembered by their erased qualified name (every
+ * <code>List&lt;...&gt;</code> is a new mirror). All other types are classified by their kind.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+class TypeClassifier {
+
+    /**
+     * Kind of a configuration type
+     */
+    enum Kind {
+        // Simple values like strings, numbers or primitives
+        PLAIN,
+        ENUM,
+        ARRAY,
+        COLLECTION,
+        MAP,
+        // Any other declared type which is examined for nested configuration
+        COMPLEX
+    }
+
+    // Object type considered to be plain configuration options
+    private static final Set<String> PLAIN_TYPES = new HashSet<>(Arrays.asList(
+        String.class.getName(),
+        Integer.class.getName(),
+        Long.class.getName(),
+        Float.class.getName(),
+        Double.class.getName(),
+        Boolean.class.getName()));
+
+    private final Types typeUtils;
+
+    // Erased Collection<?> and Map<?,?>
+    private final DeclaredType collectionType;
+    private final DeclaredType mapType;
+
+    private final Map<String, Kind> kindCache = new HashMap<>();
+
+    private final Metrics metrics;
+
+    TypeClassifier(ProcessingEnvironment processingEnv) {
+        this(processingEnv, Metrics.DISABLED);
+    }
+
+    TypeClassifier(ProcessingEnvironment processingEnv, Metrics metrics) {
+        this.metrics = metrics;
+        typeUtils = processingEnv.getTypeUtils();
+        Elements elementUtils = processingEnv.getElementUtils();
+        WildcardType wildcardTypeNull = typeUtils.getWildcardType(null, null);
+        collectionType = typeUtils.getDeclaredType(elementUtils.getTypeElement("java.util.Collection"),
+                                                   wildcardTypeNull);
+        mapType = typeUtils.getDeclaredType(elementUtils.getTypeElement("java.util.Map"),
+                                            wildcardTypeNull, wildcardTypeNull);
+    }
+
+    /**
+     * Get the kind of a type
+     *
+     * @param type type to classify
+     * @return the kind, never null
+     */
+    Kind classify(TypeMirror type) {
+        String key = type.getKind() == TypeKind.DECLARED ?
+            ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString() :
+            type.getKind().name();
+        Kind kind = kindCache.get(key);
+        if (kind == null) {
+            metrics.count("classifier.cache.miss");
+            kind = computeKind(type, key);
+            kindCache.put(key, kind);
+        } else {
+            metrics.count("classifier.cache.hit");
+        }
+        return kind;
+    }
+
+    /**
+     * Check whether a type is a declared type which is not a plain configuration type
+     *
+     * @param type type to check
+     * @return true if this is neither a plain type nor an array
+     */
+    boolean isComplexType(TypeMirror type) {
+        Kind kind = classify(type);
+        return kind != Kind.PLAIN && kind != Kind.ARRAY;
+    }
+
+    private Kind computeKind(TypeMirror type, String key) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            return Kind.ARRAY;
+        }
+        if (type.getKind() != TypeKind.DECLARED) {
+            return Kind.PLAIN;
+        }
+        if (((DeclaredType) type).asElement().getKind() == ElementKind.ENUM) {
+            return Kind.ENUM;
+        }
+        if (typeUtils.isAssignable(type, mapType)) {
+            return Kind.MAP;
+        }
+        if (typeUtils.isAssignable(type, collectionType)) {
+            return Kind.COLLECTION;
+        }
+        return PLAIN_TYPES.contains(key) ? Kind.PLAIN : Kind.COMPLEX;
+    }
+}
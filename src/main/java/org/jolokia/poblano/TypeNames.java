@@ -0,0 +1,124 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.*;
+
+import org.jolokia.poblano.model.ConfigElement;
+
+/**
+ * Assigns names to configuration types which are declared globally by the
+ * generators, so that they can be referenced from within themselves or from
+ * every place they are used.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+class TypeNames {
+
+    private TypeNames() {
+    }
+
+    /**
+     * Find all elements which are the target of a back reference and assign them a unique type name
+     *
+     * @param rootElements elements to start with
+     * @param filter only elements accepted by this filter are examined
+     * @return elements mapped to their type name, in the order they have been found
+     */
+    static Map<ConfigElement, String> collectReferencedTypes(List<ConfigElement> rootElements, GoalFilter filter) {
+        Map<ConfigElement, String> namedTypes = new LinkedHashMap<>();
+        Set<String> usedNames = new HashSet<>();
+        Deque<ConfigElement> toVisit = new ArrayDeque<>(rootElements);
+        while (!toVisit.isEmpty()) {
+            ConfigElement element = toVisit.pop();
+            if (!filter.accepts(element)) {
+                continue;
+            }
+            ConfigElement target = element.getReference();
+            if (target != null && !namedTypes.containsKey(target)) {
+                namedTypes.put(target, uniqueName(target.getType(), usedNames));
+            }
+            toVisit.addAll(element.getChildren());
+        }
+        return namedTypes;
+    }
+
+    /**
+     * Find all distinct configuration types (i.e. complex elements which are not lists or arrays)
+     * and assign them a unique type name. The first element found for a type is used as
+     * representative holding the type's configuration. Since a type's content is the same for all
+     * goals, the filter is only applied to elements outside of such a type.
+     *
+     * @param rootElements elements to start with
+     * @param filter only elements accepted by this filter are examined
+     * @return representative elements mapped to their type name, in the order they have been found
+     */
+    static Map<ConfigElement, String> collectComplexTypes(List<ConfigElement> rootElements, GoalFilter filter) {
+        Map<ConfigElement, String> namedTypes = new LinkedHashMap<>();
+        Set<String> seenTypes = new HashSet<>();
+        Set<String> usedNames = new HashSet<>();
+        Deque<ConfigElement> toVisit = new ArrayDeque<>(rootElements);
+        // Elements within a named type, which are not filtered
+        Deque<ConfigElement> toVisitUnfiltered = new ArrayDeque<>();
+        while (!toVisit.isEmpty() || !toVisitUnfiltered.isEmpty()) {
+            boolean unfiltered = toVisit.isEmpty();
+            ConfigElement element = unfiltered ? toVisitUnfiltered.pop() : toVisit.pop();
+            if (!unfiltered && !filter.accepts(element)) {
+                continue;
+            }
+            ConfigElement representative = element.isReference() ? element.getReference() : element;
+            if (isComplexType(representative)) {
+                // Each type is entered only once, all other usages refer to it by name
+                if (seenTypes.add(representative.getType())) {
+                    namedTypes.put(representative, uniqueName(representative.getType(), usedNames));
+                    toVisitUnfiltered.addAll(representative.getChildren());
+                }
+            } else {
+                (unfiltered ? toVisitUnfiltered : toVisit).addAll(element.getChildren());
+            }
+        }
+        return namedTypes;
+    }
+
+    /**
+     * Check whether an element holds the configuration of a Java type which gets a global
+     * declaration. Lists and arrays are containers which are declared inline.
+     *
+     * @param element element to check
+     * @return true if the element's type is declared globally
+     */
+    static boolean isComplexType(ConfigElement element) {
+        return element.isComplexType() && !element.isListLike() && !element.isMap();
+    }
+
+    private static String uniqueName(String type, Set<String> usedNames) {
+        String name = toTypeName(type);
+        String uniqueName = name;
+        for (int i = 2; usedNames.contains(uniqueName); i++) {
+            uniqueName = name + i;
+        }
+        usedNames.add(uniqueName);
+        return uniqueName;
+    }
+
+    // Java type names can contain characters (e.g. for generics) which are not allowed in an XML name
+    private static String toTypeName(String type) {
+        String name = type.replaceAll("[^A-Za-z0-9._-]", "_");
+        return Character.isLetter(name.charAt(0)) ? name : "_" + name;
+    }
+}
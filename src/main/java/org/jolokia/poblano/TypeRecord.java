@@ -0,0 +1,151 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jolokia.poblano.TypeClassifier.Kind;
+import org.jolokia.poblano.model.EnumValueElement;
+
+/**
+ * Configuration relevant data of a (parameterized) type as collected from the compiler:
+ * Its parameters with names, types, annotation values and JavaDoc. A record contains no
+ * elements or type mirrors, so it can be used after the round it was collected in and
+ * from other threads than the compiler's.
+ *
+ * Parameters of a complex type refer to the record of this type, so records form the same
+ * graph as the types they have been collected from, including cycles.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+final class TypeRecord {
+
+    // Name including the type arguments
+    private final String key;
+    // Qualified name of the class
+    private final String className;
+    private final List<Field> fields = new ArrayList<>();
+
+    TypeRecord(String key, String className) {
+        this.key = key;
+        this.className = className;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    String getClassName() {
+        return className;
+    }
+
+    // Parameters in declaration order, ignored fields are not contained
+    List<Field> getFields() {
+        return Collections.unmodifiableList(fields);
+    }
+
+    void add(Field field) {
+        fields.add(field);
+    }
+
+    /**
+     * A parameter of a type
+     */
+    static final class Field {
+
+        private final String name;
+        private final String type;
+        private final Kind kind;
+        private final String defaultValue;
+        private final String property;
+        private final Javadoc javadoc;
+        private final List<EnumValueElement> enumValues;
+        private final String itemName;
+        private final String itemType;
+        private final TypeRecord complexType;
+
+        /**
+         * @param name name of the parameter
+         * @param type type as stored in the model, i.e. a marker type for lists and maps
+         * @param kind kind of the parameter's type
+         * @param defaultValue default value as given in the annotation
+         * @param property user property from the annotation
+         * @param javadoc the field's documentation
+         * @param enumValues values of an enum, <code>null</code> for all other kinds
+         * @param itemName name of the items of an array or collection, <code>null</code> for all other kinds
+         * @param itemType type of the items of an array or collection
+         * @param complexType type whose parameters are nested below the parameter (or its items),
+         *                    <code>null</code> if there is none
+         */
+        Field(String name, String type, Kind kind, String defaultValue, String property, Javadoc javadoc,
+              List<EnumValueElement> enumValues, String itemName, String itemType, TypeRecord complexType) {
+            this.name = name;
+            this.type = type;
+            this.kind = kind;
+            this.defaultValue = defaultValue;
+            this.property = property;
+            this.javadoc = javadoc;
+            this.enumValues = enumValues;
+            this.itemName = itemName;
+            this.itemType = itemType;
+            this.complexType = complexType;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        String getType() {
+            return type;
+        }
+
+        Kind getKind() {
+            return kind;
+        }
+
+        String getDefaultValue() {
+            return defaultValue;
+        }
+
+        String getProperty() {
+            return property;
+        }
+
+        Javadoc getJavadoc() {
+            return javadoc;
+        }
+
+        List<EnumValueElement> getEnumValues() {
+            return enumValues;
+        }
+
+        String getItemName() {
+            return itemName;
+        }
+
+        String getItemType() {
+            return itemType;
+        }
+
+        TypeRecord getComplexType() {
+            return complexType;
+        }
+    }
+}
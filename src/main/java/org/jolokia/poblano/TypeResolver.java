@@ -0,0 +1,170 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.*;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.*;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+
+/**
+ * Resolves the types of configuration fields with all type variables substituted. A generic
+ * configuration class like <code>Wrapper&lt;T&gt;</code> is walked as the parameterized type
+ * it is used with (e.g. <code>Wrapper&lt;Port&gt;</code>), so that a field <code>T value</code>
+ * is seen as <code>Port</code>.
+ *
+ * The resolved fields are memoized per parameterized type, so every instantiation is resolved
+ * only once per round, no matter how many fields or mojos use it. Keys are the types' names
+ * including their type arguments. The memoized fields and types belong to the round they were
+ * resolved in, so the cache is cleared when a new round starts.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+class TypeResolver {
+
+    private final Types typeUtils;
+    private final Metrics metrics;
+
+    private final Map<String, List<Member>> members = new HashMap<>();
+
+    TypeResolver(ProcessingEnvironment processingEnv, Metrics metrics) {
+        this.typeUtils = processingEnv.getTypeUtils();
+        this.metrics = metrics;
+    }
+
+    /**
+     * Forget all resolved fields, must be called at the start of each round
+     */
+    void nextRound() {
+        members.clear();
+    }
+
+    /**
+     * Get the fields of a type with their types resolved for this parameterization
+     *
+     * @param type type whose fields are to be resolved
+     * @return fields in declaration order
+     */
+    List<Member> getFields(DeclaredType type) {
+        String key = key(type);
+        List<Member> ret = members.get(key);
+        if (ret == null) {
+            metrics.count("types.resolve.miss");
+            ret = new ArrayList<>();
+            boolean parameterized = !type.getTypeArguments().isEmpty();
+            for (VariableElement field : ElementFilter.fieldsIn(type.asElement().getEnclosedElements())) {
+                TypeMirror fieldType = parameterized ? typeUtils.asMemberOf(type, field) : field.asType();
+                ret.add(new Member(field, normalize(fieldType)));
+            }
+            members.put(key, ret);
+        } else {
+            metrics.count("types.resolve.hit");
+        }
+        return ret;
+    }
+
+    /**
+     * Get a class and its super classes as parameterized types. A super class is given with
+     * the type arguments of the <code>extends</code> clause, e.g. <code>BaseMojo&lt;Port&gt;</code>.
+     * The walk stops at a super class which cannot be resolved.
+     *
+     * @param type class to start with
+     * @return the class and all its super classes
+     */
+    List<DeclaredType> getHierarchy(TypeElement type) {
+        List<DeclaredType> ret = new ArrayList<>();
+        DeclaredType current = (DeclaredType) type.asType();
+        while (current != null) {
+            ret.add(current);
+            current = getSuperclass(current);
+        }
+        return ret;
+    }
+
+    private DeclaredType getSuperclass(DeclaredType type) {
+        TypeMirror superclass = ((TypeElement) type.asElement()).getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        // Direct super types are substituted with the type's arguments, the super class as declared is not
+        TypeMirror erased = typeUtils.erasure(superclass);
+        for (TypeMirror supertype : typeUtils.directSupertypes(type)) {
+            if (typeUtils.isSameType(typeUtils.erasure(supertype), erased)) {
+                return (DeclaredType) supertype;
+            }
+        }
+        return (DeclaredType) superclass;
+    }
+
+    /**
+     * Replace wildcards by their bound and type variables by their upper bound. Wildcards
+     * without a bound and type variables bound only by <code>Object</code> are returned as they are.
+     *
+     * @param type type to normalize
+     * @return the normalized type
+     */
+    TypeMirror normalize(TypeMirror type) {
+        if (type.getKind() == TypeKind.WILDCARD) {
+            WildcardType wildcard = (WildcardType) type;
+            TypeMirror bound = wildcard.getExtendsBound() != null ? wildcard.getExtendsBound() : wildcard.getSuperBound();
+            return bound != null ? normalize(bound) : type;
+        } else if (type.getKind() == TypeKind.TYPEVAR) {
+            TypeMirror upper = ((TypeVariable) type).getUpperBound();
+            // Intersection types are replaced by their first bound
+            TypeMirror bound = upper.getKind() == TypeKind.DECLARED ? upper : typeUtils.erasure(type);
+            return isObject(bound) ? type : normalize(bound);
+        }
+        return type;
+    }
+
+    // Cache key, including the type arguments
+    String key(DeclaredType type) {
+        return type.toString();
+    }
+
+    private boolean isObject(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED &&
+               ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().contentEquals("java.lang.Object");
+    }
+
+    /**
+     * A field together with its resolved type
+     */
+    static final class Member {
+
+        private final VariableElement field;
+        private final TypeMirror type;
+
+        private Member(VariableElement field, TypeMirror type) {
+            this.field = field;
+            this.type = type;
+        }
+
+        VariableElement getField() {
+            return field;
+        }
+
+        TypeMirror getType() {
+            return type;
+        }
+    }
+}
@@ -18,138 +18,430 @@ package org.jolokia.poblano;
 
 import java.io.*;
 import java.util.*;
+import java.util.zip.GZIPOutputStream;
 
-import javax.xml.transform.OutputKeys;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.*;
+import javax.xml.transform.*;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
 
-import com.jamesmurty.utils.XMLBuilder2;
 import org.jolokia.poblano.model.ConfigElement;
 import org.jolokia.poblano.model.Configuration;
 import org.jolokia.poblano.model.EnumValueElement;
-import org.w3c.tidy.Tidy;
+import org.w3c.dom.Document;
 
 /**
  * @author roland
  * @since 30/05/16
  */
-public class XSDGenerator {
+public class XSDGenerator implements Generator {
 
     public static final String XSD_NS = "http://www.w3.org/2001/XMLSchema";
     private static final String XSD_HTML = "http://www.w3.org/1999/xhtml";
 
+    /**
+     * How the schema gets serialized
+     */
+    public enum Mode {
+        /**
+         * Write the schema directly to the output while walking the configuration model.
+         * Memory usage does not depend on the size of the schema.
+         */
+        STREAMING,
+        /**
+         * Build the whole schema as DOM in memory and serialize it at the end
+         */
+        DOM
+    }
+
+    /**
+     * Layout of the generated schema
+     */
+    public enum Format {
+        /**
+         * Nested elements are indented by two spaces
+         */
+        PRETTY,
+        /**
+         * No whitespace between elements for the smallest possible schema
+         */
+        MINIFIED
+    }
+
     // Mapping from Java class to simple types
     private static final Map<String,String> SIMPLE_TYPE_LOOKUP;
 
-    private final Tidy tidy;
+    private final DocumentationSanitizer sanitizer;
+    private final Mode mode;
+
+    private final XMLOutputFactory outputFactory;
+    private final XMLInputFactory inputFactory;
 
     public XSDGenerator() {
-        tidy = createTidy();
+        this(Mode.STREAMING);
+    }
+
+    public XSDGenerator(Mode mode) {
+        this(mode, new DocumentationSanitizer());
+    }
+
+    public XSDGenerator(Mode mode, DocumentationSanitizer sanitizer) {
+        this.mode = mode;
+        this.sanitizer = sanitizer;
+        outputFactory = XMLOutputFactory.newInstance();
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    /** {@inheritDoc} */
+    public String getName() {
+        return "xsd";
+    }
+
+    /** {@inheritDoc} */
+    public void generate(Configuration config, GeneratorContext context) throws IOException {
+        String xsdFile = context.getOption(PoblanoOptions.XSD_FILE, PoblanoOptions.DEFAULT_XSD_FILE);
+        Format format = getFormat(context.getOption(PoblanoOptions.XSD_FORMAT, Format.PRETTY.name()));
+        boolean documentation = Boolean.parseBoolean(context.getOption(PoblanoOptions.XSD_DOCUMENTATION, "true"));
+        boolean gzip = Boolean.parseBoolean(context.getOption(PoblanoOptions.XSD_GZIP, "false"));
+        try (OutputStream out = createOutput(context, xsdFile, gzip)) {
+            generate(out, context.getNamespace(), config, null, format, documentation);
+        }
+        for (String goal : context.getGoalViews()) {
+            try (OutputStream out = createOutput(context, PoblanoOptions.getGoalPath(xsdFile, goal), gzip)) {
+                generate(out, context.getNamespace(), config, goal, format, documentation);
+            }
+        }
+    }
+
+    // Compressed schemas get a ".gz" suffix
+    private OutputStream createOutput(GeneratorContext context, String path, boolean gzip) throws IOException {
+        if (gzip) {
+            return new GZIPOutputStream(context.createOutput(path + ".gz"));
+        } else {
+            return context.createOutput(path);
+        }
     }
 
+    private Format getFormat(String format) {
+        for (Format value : Format.values()) {
+            if (value.name().equalsIgnoreCase(format)) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Invalid value '" + format + "' for option " + PoblanoOptions.XSD_FORMAT +
+                                           " (must be either PRETTY or MINIFIED)");
+    }
+
+    /**
+     * Generate the schema into a file. The file is only written if its content changed.
+     *
+     * @param targetFile file to write
+     * @param targetNamespaceUri namespace of the schema
+     * @param config configuration model
+     * @throws IOException if the file cannot be written
+     */
     public void generate(File targetFile, String targetNamespaceUri, Configuration config) throws IOException {
-        XMLBuilder2 builder = createXsdBuilder(targetNamespaceUri);
-        generateElements(builder, config, config.getRootElements());
-        writeXsd(builder, targetFile);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        generate(out, targetNamespaceUri, config);
+        OutputFiles.write(targetFile, out.toByteArray());
+    }
+
+    public void generate(OutputStream out, String targetNamespaceUri, Configuration config) throws IOException {
+        generate(out, targetNamespaceUri, config, null);
+    }
+
+    /**
+     * Generate a schema for the configuration of a single goal
+     *
+     * @param out stream to write to
+     * @param targetNamespaceUri target namespace
+     * @param config configuration model
+     * @param goal goal for which to create the schema or <code>null</code> for a schema covering all goals
+     * @throws IOException if the schema could not be written
+     */
+    public void generate(OutputStream out, String targetNamespaceUri, Configuration config, String goal) throws IOException {
+        generate(out, targetNamespaceUri, config, goal, Format.PRETTY, true);
+    }
+
+    /**
+     * Generate a schema with the given layout
+     *
+     * @param out stream to write to
+     * @param targetNamespaceUri target namespace
+     * @param config configuration model
+     * @param goal goal for which to create the schema or <code>null</code> for a schema covering all goals
+     * @param format whether to indent the schema
+     * @param documentation whether to include the documentation as annotations
+     * @throws IOException if the schema could not be written
+     */
+    public void generate(OutputStream out, String targetNamespaceUri, Configuration config, String goal,
+                         Format format, boolean documentation) throws IOException {
+        GoalFilter filter = GoalFilter.forGoal(config, goal);
+        try {
+            if (mode == Mode.DOM) {
+                generateDom(out, targetNamespaceUri, config, filter, format, documentation);
+            } else {
+                generateStreaming(out, targetNamespaceUri, config, filter, format, documentation);
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot create XSD: " + e.getMessage(), e);
+        }
+    }
+
+    private void generateStreaming(OutputStream out, String targetNamespaceUri, Configuration config, GoalFilter filter,
+                                   Format format, boolean documentation) throws XMLStreamException {
+        XMLStreamWriter writer =
+            new FormattingXMLStreamWriter(outputFactory.createXMLStreamWriter(out, "UTF-8"),
+                                          format == Format.PRETTY ? "  " : null);
+        writer.writeStartDocument("UTF-8", "1.0");
+        writeSchema(writer, targetNamespaceUri, config, filter, documentation);
+        writer.writeEndDocument();
+        writer.flush();
+        writer.close();
+    }
+
+    private void generateDom(OutputStream out, String targetNamespaceUri, Configuration config, GoalFilter filter,
+                             Format format, boolean documentation) throws XMLStreamException, IOException {
+        Document doc = createDocument();
+        XMLStreamWriter writer = outputFactory.createXMLStreamWriter(new DOMResult(doc));
+        writeSchema(writer, targetNamespaceUri, config, filter, documentation);
+        writer.close();
+        writeXsd(doc, out, format);
     }
 
-    private void generateElements(XMLBuilder2 builder, Configuration config, List<ConfigElement> elements) {
+    private void writeSchema(XMLStreamWriter writer, String targetNamespaceUri, Configuration config, GoalFilter filter,
+                             boolean documentation) throws XMLStreamException {
+        writer.writeStartElement("xs", "schema", XSD_NS);
+        writer.writeNamespace("xs", XSD_NS);
+        writer.writeDefaultNamespace(targetNamespaceUri);
+        writer.writeNamespace("html", XSD_HTML);
+        writer.writeAttribute("targetNamespace", targetNamespaceUri);
+        writer.writeAttribute("elementFormDefault", "qualified");
+
+        Map<ConfigElement, String> namedTypes = TypeNames.collectComplexTypes(config.getRootElements(), filter);
+        Map<String, String> typeNames = new HashMap<>();
+        for (Map.Entry<ConfigElement, String> entry : namedTypes.entrySet()) {
+            typeNames.put(entry.getKey().getType(), entry.getValue());
+        }
+        Schema schema = new Schema(typeNames, documentation);
+        generateElements(writer, schema, config.getRootElements(), filter);
+        generateNamedTypes(writer, schema, namedTypes);
+
+        writer.writeEndElement();
+    }
+
+    private void generateElements(XMLStreamWriter writer, Schema schema,
+                                  List<ConfigElement> elements, GoalFilter filter) throws XMLStreamException {
         for (ConfigElement element : elements) {
-            XMLBuilder2 elBuilder = builder.element("xs:element", XSD_NS).a("name", element.getName());
-            addDocumentation(elBuilder, element.getDocumentation());
+            if (!filter.accepts(element)) {
+                continue;
+            }
+            writer.writeStartElement("xs", "element", XSD_NS);
+            writer.writeAttribute("name", element.getName());
+            String typeName = getTypeName(schema, element);
+            if (typeName != null) {
+                writer.writeAttribute("type", typeName);
+            }
+            addDocumentation(writer, schema, element.getDocumentation());
             if (element.isMap()) {
-                addMap(elBuilder);
+                addMap(writer);
             } else if (element.isEnum()) {
-                addEnum(elBuilder, element);
-            } else if (element.isComplexType()) {
+                addEnum(writer, schema, element);
+            } else if (typeName == null) {
                 // Call recursively back to this methd ...
-                addComplexType(elBuilder, config, element);
-            } else {
-                addSimpleType(elBuilder, element);
+                addComplexType(writer, schema, element, filter);
             }
+            writer.writeEndElement();
+        }
+    }
+
+    // Name of the type for the "type" attribute or null if the type is declared inline
+    private String getTypeName(Schema schema, ConfigElement element) {
+        if (element.isMap() || element.isEnum()) {
+            return null;
+        } else if (element.isReference() || TypeNames.isComplexType(element)) {
+            return schema.typeNames.get(element.getType());
+        } else if (element.isComplexType()) {
+            return null;
+        } else {
+            return getSimpleType(element.getType());
+        }
+    }
+
+    // Every configuration type is declared once as global named type, which is referenced
+    // wherever the type is used (including from within itself). Only lists and arrays are
+    // declared inline. A type's content is the same for all goals, so it is not filtered
+    // (the element holding it might belong to another goal)
+    private void generateNamedTypes(XMLStreamWriter writer, Schema schema,
+                                    Map<ConfigElement, String> namedTypes) throws XMLStreamException {
+        for (Map.Entry<ConfigElement, String> entry : namedTypes.entrySet()) {
+            writer.writeStartElement("xs", "complexType", XSD_NS);
+            writer.writeAttribute("name", entry.getValue());
+            addComplexTypeContent(writer, schema, entry.getKey(), GoalFilter.ALL);
+            writer.writeEndElement();
         }
     }
 
-    private void addSimpleType(XMLBuilder2 elBuilder, ConfigElement element) {
-        String simpleType = convertSimpleType(element.getType());
-        elBuilder.a("type", simpleType);
+    private void addComplexType(XMLStreamWriter writer, Schema schema,
+                                ConfigElement element, GoalFilter filter) throws XMLStreamException {
+        writer.writeStartElement("xs", "complexType", XSD_NS);
+        addComplexTypeContent(writer, schema, element, filter);
+        writer.writeEndElement();
     }
 
-    private void addComplexType(XMLBuilder2 elBuilder, Configuration config, ConfigElement element) {
-        XMLBuilder2 typeBuilder =
-            elBuilder
-                .element("xs:complexType");
+    private void addComplexTypeContent(XMLStreamWriter writer, Schema schema,
+                                       ConfigElement element, GoalFilter filter) throws XMLStreamException {
         if (element.isListLike()) {
-            typeBuilder = typeBuilder.element("xs:sequence").a("minOccurs", "0");
+            writer.writeStartElement("xs", "sequence", XSD_NS);
+            writer.writeAttribute("minOccurs", "0");
         } else {
-            typeBuilder = typeBuilder.element("xs:choice").a("maxOccurs", "unbounded");
+            writer.writeStartElement("xs", "choice", XSD_NS);
+            writer.writeAttribute("maxOccurs", "unbounded");
         }
-
-        generateElements(typeBuilder, config, element.getChildren());
+        generateElements(writer, schema, element.getChildren(), filter);
+        writer.writeEndElement();
     }
 
-    private void addEnum(XMLBuilder2 elBuilder, ConfigElement element) {
-        XMLBuilder2 innerBuilder = elBuilder
-            .element("xs:simpleType")
-            .element("xs:restriction")
-              .a("base","xs:string");
+    private void addEnum(XMLStreamWriter writer, Schema schema, ConfigElement element) throws XMLStreamException {
+        writer.writeStartElement("xs", "simpleType", XSD_NS);
+        writer.writeStartElement("xs", "restriction", XSD_NS);
+        writer.writeAttribute("base", "xs:string");
         for (EnumValueElement enumValElement : element.getEnumValues()) {
-            XMLBuilder2 valueBuilder = innerBuilder.element("xs:enumeration").a("value",enumValElement.getValue());
+            writer.writeStartElement("xs", "enumeration", XSD_NS);
+            writer.writeAttribute("value", enumValElement.getValue());
             String doc = enumValElement.getDocumentation();
             if (doc != null) {
-                addDocumentation(valueBuilder,doc);
+                addDocumentation(writer, schema, doc);
             }
+            writer.writeEndElement();
         }
+        writer.writeEndElement();
+        writer.writeEndElement();
     }
 
-    private void addMap(XMLBuilder2 elBuilder) {
-        elBuilder
-            .element("xs:complexType")
-              .element("xs:sequence")
-                 .element("xs:any").a("minOccurs", "0").a("maxOccurs", "unbounded");
+    private void addMap(XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeStartElement("xs", "complexType", XSD_NS);
+        writer.writeStartElement("xs", "sequence", XSD_NS);
+        writer.writeStartElement("xs", "any", XSD_NS);
+        writer.writeAttribute("minOccurs", "0");
+        writer.writeAttribute("maxOccurs", "unbounded");
+        writer.writeEndElement();
+        writer.writeEndElement();
+        writer.writeEndElement();
     }
 
-    private void addDocumentation(XMLBuilder2 builder, String doc) {
-        if (doc != null && doc.trim().length() != 0) {
-            XMLBuilder2 docBuilder = XMLBuilder2.parse("<div xmlns=\"" + XSD_HTML + "\">" + tidy(doc.trim()).trim() + "</div>");
-            builder.element("xs:annotation").element("xs:documentation").importXMLBuilder(docBuilder);
+    private void addDocumentation(XMLStreamWriter writer, Schema schema, String doc) throws XMLStreamException {
+        if (!schema.documentation) {
+            return;
+        }
+        String fragment = sanitizer.sanitize(doc);
+        if (fragment != null) {
+            writer.writeStartElement("xs", "annotation", XSD_NS);
+            writer.writeStartElement("xs", "documentation", XSD_NS);
+            copyFragment(writer, "<div xmlns=\"" + XSD_HTML + "\">" + fragment + "</div>");
+            writer.writeEndElement();
+            writer.writeEndElement();
         }
     }
 
-    private String addNamespace(String namespace, String text) {
-        return text.replaceAll("(</?)([^>/]+)(/?>)","$1" + namespace + ":$2$3");
+    // Copy a well formed XML fragment into the schema
+    private void copyFragment(XMLStreamWriter writer, String fragment) throws XMLStreamException {
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(new StringReader(fragment));
+        try {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        String prefix = reader.getPrefix();
+                        writer.writeStartElement(prefix != null ? prefix : "", reader.getLocalName(), reader.getNamespaceURI());
+                        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                            String nsPrefix = reader.getNamespacePrefix(i);
+                            if (nsPrefix == null || nsPrefix.length() == 0) {
+                                writer.writeDefaultNamespace(reader.getNamespaceURI(i));
+                            } else {
+                                writer.writeNamespace(nsPrefix, reader.getNamespaceURI(i));
+                            }
+                        }
+                        for (int i = 0; i < reader.getAttributeCount(); i++) {
+                            String attrNs = reader.getAttributeNamespace(i);
+                            if (attrNs == null || attrNs.length() == 0) {
+                                writer.writeAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                            } else {
+                                writer.writeAttribute(reader.getAttributePrefix(i), attrNs,
+                                                      reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                            }
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        writer.writeEndElement();
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.SPACE:
+                    case XMLStreamConstants.CDATA:
+                        writer.writeCharacters(reader.getText());
+                        break;
+                    default:
+                        // Comments and processing instructions are skipped
+                }
+            }
+        } finally {
+            reader.close();
+        }
     }
 
-    private String tidy(String doc) {
-        StringReader reader =  new StringReader(doc);
-        StringWriter writer = new StringWriter();
-        tidy.parse(reader, writer);
-        return writer.toString();
+    private String addNamespace(String namespace, String text) {
+        return text.replaceAll("(</?)([^>/]+)(/?>)","$1" + namespace + ":$2$3");
     }
 
-    private String convertSimpleType(String type) {
+    /**
+     * Get the XML Schema type used for a Java type of a simple configuration value
+     *
+     * @param type Java type
+     * @return XML Schema type with "xs" prefix, "xs:string" for all types without a more specific mapping
+     */
+    public static String getSimpleType(String type) {
         String ret = SIMPLE_TYPE_LOOKUP.get(type);
         return ret != null ? ret : "xs:string";
     }
 
-    private XMLBuilder2 createXsdBuilder(String targetNamespaceUri) {
-        XMLBuilder2 builder =
-            XMLBuilder2
-                .create("xs:schema", XSD_NS)
-                .a("targetNamespace",targetNamespaceUri)
-                .a("xmlns",targetNamespaceUri)
-                .a("xmlns:html",XSD_HTML)
-                .a("elementFormDefault","qualified");
-        return builder;
+    private Document createDocument() throws IOException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            return factory.newDocumentBuilder().newDocument();
+        } catch (ParserConfigurationException e) {
+            throw new IOException("Cannot create XSD document: " + e.getMessage(), e);
+        }
+    }
+
+    private void writeXsd(Document doc, OutputStream out, Format format) throws IOException {
+        try {
+            Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+            transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+            if (format == Format.PRETTY) {
+                transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+                transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+            } else {
+                transformer.setOutputProperty(OutputKeys.INDENT, "no");
+            }
+            transformer.transform(new DOMSource(doc), new StreamResult(out));
+        } catch (TransformerException e) {
+            throw new IOException("Cannot write XSD: " + e.getMessage(), e);
+        }
     }
 
+    // Settings and global type names for writing a single schema
+    private static final class Schema {
+        private final Map<String, String> typeNames;
+        private final boolean documentation;
 
-    private void writeXsd(XMLBuilder2 builder, File targetFile) throws IOException {
-        Properties outputProps = new Properties();
-        outputProps.put(OutputKeys.METHOD, "xml");
-        outputProps.put(OutputKeys.INDENT, "yes");
-        outputProps.put(OutputKeys.ENCODING,"utf8");
-        outputProps.put("{http://xml.apache.org/xslt}indent-amount", "2");
-        try (FileWriter writer = new FileWriter(targetFile)) {
-            builder.toWriter(writer, outputProps);
+        private Schema(Map<String, String> typeNames, boolean documentation) {
+            this.typeNames = typeNames;
+            this.documentation = documentation;
         }
     }
 
@@ -175,15 +467,4 @@ public class XSDGenerator {
         }
         SIMPLE_TYPE_LOOKUP = Collections.unmodifiableMap(map);
     }
-
-    private Tidy createTidy() {
-        Tidy tidy = new Tidy();
-        tidy.setXHTML(true);
-        tidy.setQuiet(true);
-        tidy.setShowWarnings(false);
-        tidy.setPrintBodyOnly(true);
-        tidy.setEncloseText(true);
-        tidy.setTrimEmptyElements(true);
-        return tidy;
-    }
 }
@@ -25,7 +25,7 @@ import java.lang.annotation.RetentionPolicy;
  * @author roland
  * @since 06/06/16
  */
-@Retention(RetentionPolicy.SOURCE)
+@Retention(RetentionPolicy.CLASS)
 public @interface PoblanoElement {
 
     String value();
@@ -0,0 +1,599 @@
+package org.jolokia.poblano.bytecode;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jolokia.poblano.OutputFiles;
+import org.jolokia.poblano.XSDGenerator;
+import org.jolokia.poblano.annotation.PoblanoElement;
+import org.jolokia.poblano.annotation.PoblanoIgnore;
+import org.jolokia.poblano.bytecode.ClassHierarchy.Kind;
+import org.jolokia.poblano.model.ConfigElement;
+import org.jolokia.poblano.model.Configuration;
+import org.jolokia.poblano.model.EnumValueElement;
+
+/**
+ * Extracts the configuration model from already compiled plugins, i.e. from the
+ * <code>@Mojo</code> and <code>@Parameter</code> annotations stored in class files. This way
+ * schemas can be created for third party plugins or old releases without compiling them.
+ *
+ * Jars are mapped into memory and their class files are parsed concurrently. The model is
+ * built with the same rules as the annotation processor uses, so it can be used with all
+ * generators. As class files don't contain JavaDoc, the model has no documentation.
+ *
+ * The hierarchies of the mojos are independent of each other, so the model of each mojo is
+ * built in a fork-join pipeline: Every mojo is extracted into its own configuration, which are
+ * then merged pairwise in the order of the mojos. This way no locking is needed and the order
+ * of the elements is the same as for a sequential extraction.
+ *
+ * Configuration types are only examined if they are part of the scanned jars, so the jars
+ * of dependencies holding configuration types must be given, too.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+public class BytecodeExtractor {
+
+    static final String MOJO = "org.apache.maven.plugins.annotations.Mojo";
+    static final String PARAMETER = "org.apache.maven.plugins.annotations.Parameter";
+
+    // Class files parsed per task, so that tiny classes don't drown in scheduling overhead
+    private static final int BATCH_SIZE = 64;
+
+    private final int threads;
+    private final ClassFileParser parser;
+
+    /**
+     * Extractor using one thread per available processor
+     */
+    public BytecodeExtractor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads maximum number of threads used for parsing class files
+     */
+    public BytecodeExtractor(int threads) {
+        this.threads = Math.max(1, threads);
+        this.parser = new ClassFileParser(Arrays.asList(MOJO, PARAMETER,
+                                                        PoblanoIgnore.class.getName(),
+                                                        PoblanoElement.class.getName()));
+    }
+
+    /**
+     * Extract the configuration of all mojos found in the given jars or class directories.
+     * If a class is contained in more than one location, the first one wins.
+     *
+     * @param locations jar files or directories containing class files
+     * @return configuration of all mojos, in the order of their class names
+     * @throws IOException if a location cannot be read or contains an invalid class file
+     */
+    public Configuration extract(Collection<File> locations) throws IOException {
+        ClassHierarchy hierarchy = new ClassHierarchy(scan(locations));
+        List<Map.Entry<String, String>> mojos = new ArrayList<>(findMojos(hierarchy).entrySet());
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(new BuildTask(hierarchy, mojos));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public Configuration extract(File ... locations) throws IOException {
+        return extract(Arrays.asList(locations));
+    }
+
+    // ==========================================================================================
+
+    // Parse all class files concurrently. Results are collected in the order of the locations
+    // and entries, so that the outcome doesn't depend on the scheduling.
+    Map<String, ClassInfo> scan(Collection<File> locations) throws IOException {
+        List<Callable<List<ClassInfo>>> tasks = new ArrayList<>();
+        for (File location : locations) {
+            if (location.isDirectory()) {
+                addDirectoryTasks(tasks, location);
+            } else {
+                addJarTasks(tasks, MappedJar.open(location));
+            }
+        }
+        Map<String, ClassInfo> ret = new HashMap<>();
+        if (tasks.isEmpty()) {
+            return ret;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, tasks.size()), new ExtractorThreadFactory());
+        try {
+            List<Future<List<ClassInfo>>> futures = new ArrayList<>();
+            for (Callable<List<ClassInfo>> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<List<ClassInfo>> future : futures) {
+                for (ClassInfo info : getResult(future)) {
+                    if (!ret.containsKey(info.getName())) {
+                        ret.put(info.getName(), info);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return ret;
+    }
+
+    private void addJarTasks(List<Callable<List<ClassInfo>>> tasks, final MappedJar jar) {
+        List<MappedJar.Entry> classEntries = new ArrayList<>();
+        for (MappedJar.Entry entry : jar.getEntries()) {
+            if (isClassFile(entry.getName()) && !entry.isDirectory()) {
+                classEntries.add(entry);
+            }
+        }
+        for (int i = 0; i < classEntries.size(); i += BATCH_SIZE) {
+            final List<MappedJar.Entry> batch = classEntries.subList(i, Math.min(i + BATCH_SIZE, classEntries.size()));
+            tasks.add(new Callable<List<ClassInfo>>() {
+                public List<ClassInfo> call() throws IOException {
+                    List<ClassInfo> ret = new ArrayList<>(batch.size());
+                    for (MappedJar.Entry entry : batch) {
+                        ret.add(parse(jar.read(entry), jar.getFile() + "!/" + entry.getName()));
+                    }
+                    return ret;
+                }
+            });
+        }
+    }
+
+    private void addDirectoryTasks(List<Callable<List<ClassInfo>>> tasks, File dir) {
+        List<File> classFiles = new ArrayList<>();
+        collectClassFiles(dir, "", classFiles);
+        for (int i = 0; i < classFiles.size(); i += BATCH_SIZE) {
+            final List<File> batch = classFiles.subList(i, Math.min(i + BATCH_SIZE, classFiles.size()));
+            tasks.add(new Callable<List<ClassInfo>>() {
+                public List<ClassInfo> call() throws IOException {
+                    List<ClassInfo> ret = new ArrayList<>(batch.size());
+                    for (File file : batch) {
+                        try (FileInputStream in = new FileInputStream(file);
+                             FileChannel channel = in.getChannel()) {
+                            ret.add(parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file.getPath()));
+                        }
+                    }
+                    return ret;
+                }
+            });
+        }
+    }
+
+    private void collectClassFiles(File dir, String path, List<File> classFiles) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            String name = path + file.getName();
+            if (file.isDirectory()) {
+                collectClassFiles(file, name + "/", classFiles);
+            } else if (isClassFile(name)) {
+                classFiles.add(file);
+            }
+        }
+    }
+
+    // Multi release and module descriptors are ignored
+    private boolean isClassFile(String name) {
+        return name.endsWith(".class") && !name.startsWith("META-INF/") && !name.endsWith("module-info.class");
+    }
+
+    private ClassInfo parse(ByteBuffer buffer, String location) throws IOException {
+        try {
+            return parser.parse(buffer);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid class file " + location + ": " + e.getMessage(), e);
+        }
+    }
+
+    private List<ClassInfo> getResult(Future<List<ClassInfo>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while scanning class files");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Cannot scan class files: " + cause.getMessage(), cause);
+        }
+    }
+
+    // Mojo classes mapped to their goals, ordered by class name
+    private SortedMap<String, String> findMojos(ClassHierarchy hierarchy) {
+        SortedMap<String, String> mojos = new TreeMap<>();
+        for (ClassInfo info : hierarchy.getAll()) {
+            Map<String, Object> mojo = info.getAnnotation(MOJO);
+            if (mojo != null && mojo.get("name") instanceof String) {
+                mojos.put(info.getName(), (String) mojo.get("name"));
+            }
+        }
+        return mojos;
+    }
+
+    // ==========================================================================================
+
+    /**
+     * Builds the configuration of a range of mojos by splitting it until single mojos are left.
+     * The results of both halves are joined by merging the right configuration into the left one.
+     */
+    private static final class BuildTask extends RecursiveTask<Configuration> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ClassHierarchy hierarchy;
+        // Mojo class names and goals
+        private final List<Map.Entry<String, String>> mojos;
+
+        private BuildTask(ClassHierarchy hierarchy, List<Map.Entry<String, String>> mojos) {
+            this.hierarchy = hierarchy;
+            this.mojos = mojos;
+        }
+
+        @Override
+        protected Configuration compute() {
+            if (mojos.size() <= 1) {
+                Configuration config = new Configuration();
+                if (!mojos.isEmpty()) {
+                    new ModelBuilder(hierarchy, config).build(mojos.get(0).getKey(), mojos.get(0).getValue());
+                }
+                return config;
+            }
+            int middle = mojos.size() / 2;
+            BuildTask left = new BuildTask(hierarchy, mojos.subList(0, middle));
+            left.fork();
+            Configuration right = new BuildTask(hierarchy, mojos.subList(middle, mojos.size())).compute();
+            Configuration ret = left.join();
+            for (String goal : right.getGoals()) {
+                ret.merge(right, goal);
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * Builds the model from the parsed classes the same way as the annotation processor does:
+     * Parameters of the mojo class and its super classes are root elements, complex types are
+     * walked for nested parameters and self referencing types become references. Generic types
+     * are walked with the type arguments they are used with, so type variables are substituted.
+     * A builder creates the configuration of a single mojo and is used by one thread only.
+     */
+    private static final class ModelBuilder {
+
+        private final ClassHierarchy hierarchy;
+        private final Configuration config;
+
+        // Top level config elements already extracted for a type, grafted for further fields of this type.
+        // Keyed by the type's name including its type arguments, like the processor does.
+        private final Map<String, List<ConfigElement>> extractedTypes = new HashMap<>();
+
+        // Values of enum types, shared by all fields of this type
+        private final Map<String, List<EnumValueElement>> enumValues = new HashMap<>();
+
+        private ModelBuilder(ClassHierarchy hierarchy, Configuration config) {
+            this.hierarchy = hierarchy;
+            this.config = config;
+        }
+
+        // Mojo class and all its super classes, the latter with the type arguments of the extends clause
+        private void build(String mojoClass, String goal) {
+            Set<String> visited = new HashSet<>();
+            List<String> classes = new ArrayList<>();
+            TypeRef type = TypeRef.forClass(mojoClass);
+            ClassInfo info = hierarchy.get(mojoClass);
+            while (info != null && visited.add(info.getName())) {
+                classes.add(getQualifiedName(info.getName()));
+                extract(goal, info, type);
+                TypeRef superType = info.getSuperType();
+                if (superType == null) {
+                    break;
+                }
+                type = superType.substitute(getBindings(info, type));
+                info = hierarchy.get(type.getName());
+            }
+            config.updateHierarchy(goal, classes);
+        }
+
+        private void extract(String goal, ClassInfo rootInfo, TypeRef rootType) {
+            // Classes currently on the stack, mapped to the element holding their configuration
+            // (null for the root type). Keyed by the class only, so that recursive generic types
+            // whose type arguments grow with each level are cut off, too.
+            Map<String, ConfigElement> inProgress = new HashMap<>();
+            Deque<Frame> stack = new ArrayDeque<>();
+            enter(goal, stack, inProgress, null, rootType);
+
+            while (!stack.isEmpty()) {
+                Frame frame = stack.peek();
+                if (!frame.fields.hasNext()) {
+                    stack.pop();
+                    inProgress.remove(frame.type.getName());
+                    extractedTypes.put(frame.type.toString(), frame.extracted);
+                    continue;
+                }
+
+                ClassInfo.FieldInfo field = frame.fields.next();
+                Map<String, Object> paramAnno = field.getAnnotation(PARAMETER);
+                if (paramAnno == null || field.getAnnotation(PoblanoIgnore.class.getName()) != null) {
+                    continue;
+                }
+
+                TypeRef fieldType = field.getType().substitute(frame.bindings).normalize();
+                Kind kind = hierarchy.classify(fieldType);
+                String name = field.getName();
+                // Annotation defaults are not stored in the class file
+                String defaultValue = paramAnno.containsKey("defaultValue") ? (String) paramAnno.get("defaultValue") : "";
+
+                if (kind == Kind.ENUM) {
+                    ConfigElement enumElement = config.updateEnum(frame.parent, getEnumValues(fieldType.getName()), goal,
+                                                                  name, fieldType.toString(), defaultValue, null);
+                    updateDeclaringType(frame, enumElement, rootInfo);
+                    config.updateProperty(enumElement, (String) paramAnno.get("property"));
+                    frame.extracted.add(enumElement);
+                    continue;
+                }
+
+                ConfigElement current = config.updateElement(frame.parent, goal, name, getType(fieldType, kind), defaultValue, null);
+                updateDeclaringType(frame, current, rootInfo);
+                config.updateProperty(current, (String) paramAnno.get("property"));
+                frame.extracted.add(current);
+
+                TypeRef complexType = null;
+                if (kind == Kind.ARRAY || kind == Kind.COLLECTION) {
+                    TypeRef itemType = getListItemType(fieldType, kind);
+                    String itemName = getItemName(field, name, itemType);
+                    current = config.updateElement(current, goal, itemName,
+                                                   itemType != null ? itemType.toString() : String.class.getName(), null, null);
+                    if (itemType != null && hierarchy.isComplexType(itemType)) {
+                        complexType = itemType;
+                    }
+                } else if (kind == Kind.COMPLEX) {
+                    complexType = fieldType;
+                }
+
+                if (complexType != null) {
+                    String className = complexType.getName();
+                    if (inProgress.containsKey(className)) {
+                        // Cycle: Refer to the element already holding this type's configuration
+                        ConfigElement target = inProgress.get(className);
+                        if (target != null) {
+                            config.updateReference(current, target);
+                        }
+                    } else {
+                        enter(goal, stack, inProgress, current, complexType);
+                    }
+                }
+            }
+        }
+
+        // Parameters of the root frame are declared by the class itself. The first class wins
+        // for elements shared by several mojos.
+        private void updateDeclaringType(Frame frame, ConfigElement element, ClassInfo rootType) {
+            if (frame.parent == null && element.getDeclaringType() == null) {
+                config.updateDeclaringType(element, getQualifiedName(rootType.getName()));
+            }
+        }
+
+        // Same name as used by javax.lang.model for nested classes
+        private String getQualifiedName(String binaryName) {
+            return binaryName.replace('$', '.');
+        }
+
+        // Either graft an already extracted type or push a new frame for walking it
+        private void enter(String goal, Deque<Frame> stack, Map<String, ConfigElement> inProgress,
+                           ConfigElement parent, TypeRef type) {
+            List<ConfigElement> cached = extractedTypes.get(type.toString());
+            if (cached != null) {
+                config.graft(parent, cached, goal);
+            } else {
+                ClassInfo info = hierarchy.get(type.getName());
+                inProgress.put(type.getName(), parent);
+                if (info != null) {
+                    stack.push(new Frame(type, parent, info.getFields(), getBindings(info, type)));
+                } else {
+                    stack.push(new Frame(type, parent, Collections.<ClassInfo.FieldInfo>emptyList(),
+                                         Collections.<String, TypeRef>emptyMap()));
+                }
+            }
+        }
+
+        // Type variables of a class mapped to the type arguments it is used with. For a class used
+        // without type arguments, the variables stay as they are, with their declared bounds.
+        private Map<String, TypeRef> getBindings(ClassInfo info, TypeRef type) {
+            List<TypeRef> parameters = info.getTypeParameters();
+            List<TypeRef> arguments = type.getArguments();
+            Map<String, TypeRef> ret = new HashMap<>();
+            for (int i = 0; i < parameters.size(); i++) {
+                TypeRef parameter = parameters.get(i);
+                ret.put(parameter.getName(), arguments.size() == parameters.size() ? arguments.get(i) : parameter);
+            }
+            return ret;
+        }
+
+        private String getType(TypeRef type, Kind kind) {
+            switch (kind) {
+                case MAP:
+                    return ConfigElement.MAP_TYPE;
+                case ARRAY:
+                    return ConfigElement.ARRAY_TYPE;
+                case COLLECTION:
+                    return ConfigElement.COLLECTION_TYPE;
+                default:
+                    return type.toString();
+            }
+        }
+
+        // Component type of arrays, the single type argument for collections. Wildcards and type
+        // variables are replaced by their bound. null if unknown, e.g. for raw collections or
+        // unbounded type variables.
+        private TypeRef getListItemType(TypeRef type, Kind kind) {
+            TypeRef ret = null;
+            if (kind == Kind.ARRAY) {
+                ret = type.getComponentType().normalize();
+            } else if (type.getArguments().size() == 1) {
+                ret = type.getArguments().get(0).normalize();
+            }
+            return ret != null && (ret.getKind() == TypeRef.Kind.CLASS || ret.getKind() == TypeRef.Kind.PRIMITIVE ||
+                                   ret.isArray()) ? ret : null;
+        }
+
+        private String getItemName(ClassInfo.FieldInfo field, String listName, TypeRef itemType) {
+            Map<String, Object> poblanoElement = field.getAnnotation(PoblanoElement.class.getName());
+            if (poblanoElement != null && poblanoElement.get("value") instanceof String) {
+                return (String) poblanoElement.get("value");
+            }
+            if (itemType != null && hierarchy.isComplexType(itemType)) {
+                String itemTypeName = itemType.toString();
+                return itemTypeName.substring(itemTypeName.lastIndexOf('.') + 1).toLowerCase();
+            }
+            // Try to determine singular form if list is named in plural
+            return listName.endsWith("s") ? listName.substring(0, listName.length() - 1).toLowerCase() : "item";
+        }
+
+        private List<EnumValueElement> getEnumValues(String enumType) {
+            List<EnumValueElement> ret = enumValues.get(enumType);
+            if (ret == null) {
+                ret = new ArrayList<>();
+                for (String constant : hierarchy.getEnumConstants(enumType)) {
+                    ret.add(new EnumValueElement(constant, null));
+                }
+                enumValues.put(enumType, ret);
+            }
+            return ret;
+        }
+    }
+
+    // A type whose fields are currently walked
+    private static final class Frame {
+        private final TypeRef type;
+        private final ConfigElement parent;
+        private final Iterator<ClassInfo.FieldInfo> fields;
+        // Values of the type's type variables
+        private final Map<String, TypeRef> bindings;
+        private final List<ConfigElement> extracted = new ArrayList<>();
+
+        private Frame(TypeRef type, ConfigElement parent, List<ClassInfo.FieldInfo> fields, Map<String, TypeRef> bindings) {
+            this.type = type;
+            this.parent = parent;
+            this.fields = fields.iterator();
+            this.bindings = bindings;
+        }
+    }
+
+    // Daemon threads, so that a hanging parser doesn't block the JVM from exiting
+    private static class ExtractorThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "poblano-extractor-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    // ==========================================================================================
+
+    /**
+     * Create an XML schema for plugin jars:
+     *
+     * <pre>
+     *   java -cp poblano.jar org.jolokia.poblano.bytecode.BytecodeExtractor [options] &lt;jar or dir&gt; ...
+     * </pre>
+     *
+     * Options are <code>-o &lt;file&gt;</code> for the output file (default: standard out),
+     * <code>-n &lt;namespace&gt;</code> for the target namespace, <code>-g &lt;goal&gt;</code> for a schema
+     * of a single goal, <code>-m</code> for a minified schema and <code>-t &lt;threads&gt;</code>.
+     *
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        String output = null;
+        // Same default as the annotation processor
+        String namespace = "urn:poblano:configuration";
+        String goal = null;
+        XSDGenerator.Format format = XSDGenerator.Format.PRETTY;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<File> locations = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if ("-o".equals(arg)) {
+                    output = args[++i];
+                } else if ("-n".equals(arg)) {
+                    namespace = args[++i];
+                } else if ("-g".equals(arg)) {
+                    goal = args[++i];
+                } else if ("-m".equals(arg)) {
+                    format = XSDGenerator.Format.MINIFIED;
+                } else if ("-t".equals(arg)) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (arg.startsWith("-")) {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                } else {
+                    locations.add(new File(arg));
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            usage(e instanceof ArrayIndexOutOfBoundsException ? "Missing option value" : e.getMessage());
+            return;
+        }
+        if (locations.isEmpty()) {
+            usage("No jar or directory given");
+            return;
+        }
+
+        try {
+            long start = System.nanoTime();
+            Configuration config = new BytecodeExtractor(threads).extract(locations);
+            if (goal != null && config.getGoalId(goal) < 0) {
+                throw new IOException("No mojo with goal '" + goal + "' found");
+            }
+            // An existing file is kept if the schema didn't change
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new XSDGenerator().generate(out, namespace, config, goal, format, false);
+            if (output != null) {
+                OutputFiles.write(new File(output), out.toByteArray());
+            } else {
+                out.writeTo(System.out);
+                System.out.flush();
+            }
+            System.err.printf("Extracted %d mojos from %d locations in %d ms%n", config.getGoals().size(),
+                              locations.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void usage(String message) {
+        System.err.println("Error: " + message);
+        System.err.println("Usage: " + BytecodeExtractor.class.getName() +
+                           " [-o <file>] [-n <namespace>] [-g <goal>] [-m] [-t <threads>] <jar or dir> ...");
+        System.exit(2);
+    }
+}
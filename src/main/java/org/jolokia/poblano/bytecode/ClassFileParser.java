@@ -0,0 +1,368 @@
+package org.jolokia.poblano.bytecode;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+/**
+ * Single pass parser for class files, which reads only what's needed for extracting the
+ * configuration. Method bodies and all other attributes are skipped without being decoded,
+ * and strings from the constant pool are decoded lazily, so that classes without any
+ * interesting annotation are cheap to parse.
+ *
+ * A parser holds no state between calls and can be shared by multiple threads.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+final class ClassFileParser {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    // Constant pool tags
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    // Descriptors of the annotations to keep
+    private final Set<String> annotationDescriptors;
+
+    /**
+     * @param annotations class names of the annotations whose values should be kept
+     */
+    ClassFileParser(Collection<String> annotations) {
+        annotationDescriptors = new HashSet<>();
+        for (String annotation : annotations) {
+            annotationDescriptors.add("L" + annotation.replace('.', '/') + ";");
+        }
+    }
+
+    /**
+     * Parse a class file
+     *
+     * @param buffer content of the class file, starting at the buffer's position
+     * @return the parsed class
+     * @throws IllegalArgumentException if this is not a valid class file
+     */
+    ClassInfo parse(ByteBuffer buffer) {
+        ByteBuffer in = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a class file");
+            }
+            // Minor and major version
+            in.getInt();
+            ConstantPool pool = readConstantPool(in);
+            int access = u2(in);
+            String name = pool.getClassName(u2(in));
+            int superIndex = u2(in);
+            String superName = superIndex != 0 ? pool.getClassName(superIndex) : null;
+            int interfaceCount = u2(in);
+            List<String> interfaces = new ArrayList<>(interfaceCount);
+            for (int i = 0; i < interfaceCount; i++) {
+                interfaces.add(pool.getClassName(u2(in)));
+            }
+            List<ClassInfo.FieldInfo> fields = readFields(in, pool);
+            skipMembers(in);
+            Map<String, Map<String, Object>> annotations = new HashMap<>();
+            String[] signature = new String[1];
+            readAttributes(in, pool, annotations, signature);
+            return new ClassInfo(name, access, superName, signature[0], interfaces, annotations, fields);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated or corrupt class file", e);
+        }
+    }
+
+    // ==========================================================================================
+
+    private List<ClassInfo.FieldInfo> readFields(ByteBuffer in, ConstantPool pool) {
+        int count = u2(in);
+        List<ClassInfo.FieldInfo> ret = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int access = u2(in);
+            String name = pool.getUtf8(u2(in));
+            String descriptor = pool.getUtf8(u2(in));
+            Map<String, Map<String, Object>> annotations = new HashMap<>();
+            String[] signature = new String[1];
+            readAttributes(in, pool, annotations, signature);
+            ret.add(new ClassInfo.FieldInfo(name, access, descriptor, signature[0], annotations));
+        }
+        return ret;
+    }
+
+    // Methods: Skipped completely
+    private void skipMembers(ByteBuffer in) {
+        int count = u2(in);
+        for (int i = 0; i < count; i++) {
+            // Access flags, name and descriptor
+            in.position(in.position() + 6);
+            skipAttributes(in);
+        }
+    }
+
+    private void skipAttributes(ByteBuffer in) {
+        int count = u2(in);
+        for (int i = 0; i < count; i++) {
+            in.getShort();
+            int length = in.getInt();
+            in.position(in.position() + length);
+        }
+    }
+
+    // Annotations (visible and invisible) and the generic signature if requested
+    private void readAttributes(ByteBuffer in, ConstantPool pool, Map<String, Map<String, Object>> annotations,
+                                String[] signature) {
+        int count = u2(in);
+        for (int i = 0; i < count; i++) {
+            String name = pool.getUtf8(u2(in));
+            int length = in.getInt();
+            int end = in.position() + length;
+            if ("RuntimeInvisibleAnnotations".equals(name) || "RuntimeVisibleAnnotations".equals(name)) {
+                int annotationCount = u2(in);
+                for (int j = 0; j < annotationCount; j++) {
+                    readAnnotation(in, pool, annotations);
+                }
+            } else if (signature != null && "Signature".equals(name)) {
+                signature[0] = pool.getUtf8(u2(in));
+            }
+            in.position(end);
+        }
+    }
+
+    private void readAnnotation(ByteBuffer in, ConstantPool pool, Map<String, Map<String, Object>> annotations) {
+        String type = pool.getUtf8(u2(in));
+        boolean keep = annotationDescriptors.contains(type);
+        Map<String, Object> values = readAnnotationValues(in, pool, keep);
+        if (keep) {
+            annotations.put(type.substring(1, type.length() - 1).replace('/', '.'), values);
+        }
+    }
+
+    private Map<String, Object> readAnnotationValues(ByteBuffer in, ConstantPool pool, boolean decode) {
+        Map<String, Object> values = decode ? new HashMap<String, Object>() : null;
+        int count = u2(in);
+        for (int i = 0; i < count; i++) {
+            int nameIndex = u2(in);
+            Object value = readElementValue(in, pool, decode);
+            if (decode) {
+                values.put(pool.getUtf8(nameIndex), value);
+            }
+        }
+        return values;
+    }
+
+    // Values are only decoded if they are kept: Strings, boxed primitives, enum constant names
+    // (as string), class names, nested annotations (as map) and lists for arrays
+    private Object readElementValue(ByteBuffer in, ConstantPool pool, boolean decode) {
+        char tag = (char) (in.get() & 0xff);
+        switch (tag) {
+            case 'e': {
+                // Type name is not needed
+                in.getShort();
+                int constIndex = u2(in);
+                return decode ? pool.getUtf8(constIndex) : null;
+            }
+            case '@':
+                // Type of the nested annotation is not needed
+                in.getShort();
+                return readAnnotationValues(in, pool, decode);
+            case '[': {
+                int count = u2(in);
+                List<Object> ret = decode ? new ArrayList<>(count) : null;
+                for (int i = 0; i < count; i++) {
+                    Object value = readElementValue(in, pool, decode);
+                    if (decode) {
+                        ret.add(value);
+                    }
+                }
+                return ret;
+            }
+            case 'c': {
+                int index = u2(in);
+                return decode ? TypeRef.fromSignature(pool.getUtf8(index)).toString() : null;
+            }
+            case 's': {
+                int index = u2(in);
+                return decode ? pool.getUtf8(index) : null;
+            }
+            default: {
+                int index = u2(in);
+                return decode ? pool.getConstant(tag, index) : null;
+            }
+        }
+    }
+
+    private ConstantPool readConstantPool(ByteBuffer in) {
+        int count = u2(in);
+        int[] offsets = new int[count];
+        byte[] tags = new byte[count];
+        for (int i = 1; i < count; i++) {
+            int tag = in.get() & 0xff;
+            tags[i] = (byte) tag;
+            offsets[i] = in.position();
+            switch (tag) {
+                case CONSTANT_UTF8: {
+                    int length = u2(in);
+                    in.position(in.position() + length);
+                    break;
+                }
+                case CONSTANT_CLASS:
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    in.position(in.position() + 2);
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    in.position(in.position() + 3);
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELDREF:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    in.position(in.position() + 4);
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    in.position(in.position() + 8);
+                    // Takes two slots
+                    i++;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid constant pool tag " + tag + " at index " + i);
+            }
+        }
+        return new ConstantPool(in, offsets, tags);
+    }
+
+    private static int u2(ByteBuffer in) {
+        return in.getShort() & 0xffff;
+    }
+
+    // Constant pool entries are decoded on demand, strings are cached once decoded
+    private static final class ConstantPool {
+
+        private final ByteBuffer in;
+        private final int[] offsets;
+        private final byte[] tags;
+        private final String[] strings;
+
+        private ConstantPool(ByteBuffer in, int[] offsets, byte[] tags) {
+            this.in = in;
+            this.offsets = offsets;
+            this.tags = tags;
+            this.strings = new String[offsets.length];
+        }
+
+        String getUtf8(int index) {
+            check(index, CONSTANT_UTF8);
+            String ret = strings[index];
+            if (ret == null) {
+                ret = decodeUtf8(offsets[index]);
+                strings[index] = ret;
+            }
+            return ret;
+        }
+
+        // Binary name with dots
+        String getClassName(int index) {
+            check(index, CONSTANT_CLASS);
+            return getUtf8(in.getShort(offsets[index]) & 0xffff).replace('/', '.');
+        }
+
+        Object getConstant(char type, int index) {
+            int offset = offsets[index];
+            switch (type) {
+                case 'J':
+                    check(index, CONSTANT_LONG);
+                    return in.getLong(offset);
+                case 'D':
+                    check(index, CONSTANT_DOUBLE);
+                    return in.getDouble(offset);
+                case 'F':
+                    check(index, CONSTANT_FLOAT);
+                    return in.getFloat(offset);
+                case 'Z':
+                    check(index, CONSTANT_INTEGER);
+                    return in.getInt(offset) != 0;
+                case 'C':
+                    check(index, CONSTANT_INTEGER);
+                    return (char) in.getInt(offset);
+                case 'B':
+                    check(index, CONSTANT_INTEGER);
+                    return (byte) in.getInt(offset);
+                case 'S':
+                    check(index, CONSTANT_INTEGER);
+                    return (short) in.getInt(offset);
+                case 'I':
+                    check(index, CONSTANT_INTEGER);
+                    return in.getInt(offset);
+                default:
+                    throw new IllegalArgumentException("Invalid element value tag " + type);
+            }
+        }
+
+        private void check(int index, int tag) {
+            if (index <= 0 || index >= tags.length || tags[index] != tag) {
+                throw new IllegalArgumentException("Invalid constant pool reference " + index);
+            }
+        }
+
+        // Modified UTF-8 as used by class files
+        private String decodeUtf8(int offset) {
+            int length = in.getShort(offset) & 0xffff;
+            char[] chars = new char[length];
+            int count = 0;
+            int pos = offset + 2;
+            int end = pos + length;
+            while (pos < end) {
+                int b = in.get(pos++) & 0xff;
+                if (b < 0x80) {
+                    chars[count++] = (char) b;
+                } else if ((b & 0xe0) == 0xc0) {
+                    chars[count++] = (char) (((b & 0x1f) << 6) | (in.get(pos++) & 0x3f));
+                } else {
+                    int b2 = in.get(pos++) & 0x3f;
+                    int b3 = in.get(pos++) & 0x3f;
+                    chars[count++] = (char) (((b & 0x0f) << 12) | (b2 << 6) | b3);
+                }
+            }
+            return new String(chars, 0, count);
+        }
+    }
+}
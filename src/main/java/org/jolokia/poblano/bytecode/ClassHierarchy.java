@@ -0,0 +1,181 @@
+package org.jolokia.poblano.bytecode;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Type lookups for classes read from class files. Classes of the JDK are usually not part
+ * of the scanned jars, so they are looked up via reflection (without initializing them).
+ * Any other class not scanned is treated as a class without any nested configuration.
+ *
+ * The scanned classes are never modified, so lookups can be done from multiple threads.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+final class ClassHierarchy {
+
+    /**
+     * Kind of a configuration type, the same as used by the annotation processor
+     */
+    enum Kind {
+        PLAIN,
+        ENUM,
+        ARRAY,
+        COLLECTION,
+        MAP,
+        COMPLEX
+    }
+
+    // Object type considered to be plain configuration options
+    private static final Set<String> PLAIN_TYPES = new HashSet<>(Arrays.asList(
+        String.class.getName(),
+        Integer.class.getName(),
+        Long.class.getName(),
+        Float.class.getName(),
+        Double.class.getName(),
+        Boolean.class.getName()));
+
+    private final Map<String, ClassInfo> classes;
+
+    // Class names mapped to the kind of their (class) type
+    private final Map<String, Kind> kindCache = new ConcurrentHashMap<>();
+
+    ClassHierarchy(Map<String, ClassInfo> classes) {
+        this.classes = classes;
+    }
+
+    /**
+     * @param name binary class name
+     * @return the scanned class or <code>null</code> if the class was not part of the scanned jars
+     */
+    ClassInfo get(String name) {
+        return classes.get(name);
+    }
+
+    Collection<ClassInfo> getAll() {
+        return classes.values();
+    }
+
+    Kind classify(TypeRef type) {
+        if (type.isArray()) {
+            return Kind.ARRAY;
+        }
+        if (type.getKind() != TypeRef.Kind.CLASS) {
+            return Kind.PLAIN;
+        }
+        Kind kind = kindCache.get(type.getName());
+        if (kind == null) {
+            kind = computeKind(type.getName());
+            kindCache.put(type.getName(), kind);
+        }
+        return kind;
+    }
+
+    // Same as the processor: Anything which is neither plain nor an array might contain nested configuration
+    boolean isComplexType(TypeRef type) {
+        Kind kind = classify(type);
+        return kind != Kind.PLAIN && kind != Kind.ARRAY;
+    }
+
+    /**
+     * Constants of an enum in declaration order
+     *
+     * @param name binary name of the enum
+     * @return names of the constants, empty if the enum is not known
+     */
+    List<String> getEnumConstants(String name) {
+        List<String> ret = new ArrayList<>();
+        ClassInfo info = classes.get(name);
+        if (info != null) {
+            for (ClassInfo.FieldInfo field : info.getFields()) {
+                if (field.isEnumConstant()) {
+                    ret.add(field.getName());
+                }
+            }
+        } else {
+            Class<?> clazz = loadJdkClass(name);
+            if (clazz != null) {
+                for (Field field : clazz.getDeclaredFields()) {
+                    if (field.isEnumConstant()) {
+                        ret.add(field.getName());
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
+    // ==========================================================================================
+
+    private Kind computeKind(String name) {
+        if (isEnum(name)) {
+            return Kind.ENUM;
+        }
+        if (isSubtype(name, Map.class, new HashSet<String>())) {
+            return Kind.MAP;
+        }
+        if (isSubtype(name, Collection.class, new HashSet<String>())) {
+            return Kind.COLLECTION;
+        }
+        return PLAIN_TYPES.contains(name) ? Kind.PLAIN : Kind.COMPLEX;
+    }
+
+    private boolean isEnum(String name) {
+        ClassInfo info = classes.get(name);
+        if (info != null) {
+            return info.isEnum();
+        }
+        Class<?> clazz = loadJdkClass(name);
+        return clazz != null && clazz.isEnum();
+    }
+
+    private boolean isSubtype(String name, Class<?> target, Set<String> visited) {
+        if (name == null || !visited.add(name)) {
+            return false;
+        }
+        ClassInfo info = classes.get(name);
+        if (info != null) {
+            if (isSubtype(info.getSuperName(), target, visited)) {
+                return true;
+            }
+            for (String iface : info.getInterfaces()) {
+                if (isSubtype(iface, target, visited)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        Class<?> clazz = loadJdkClass(name);
+        return clazz != null && target.isAssignableFrom(clazz);
+    }
+
+    // Only classes of the JDK are loaded, never classes of the scanned jars or of poblano's own class path
+    private Class<?> loadJdkClass(String name) {
+        if (!name.startsWith("java.") && !name.startsWith("javax.")) {
+            return null;
+        }
+        try {
+            return Class.forName(name, false, ClassHierarchy.class.getClassLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+}
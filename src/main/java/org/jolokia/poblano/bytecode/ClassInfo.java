@@ -0,0 +1,144 @@
+package org.jolokia.poblano.bytecode;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Configuration relevant parts of a class file: Its super types, the fields and the
+ * annotations poblano is interested in.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+final class ClassInfo {
+
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_ENUM = 0x4000;
+
+    private final String name;
+    private final int access;
+    private final String superName;
+    // Generic signature, null if neither the class nor its super types are generic
+    private final String signature;
+    private final List<String> interfaces;
+    private final Map<String, Map<String, Object>> annotations;
+    private final List<FieldInfo> fields;
+
+    ClassInfo(String name, int access, String superName, String signature, List<String> interfaces,
+              Map<String, Map<String, Object>> annotations, List<FieldInfo> fields) {
+        this.name = name;
+        this.access = access;
+        this.superName = superName;
+        this.signature = signature;
+        this.interfaces = interfaces;
+        this.annotations = annotations;
+        this.fields = fields;
+    }
+
+    // Binary name with dots, e.g. "org.example.Outer$Inner"
+    String getName() {
+        return name;
+    }
+
+    // null for java.lang.Object and interfaces without super interface
+    String getSuperName() {
+        return superName;
+    }
+
+    /**
+     * @return the super class with the type arguments of the <code>extends</code> clause,
+     *         <code>null</code> if there is no super class
+     */
+    TypeRef getSuperType() {
+        if (superName == null) {
+            return null;
+        }
+        return signature != null ? TypeRef.superclassOf(signature) : TypeRef.forClass(superName);
+    }
+
+    /**
+     * @return type variables declared by the class, with their bounds
+     */
+    List<TypeRef> getTypeParameters() {
+        return signature != null ? TypeRef.typeParametersOf(signature) : Collections.<TypeRef>emptyList();
+    }
+
+    List<String> getInterfaces() {
+        return interfaces;
+    }
+
+    boolean isEnum() {
+        return (access & ACC_ENUM) != 0;
+    }
+
+    /**
+     * Values of an annotation on the class. Only values given explicitly are contained,
+     * defaults of the annotation type are not known.
+     *
+     * @param annotation class name of the annotation
+     * @return element values or <code>null</code> if the class is not annotated with it
+     */
+    Map<String, Object> getAnnotation(String annotation) {
+        return annotations.get(annotation);
+    }
+
+    // Fields in declaration order
+    List<FieldInfo> getFields() {
+        return fields;
+    }
+
+    /**
+     * A field of the class
+     */
+    static final class FieldInfo {
+
+        private final String name;
+        private final int access;
+        private final String descriptor;
+        private final String signature;
+        private final Map<String, Map<String, Object>> annotations;
+
+        FieldInfo(String name, int access, String descriptor, String signature,
+                  Map<String, Map<String, Object>> annotations) {
+            this.name = name;
+            this.access = access;
+            this.descriptor = descriptor;
+            this.signature = signature;
+            this.annotations = annotations;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        boolean isEnumConstant() {
+            return (access & ACC_ENUM) != 0 && (access & ACC_STATIC) != 0;
+        }
+
+        // Generic type if there is a signature, the erased type otherwise
+        TypeRef getType() {
+            return TypeRef.fromSignature(signature != null ? signature : descriptor);
+        }
+
+        Map<String, Object> getAnnotation(String annotation) {
+            return annotations.get(annotation);
+        }
+    }
+}
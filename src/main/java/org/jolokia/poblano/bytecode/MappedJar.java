@@ -0,0 +1,234 @@
+package org.jolokia.poblano.bytecode;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Read only view on a jar file which is mapped into memory. Only the central directory is
+ * parsed when opening the jar, entries are read directly from the mapped buffer. Reading
+ * entries is thread safe, so that entries can be processed concurrently.
+ *
+ * Zip64 archives and encrypted entries are not supported.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+final class MappedJar {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    // End of central directory record without comment
+    private static final int END_SIZE = 22;
+
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    private final File file;
+    private final ByteBuffer buffer;
+    private final List<Entry> entries;
+
+    private MappedJar(File file, ByteBuffer buffer, List<Entry> entries) {
+        this.file = file;
+        this.buffer = buffer;
+        this.entries = entries;
+    }
+
+    /**
+     * Map a jar file and read its central directory
+     *
+     * @param file jar to open
+     * @return the mapped jar
+     * @throws IOException if the file cannot be mapped or is not a valid zip file
+     */
+    static MappedJar open(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large");
+            }
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return new MappedJar(file, buffer, readCentralDirectory(file, buffer));
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Get the uncompressed content of an entry. Stored entries are returned as a view
+     * on the mapped file without copying.
+     *
+     * @param entry entry to read
+     * @return content, positioned at the start of the entry
+     * @throws IOException if the entry is corrupt
+     */
+    ByteBuffer read(Entry entry) throws IOException {
+        ByteBuffer local = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int offset = entry.localHeaderOffset;
+        if (offset + 30 > local.limit() || local.getInt(offset) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("Invalid local header for " + entry.name + " in " + file);
+        }
+        // Name and extra field lengths of the local header may differ from the central directory
+        int dataStart = offset + 30 + (local.getShort(offset + 26) & 0xffff) + (local.getShort(offset + 28) & 0xffff);
+        if (dataStart + entry.compressedSize > local.limit()) {
+            throw new IOException("Truncated entry " + entry.name + " in " + file);
+        }
+        local.position(dataStart);
+        local.limit(dataStart + entry.compressedSize);
+        ByteBuffer data = local.slice();
+        if (entry.method == METHOD_STORED) {
+            return data;
+        }
+        return ByteBuffer.wrap(inflate(entry, data));
+    }
+
+    private byte[] inflate(Entry entry, ByteBuffer data) throws IOException {
+        byte[] compressed = new byte[data.remaining()];
+        data.get(compressed);
+        byte[] ret = new byte[entry.size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            int len = 0;
+            while (len < ret.length) {
+                int n = inflater.inflate(ret, len, ret.length - len);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                len += n;
+            }
+            if (len != ret.length) {
+                throw new IOException("Invalid size of entry " + entry.name + " in " + file);
+            }
+            return ret;
+        } catch (DataFormatException e) {
+            throw new IOException("Cannot inflate " + entry.name + " in " + file + ": " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // ==========================================================================================
+
+    private static List<Entry> readCentralDirectory(File file, ByteBuffer buffer) throws IOException {
+        int end = findEndRecord(buffer);
+        if (end < 0) {
+            throw new IOException(file + " is not a zip file");
+        }
+        int count = buffer.getShort(end + 10) & 0xffff;
+        int offset = buffer.getInt(end + 16);
+        if (count == 0xffff || offset == -1) {
+            throw new IOException(file + " is a Zip64 archive, which is not supported");
+        }
+        List<Entry> ret = new ArrayList<>(count);
+        byte[] nameBytes = new byte[256];
+        for (int i = 0; i < count; i++) {
+            if (offset + 46 > buffer.limit() || buffer.getInt(offset) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("Invalid central directory in " + file);
+            }
+            int flags = buffer.getShort(offset + 8) & 0xffff;
+            int method = buffer.getShort(offset + 10) & 0xffff;
+            int compressedSize = buffer.getInt(offset + 20);
+            int size = buffer.getInt(offset + 24);
+            int nameLength = buffer.getShort(offset + 28) & 0xffff;
+            int extraLength = buffer.getShort(offset + 30) & 0xffff;
+            int commentLength = buffer.getShort(offset + 32) & 0xffff;
+            int localHeaderOffset = buffer.getInt(offset + 42);
+            if (nameBytes.length < nameLength) {
+                nameBytes = new byte[nameLength];
+            }
+            ByteBuffer name = buffer.duplicate();
+            name.position(offset + 46);
+            name.get(nameBytes, 0, nameLength);
+            // Bit 11: Name is UTF-8, otherwise CP437 which is the same for the ASCII names of classes
+            String entryName = new String(nameBytes, 0, nameLength, (flags & 0x800) != 0 ? "UTF-8" : "ISO-8859-1");
+            if ((flags & 1) != 0) {
+                throw new IOException("Encrypted entry " + entryName + " in " + file + " is not supported");
+            }
+            if (method != METHOD_STORED && method != METHOD_DEFLATED) {
+                throw new IOException("Unsupported compression method " + method + " for " + entryName + " in " + file);
+            }
+            if (compressedSize < 0 || size < 0 || localHeaderOffset < 0) {
+                throw new IOException(file + " is a Zip64 archive, which is not supported");
+            }
+            ret.add(new Entry(entryName, method, compressedSize, size, localHeaderOffset));
+            offset += 46 + nameLength + extraLength + commentLength;
+        }
+        return Collections.unmodifiableList(ret);
+    }
+
+    // The end record is at the end of the file, followed by a comment of at most 64k
+    private static int findEndRecord(ByteBuffer buffer) {
+        int min = Math.max(0, buffer.limit() - END_SIZE - 0xffff);
+        for (int pos = buffer.limit() - END_SIZE; pos >= min; pos--) {
+            if (buffer.getInt(pos) == END_SIGNATURE) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Entry as found in the central directory
+     */
+    static final class Entry {
+
+        private final String name;
+        private final int method;
+        private final int compressedSize;
+        private final int size;
+        private final int localHeaderOffset;
+
+        private Entry(String name, int method, int compressedSize, int size, int localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+}
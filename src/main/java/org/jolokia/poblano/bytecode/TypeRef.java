@@ -0,0 +1,356 @@
+package org.jolokia.poblano.bytecode;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Type of a field as given by its descriptor or, for generic types, its signature attribute.
+ * Type variables can be substituted with the type arguments a generic class is used with,
+ * the same way as the annotation processor resolves the fields of parameterized types.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+final class TypeRef {
+
+    enum Kind {
+        PRIMITIVE,
+        CLASS,
+        TYPE_VARIABLE,
+        // Type argument "?", possibly with a bound
+        WILDCARD
+    }
+
+    private final Kind kind;
+    // Binary name with dots for classes, keyword for primitives, name of type variables
+    private final String name;
+    private final List<TypeRef> arguments;
+    // Bound of a wildcard and whether it is an upper ("extends") bound. For type variables
+    // the declared bound, null if unknown or java.lang.Object.
+    private final TypeRef bound;
+    private final boolean upperBound;
+    private final int dimensions;
+
+    private TypeRef(Kind kind, String name, List<TypeRef> arguments, TypeRef bound, boolean upperBound, int dimensions) {
+        this.kind = kind;
+        this.name = name;
+        this.arguments = arguments;
+        this.bound = bound;
+        this.upperBound = upperBound;
+        this.dimensions = dimensions;
+    }
+
+    /**
+     * Parse a field signature like <code>Ljava/util/List&lt;Lorg/example/Item;&gt;;</code>.
+     * A descriptor like <code>[Ljava/lang/String;</code> is a valid signature, too.
+     *
+     * @param signature signature to parse
+     * @return the type
+     * @throws IllegalArgumentException if the signature is invalid
+     */
+    static TypeRef fromSignature(String signature) {
+        Parser parser = new Parser(signature);
+        TypeRef ret = parser.parseType();
+        if (parser.pos != signature.length()) {
+            throw new IllegalArgumentException("Invalid signature " + signature);
+        }
+        return ret;
+    }
+
+    /**
+     * Parse the type parameters of a class signature like
+     * <code>&lt;T:Ljava/lang/Object;&gt;Lorg/example/Base&lt;TT;&gt;;</code>
+     *
+     * @param signature class signature to parse
+     * @return type variables with their bounds, empty if the class is not generic
+     * @throws IllegalArgumentException if the signature is invalid
+     */
+    static List<TypeRef> typeParametersOf(String signature) {
+        return new Parser(signature).parseTypeParameters();
+    }
+
+    /**
+     * Parse the super class of a class signature
+     *
+     * @param signature class signature to parse
+     * @return the super class with the type arguments given in the <code>extends</code> clause
+     * @throws IllegalArgumentException if the signature is invalid
+     */
+    static TypeRef superclassOf(String signature) {
+        Parser parser = new Parser(signature);
+        parser.parseTypeParameters();
+        return parser.parseType();
+    }
+
+    /**
+     * @param name binary name with dots
+     * @return a non generic class type
+     */
+    static TypeRef forClass(String name) {
+        return new TypeRef(Kind.CLASS, name, Collections.<TypeRef>emptyList(), null, false, 0);
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    List<TypeRef> getArguments() {
+        return arguments;
+    }
+
+    TypeRef getBound() {
+        return bound;
+    }
+
+    int getDimensions() {
+        return dimensions;
+    }
+
+    boolean isArray() {
+        return dimensions > 0;
+    }
+
+    /**
+     * @return type of the array's components, this type with one dimension less
+     */
+    TypeRef getComponentType() {
+        return new TypeRef(kind, name, arguments, bound, upperBound, dimensions - 1);
+    }
+
+    /**
+     * Replace type variables, also within type arguments and wildcard bounds
+     *
+     * @param bindings type variable names mapped to their values
+     * @return the substituted type, this type if nothing is to be replaced
+     */
+    TypeRef substitute(Map<String, TypeRef> bindings) {
+        switch (kind) {
+            case TYPE_VARIABLE: {
+                TypeRef value = bindings.get(name);
+                return value != null ?
+                    new TypeRef(value.kind, value.name, value.arguments, value.bound, value.upperBound, value.dimensions + dimensions) :
+                    this;
+            }
+            case CLASS: {
+                if (arguments.isEmpty()) {
+                    return this;
+                }
+                List<TypeRef> substituted = new ArrayList<>(arguments.size());
+                for (TypeRef argument : arguments) {
+                    substituted.add(argument.substitute(bindings));
+                }
+                return new TypeRef(kind, name, substituted, bound, upperBound, dimensions);
+            }
+            case WILDCARD:
+                return bound != null ?
+                    new TypeRef(kind, name, arguments, bound.substitute(bindings), upperBound, dimensions) :
+                    this;
+            default:
+                return this;
+        }
+    }
+
+    /**
+     * Replace a wildcard by its bound and a type variable by its upper bound. Wildcards without
+     * a bound and type variables bound only by <code>Object</code> are returned as they are.
+     *
+     * @return the normalized type
+     */
+    TypeRef normalize() {
+        if ((kind == Kind.WILDCARD || kind == Kind.TYPE_VARIABLE) && dimensions == 0 && bound != null) {
+            return bound.normalize();
+        }
+        return this;
+    }
+
+    /**
+     * Name as the compiler prints the type, e.g. <code>java.util.List&lt;Outer.Inner&gt;</code>.
+     * Nested classes are assumed to be the only names containing a '$'.
+     */
+    @Override
+    public String toString() {
+        StringBuilder ret = new StringBuilder();
+        if (kind == Kind.WILDCARD) {
+            ret.append('?');
+            if (bound != null) {
+                ret.append(upperBound ? " extends " : " super ").append(bound);
+            }
+        } else {
+            ret.append(kind == Kind.CLASS ? name.replace('$', '.') : name);
+            if (!arguments.isEmpty()) {
+                ret.append('<');
+                for (int i = 0; i < arguments.size(); i++) {
+                    ret.append(i > 0 ? "," : "").append(arguments.get(i));
+                }
+                ret.append('>');
+            }
+        }
+        for (int i = 0; i < dimensions; i++) {
+            ret.append("[]");
+        }
+        return ret.toString();
+    }
+
+    // ==========================================================================================
+
+    private static final class Parser {
+
+        private final String signature;
+        private int pos;
+
+        private Parser(String signature) {
+            this.signature = signature;
+        }
+
+        private TypeRef parseType() {
+            int dimensions = 0;
+            while (peek() == '[') {
+                dimensions++;
+                pos++;
+            }
+            char c = next();
+            switch (c) {
+                case 'L':
+                    return parseClassType(dimensions);
+                case 'T': {
+                    int end = indexOf(';');
+                    String variable = signature.substring(pos, end);
+                    pos = end + 1;
+                    return new TypeRef(Kind.TYPE_VARIABLE, variable, Collections.<TypeRef>emptyList(), null, false, dimensions);
+                }
+                default:
+                    return new TypeRef(Kind.PRIMITIVE, getPrimitiveName(c), Collections.<TypeRef>emptyList(), null, false, dimensions);
+            }
+        }
+
+        // Nested classes of generic types are separated by '.', only the arguments of the innermost class are kept
+        private TypeRef parseClassType(int dimensions) {
+            StringBuilder name = new StringBuilder();
+            List<TypeRef> arguments = Collections.emptyList();
+            while (true) {
+                char c = next();
+                if (c == ';') {
+                    break;
+                } else if (c == '/') {
+                    name.append('.');
+                } else if (c == '.') {
+                    name.append('$');
+                } else if (c == '<') {
+                    arguments = parseArguments();
+                } else {
+                    name.append(c);
+                }
+            }
+            return new TypeRef(Kind.CLASS, name.toString(), arguments, null, false, dimensions);
+        }
+
+        // Type parameters with their bound, which is the erasure of the first one for intersection
+        // types as with the compiler. An empty class bound is followed by the interface bounds.
+        private List<TypeRef> parseTypeParameters() {
+            List<TypeRef> ret = new ArrayList<>();
+            if (peek() != '<') {
+                return ret;
+            }
+            pos++;
+            while (peek() != '>') {
+                int end = indexOf(':');
+                String variable = signature.substring(pos, end);
+                pos = end;
+                List<TypeRef> bounds = new ArrayList<>();
+                while (peek() == ':') {
+                    pos++;
+                    if (peek() != ':') {
+                        bounds.add(parseType());
+                    }
+                }
+                TypeRef bound = bounds.size() == 1 ? bounds.get(0) : erasure(bounds.get(0));
+                if (bound.kind == Kind.CLASS && !bound.isArray() && "java.lang.Object".equals(bound.name)) {
+                    bound = null;
+                }
+                ret.add(new TypeRef(Kind.TYPE_VARIABLE, variable, Collections.<TypeRef>emptyList(), bound, true, 0));
+            }
+            pos++;
+            return ret;
+        }
+
+        private TypeRef erasure(TypeRef type) {
+            return new TypeRef(type.kind, type.name, Collections.<TypeRef>emptyList(), null, false, type.dimensions);
+        }
+
+        private List<TypeRef> parseArguments() {
+            List<TypeRef> ret = new ArrayList<>();
+            while (peek() != '>') {
+                char c = peek();
+                if (c == '*') {
+                    pos++;
+                    ret.add(new TypeRef(Kind.WILDCARD, "?", Collections.<TypeRef>emptyList(), null, false, 0));
+                } else if (c == '+' || c == '-') {
+                    pos++;
+                    ret.add(new TypeRef(Kind.WILDCARD, "?", Collections.<TypeRef>emptyList(), parseType(), c == '+', 0));
+                } else {
+                    ret.add(parseType());
+                }
+            }
+            pos++;
+            return ret;
+        }
+
+        private String getPrimitiveName(char c) {
+            switch (c) {
+                case 'B': return "byte";
+                case 'C': return "char";
+                case 'D': return "double";
+                case 'F': return "float";
+                case 'I': return "int";
+                case 'J': return "long";
+                case 'S': return "short";
+                case 'Z': return "boolean";
+                default:
+                    throw new IllegalArgumentException("Invalid signature " + signature + " at " + (pos - 1));
+            }
+        }
+
+        private char peek() {
+            if (pos >= signature.length()) {
+                throw new IllegalArgumentException("Unexpected end of signature " + signature);
+            }
+            return signature.charAt(pos);
+        }
+
+        private char next() {
+            char c = peek();
+            pos++;
+            return c;
+        }
+
+        private int indexOf(char c) {
+            int idx = signature.indexOf(c, pos);
+            if (idx < 0) {
+                throw new IllegalArgumentException("Unexpected end of signature " + signature);
+            }
+            return idx;
+        }
+    }
+}
@@ -19,6 +19,9 @@ package org.jolokia.poblano.model;
 import java.util.*;
 
 /**
+ * A single configuration element. Elements are mutable while the configuration is
+ * built up and become immutable when the configuration is frozen.
+ *
  * @author roland
  * @since 23/05/16
  */
@@ -28,9 +31,6 @@ public class ConfigElement {
     public static final String COLLECTION_TYPE = "list";
     public static final String ARRAY_TYPE = "array";
 
-    // Unique id of this config element
-    private String id;
-
     // Name of this config parameter
     private String name;
 
@@ -40,20 +40,44 @@ public class ConfigElement {
     // Documentation
     private String documentation;
 
+    // First sentence of the documentation and version since when the element is available
+    private String summary;
+    private String since;
+
     // Type
     private String type;
 
-    // Set of mojos where this config element applies to
-    private Set<String> mojos;
+    // Class declaring this parameter, only known for root elements
+    private String declaringType;
+
+    // User property (-D<property>) from which the parameter's value can be taken
+    private String property;
+
+    // Mojos where this config element applies to, as bitset over the configuration's goals
+    private final Goals goals;
+    private final BitSet goalBits;
+
+    private boolean frozen;
 
     // Parent element
     private ConfigElement parent;
 
     // Child elements
     private List<ConfigElement> children;
+
+    // Child elements by name, created with the first child. Children with the same
+    // name but a different type are chained via 'nextWithSameName'
+    private Map<String, ConfigElement> childIndex;
+    private ConfigElement nextWithSameName;
+
     private List<EnumValueElement> enumValues;
 
+    // Element holding the configuration of this element's type when the type
+    // refers back to itself (directly or via other types)
+    private ConfigElement reference;
+
     ConfigElement(ConfigElement parent,
+                          Goals goals,
                           String mojo,
                           String name,
                           String type,
@@ -64,27 +88,58 @@ public class ConfigElement {
         this.type = type;
         this.documentation = documentation;
         this.defaultVal = defaultVal;
-        this.id = createId(parent, name, type);
         children = new ArrayList<>();
-        mojos = new HashSet<>();
-        mojos.add(mojo);
+        this.goals = goals;
+        goalBits = new BitSet();
+        goalBits.set(goals.add(mojo));
+    }
+
+    public void addChild(ConfigElement child) {
+        checkNotFrozen();
+        if (childIndex == null) {
+            childIndex = new HashMap<>();
+        }
+        children.add(child);
+        index(childIndex, child);
     }
 
     /**
-     * Create unique id for this config element
+     * Lookup a child element by name and type
      *
-     * @param parent parent element when it is about complex elements
-     * @param name name of the element
-     * @param type its type
-     * @return a strin representation of the type
+     * @param name name of the child
+     * @param type type of the child
+     * @return the child element or <code>null</code> if there is none
      */
-    public static String createId(ConfigElement parent, String name, String type) {
-        String parentId = parent != null ? parent.getId() + "|" : "";
-        return parentId + "|" + name + "|" + type;
+    public ConfigElement getChild(String name, String type) {
+        if (isFrozen()) {
+            return find(children, name, type);
+        }
+        return childIndex != null ? find(childIndex, name, type) : null;
     }
 
-    public void addChild(ConfigElement child) {
-        children.add(child);
+    // Lookup an element in a frozen list. The number of children is small, so a scan is cheap
+    static ConfigElement find(List<ConfigElement> elements, String name, String type) {
+        for (ConfigElement element : elements) {
+            if (element.name.equals(name) && (type == null ? element.type == null : type.equals(element.type))) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    // Lookup an element in a name index, walking the chain of elements with the same name
+    static ConfigElement find(Map<String, ConfigElement> index, String name, String type) {
+        for (ConfigElement element = index.get(name); element != null; element = element.nextWithSameName) {
+            if (type == null ? element.type == null : type.equals(element.type)) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    // Add an element to a name index
+    static void index(Map<String, ConfigElement> index, ConfigElement element) {
+        element.nextWithSameName = index.put(element.getName(), element);
     }
 
     public boolean hasChildren() {
@@ -92,13 +147,100 @@ public class ConfigElement {
     }
 
     public void addMojo(String mojo) {
-        mojos.add(mojo);
+        checkNotFrozen();
+        goalBits.set(goals.add(mojo));
+    }
+
+    // Add a goal by its id, returns false if the element already applies to it
+    boolean addGoal(int goalId) {
+        checkNotFrozen();
+        if (goalBits.get(goalId)) {
+            return false;
+        }
+        goalBits.set(goalId);
+        return true;
+    }
+
+    /**
+     * Check whether this element is a configuration option of the given mojo
+     *
+     * @param mojo goal of the mojo
+     * @return true if the mojo can be configured with this element
+     */
+    public boolean appliesTo(String mojo) {
+        return appliesTo(goals.indexOf(mojo));
+    }
+
+    /**
+     * Check whether this element is a configuration option of a mojo, given by the
+     * goal's id. This is a single bit test.
+     *
+     * @param goalId id of the goal as returned by {@link Configuration#getGoalId(String)}
+     * @return true if the mojo can be configured with this element
+     */
+    public boolean appliesTo(int goalId) {
+        return goalId >= 0 && goalBits.get(goalId);
+    }
+
+    public Set<String> getMojos() {
+        return Collections.unmodifiableSet(goals.toSet(goalBits));
     }
 
     void setEnumValues(List<EnumValueElement> enumValues) {
+        checkNotFrozen();
         this.enumValues = enumValues;
     }
 
+    void setDocumentationDetails(String summary, String since) {
+        checkNotFrozen();
+        this.summary = summary;
+        this.since = since;
+    }
+
+    void setDeclaringType(String declaringType) {
+        checkNotFrozen();
+        this.declaringType = declaringType;
+    }
+
+    void setProperty(String property) {
+        checkNotFrozen();
+        this.property = property;
+    }
+
+    void setReference(ConfigElement reference) {
+        checkNotFrozen();
+        this.reference = reference;
+    }
+
+    /**
+     * Turn this element and all its children into an immutable, compact form. Lists are
+     * replaced by arrays.
+     */
+    void freeze() {
+        if (frozen) {
+            return;
+        }
+        childIndex = null;
+        children = FrozenList.copyOf(children);
+        if (enumValues != null) {
+            enumValues = FrozenList.copyOf(enumValues);
+        }
+        frozen = true;
+        for (ConfigElement child : children) {
+            child.freeze();
+        }
+    }
+
+    boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkNotFrozen() {
+        if (isFrozen()) {
+            throw new IllegalStateException("Configuration is frozen, element " + name + " cannot be changed");
+        }
+    }
+
     public String getName() {
         return name;
     }
@@ -111,6 +253,32 @@ public class ConfigElement {
         return documentation;
     }
 
+    public String getSummary() {
+        return summary;
+    }
+
+    public String getSince() {
+        return since;
+    }
+
+    /**
+     * Class in which a root element's parameter is declared, i.e. the mojo class or one of its super classes
+     *
+     * @return qualified class name or <code>null</code> if not known or this is not a root element
+     */
+    public String getDeclaringType() {
+        return declaringType;
+    }
+
+    /**
+     * Property which can be used for setting the parameter, as given by <code>@Parameter(property = ...)</code>
+     *
+     * @return property name or <code>null</code> if the parameter can't be set by a property
+     */
+    public String getProperty() {
+        return property;
+    }
+
     public String getType() {
         return type;
     }
@@ -127,6 +295,20 @@ public class ConfigElement {
         return parent;
     }
 
+    /**
+     * Get the element holding the configuration for this element's type if this is a
+     * back reference within a recursive configuration.
+     *
+     * @return referenced element or <code>null</code> if this is not a back reference
+     */
+    public ConfigElement getReference() {
+        return reference;
+    }
+
+    public boolean isReference() {
+        return reference != null;
+    }
+
     public boolean isMap() {
         return MAP_TYPE.equals(type);
     }
@@ -148,10 +330,6 @@ public class ConfigElement {
         return enumValues != null && enumValues.size() > 0;
     }
 
-    public String getId() {
-        return id;
-    }
-
     public boolean isListLike() {
         return isList() || isArray();
     }
@@ -19,19 +19,30 @@ package org.jolokia.poblano.model;
 import java.util.*;
 
 /**
- * Top-level configuration model object
+ * Top-level configuration model object. After the model has been built up, it can be
+ * frozen into an immutable and more compact form which can be safely read by multiple
+ * threads. Any attempt to change a frozen configuration results in an
+ * {@link IllegalStateException}.
  *
  * @author roland
  * @since 23/05/16
  */
 public class Configuration {
 
-    // All config elements found
-    private Map<String, ConfigElement> elements = new HashMap<>();
-
     // All root elements
     private List<ConfigElement> rootElements = new ArrayList<>();
 
+    // Root elements by name. Child elements are indexed by their parent
+    private Map<String, ConfigElement> rootIndex = new HashMap<>();
+
+    // Goals of all mojos. Elements refer to goals by their index in this table
+    private final Goals goals = new Goals();
+
+    // Goals mapped to the mojo class and its super classes
+    private Map<String, List<String>> hierarchies = new HashMap<>();
+
+    private boolean frozen;
+
     /**
      * Get or create a config element
      *
@@ -44,7 +55,7 @@ public class Configuration {
      */
     public ConfigElement updateElement(ConfigElement parent, String mojo, String name,
                                        String type, String defaultVal, String documentation) {
-
+        checkNotFrozen();
         ConfigElement element = get(parent, name, type);
         if (element == null) {
             element = create(parent, mojo, name, type, defaultVal, documentation);
@@ -53,24 +64,320 @@ public class Configuration {
         return element;
     }
 
-    public void updateEnum(ConfigElement parent, List<EnumValueElement> enumValueElements,
-                           String mojo, String name, String type, String defaultVal, String documentation) {
+    public ConfigElement updateEnum(ConfigElement parent, List<EnumValueElement> enumValueElements,
+                                    String mojo, String name, String type, String defaultVal, String documentation) {
         ConfigElement element = updateElement(parent, mojo, name, type, defaultVal, documentation);
         element.setEnumValues(enumValueElements);
+        return element;
+    }
+
+    /**
+     * Graft already extracted elements (including their children) below a parent. Nothing is
+     * copied: If the elements are already attached to this parent only the mojo is added to the
+     * subtree, otherwise the parent becomes a reference to the element holding them. Elements
+     * which already apply to the mojo are not walked again. Only if the parent has children of
+     * its own or the elements are root elements, a copy is created.
+     *
+     * @param parent the parent element or <code>null</code> if the elements should be root elements
+     * @param elements elements to graft, all having the same parent
+     * @param mojo mojo for which the subtree should be updated
+     */
+    public void graft(ConfigElement parent, List<ConfigElement> elements, String mojo) {
+        checkNotFrozen();
+        if (elements.isEmpty()) {
+            return;
+        }
+        ConfigElement holder = elements.get(0).getParent();
+        if (holder != null && parent != null && (holder == parent || !parent.hasChildren())) {
+            parent.addMojo(mojo);
+            if (holder != parent) {
+                updateReference(parent, holder);
+            }
+            addGoal(elements, goals.add(mojo));
+        } else {
+            copy(parent, elements, mojo);
+        }
+    }
+
+    // Add a goal to all elements reachable from the given ones, including the targets of references.
+    // Since the goal is always added to everything reachable, elements already having it are skipped.
+    private void addGoal(List<ConfigElement> elements, int goalId) {
+        Deque<ConfigElement> toVisit = new ArrayDeque<>(elements);
+        while (!toVisit.isEmpty()) {
+            ConfigElement element = toVisit.pop();
+            if (element.addGoal(goalId)) {
+                toVisit.addAll(element.isReference() ? element.getReference().getChildren() : element.getChildren());
+            }
+        }
+    }
+
+    private void copy(ConfigElement parent, List<ConfigElement> elements, String mojo) {
+        for (ConfigElement source : elements) {
+            ConfigElement target = updateElement(parent, mojo, source.getName(), source.getType(),
+                                                 source.getDefaultVal(), source.getDocumentation());
+            if (source.isEnum()) {
+                target.setEnumValues(source.getEnumValues());
+            }
+            target.setDocumentationDetails(source.getSummary(), source.getSince());
+            // An element shared by several mojos keeps the class which declared it first
+            if (parent == null && target.getDeclaringType() == null) {
+                target.setDeclaringType(source.getDeclaringType());
+            }
+            if (source.getProperty() != null) {
+                target.setProperty(source.getProperty());
+            }
+            if (source.isReference()) {
+                target.setReference(source.getReference());
+            }
+            copy(target, source.getChildren(), mojo);
+        }
+    }
+
+    /**
+     * Set the details extracted from an element's documentation
+     *
+     * @param element element to update
+     * @param summary first sentence of the documentation
+     * @param since version since when the element is available (from the <code>@since</code> tag)
+     */
+    public void updateDocumentation(ConfigElement element, String summary, String since) {
+        checkNotFrozen();
+        element.setDocumentationDetails(summary, since);
+    }
+
+    /**
+     * Set the class declaring the parameter of a root element
+     *
+     * @param element root element to update
+     * @param declaringType qualified name of the mojo class or super class declaring the parameter
+     */
+    public void updateDeclaringType(ConfigElement element, String declaringType) {
+        checkNotFrozen();
+        element.setDeclaringType(declaringType);
+    }
+
+    /**
+     * Set the user property from which a parameter can be set
+     *
+     * @param element element to update
+     * @param property property name, <code>null</code> or empty if there is none
+     */
+    public void updateProperty(ConfigElement element, String property) {
+        checkNotFrozen();
+        element.setProperty(property != null && property.length() != 0 ? property : null);
+    }
+
+    /**
+     * Remember the inheritance hierarchy of a mojo
+     *
+     * @param mojo goal of the mojo
+     * @param classes qualified names of the mojo class and all its super classes, starting with the mojo class
+     */
+    public void updateHierarchy(String mojo, List<String> classes) {
+        checkNotFrozen();
+        hierarchies.put(mojo, new ArrayList<>(classes));
+    }
+
+    /**
+     * Get the inheritance hierarchy of a mojo
+     *
+     * @param mojo goal of the mojo
+     * @return the mojo class and all its super classes, starting with the mojo class. Empty if not known.
+     */
+    public List<String> getHierarchy(String mojo) {
+        List<String> ret = hierarchies.get(mojo);
+        return ret != null ? Collections.unmodifiableList(ret) : Collections.<String>emptyList();
+    }
+
+    /**
+     * Mark an element as back reference to the element which holds the configuration
+     * of the element's type. Used for self referencing configuration types.
+     *
+     * @param element element referring back
+     * @param target element holding the type's configuration
+     */
+    public void updateReference(ConfigElement element, ConfigElement target) {
+        checkNotFrozen();
+        element.setReference(target);
+    }
+
+    /**
+     * Merge all config elements of a mojo from another configuration into this configuration.
+     * Elements which already exist get the mojo added, all others are copied.
+     *
+     * @param source configuration to copy from
+     * @param mojo mojo whose elements are merged
+     */
+    public void merge(Configuration source, String mojo) {
+        checkNotFrozen();
+        List<String> hierarchy = source.hierarchies.get(mojo);
+        if (hierarchy != null) {
+            hierarchies.put(mojo, new ArrayList<>(hierarchy));
+        }
+        Map<ConfigElement, ConfigElement> merged = new HashMap<>();
+        mergeElements(null, source.getRootElements(), mojo, merged);
+        for (Map.Entry<ConfigElement, ConfigElement> entry : new ArrayList<>(merged.entrySet())) {
+            ConfigElement reference = entry.getKey().getReference();
+            if (reference != null) {
+                mergeReference(entry.getValue(), reference, mojo, merged);
+            }
+        }
+    }
+
+    /**
+     * Create an independent, unfrozen copy of this configuration with all mojos
+     *
+     * @return the copy
+     */
+    public Configuration copy() {
+        Configuration ret = new Configuration();
+        for (String goal : getGoals()) {
+            ret.merge(this, goal);
+        }
+        return ret;
+    }
+
+    private void mergeElements(ConfigElement parent, List<ConfigElement> elements,
+                               String mojo, Map<ConfigElement, ConfigElement> merged) {
+        for (ConfigElement element : elements) {
+            if (element.appliesTo(mojo)) {
+                ConfigElement copy = copyElement(parent, element, mojo);
+                merged.put(element, copy);
+                mergeElements(copy, element.getChildren(), mojo, merged);
+            }
+        }
+    }
+
+    private void mergeReference(ConfigElement element, ConfigElement reference,
+                                String mojo, Map<ConfigElement, ConfigElement> merged) {
+        ConfigElement resolved = merged.get(reference);
+        if (resolved == null) {
+            resolved = resolve(reference);
+            if (resolved != null) {
+                // Held by an element of another mojo merged before, which is shared now
+                addGoal(resolved.getChildren(), goals.add(mojo));
+            }
+        }
+        if (resolved != null) {
+            updateReference(element, resolved);
+        } else {
+            // The element holding the type's configuration belongs to another mojo which is not
+            // merged, so this element takes over this role
+            merged.put(reference, element);
+            Map<ConfigElement, ConfigElement> copied = new HashMap<>();
+            for (ConfigElement child : reference.getChildren()) {
+                copySubtree(element, child, mojo, copied);
+            }
+            merged.putAll(copied);
+            for (Map.Entry<ConfigElement, ConfigElement> entry : copied.entrySet()) {
+                ConfigElement childReference = entry.getKey().getReference();
+                if (childReference != null) {
+                    mergeReference(entry.getValue(), childReference, mojo, merged);
+                }
+            }
+        }
+    }
+
+    private void copySubtree(ConfigElement parent, ConfigElement element,
+                             String mojo, Map<ConfigElement, ConfigElement> copied) {
+        ConfigElement copy = copyElement(parent, element, mojo);
+        copied.put(element, copy);
+        for (ConfigElement child : element.getChildren()) {
+            copySubtree(copy, child, mojo, copied);
+        }
+    }
+
+    private ConfigElement copyElement(ConfigElement parent, ConfigElement element, String mojo) {
+        ConfigElement copy = updateElement(parent, mojo, element.getName(), element.getType(),
+                                           element.getDefaultVal(), element.getDocumentation());
+        if (element.isEnum()) {
+            copy.setEnumValues(element.getEnumValues());
+        }
+        copy.setDocumentationDetails(element.getSummary(), element.getSince());
+        // An element shared by several mojos keeps the class which declared it first
+        if (parent == null && copy.getDeclaringType() == null) {
+            copy.setDeclaringType(element.getDeclaringType());
+        }
+        if (element.getProperty() != null) {
+            copy.setProperty(element.getProperty());
+        }
+        return copy;
+    }
+
+    // Find the element at the same position in this configuration
+    private ConfigElement resolve(ConfigElement element) {
+        ConfigElement parent = null;
+        if (element.getParent() != null) {
+            parent = resolve(element.getParent());
+            if (parent == null) {
+                return null;
+            }
+        }
+        return get(parent, element.getName(), element.getType());
+    }
+
+    /**
+     * Freeze this configuration. Afterwards the configuration cannot be changed anymore
+     * and can be read concurrently without any synchronization.
+     *
+     * @return this configuration
+     */
+    public Configuration freeze() {
+        if (!frozen) {
+            rootElements = FrozenList.copyOf(rootElements);
+            rootIndex = null;
+            hierarchies = Collections.unmodifiableMap(hierarchies);
+            for (ConfigElement element : rootElements) {
+                element.freeze();
+            }
+            frozen = true;
+        }
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Get the goals of all mojos
+     *
+     * @return all goals in the order they have been added
+     */
+    public List<String> getGoals() {
+        return goals.getNames();
+    }
+
+    /**
+     * Get the id of a goal, which can be used for checking cheaply whether an element
+     * applies to a mojo with {@link ConfigElement#appliesTo(int)}
+     *
+     * @param goal goal to lookup
+     * @return the goal's id or -1 if there is no such goal
+     */
+    public int getGoalId(String goal) {
+        return goals.indexOf(goal);
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("Configuration is frozen and cannot be changed");
+        }
     }
 
     private ConfigElement create(ConfigElement parent, String mojo, String name,
                                  String type, String defaultVal, String documentation) {
         ConfigElement element;
         element = new ConfigElement(parent,
+                                    goals,
                                     mojo,
                                     name,
                                     type,
                                     defaultVal,
                                     documentation);
-        elements.put(element.getId(), element);
         if (parent == null) {
             rootElements.add(element);
+            ConfigElement.index(rootIndex, element);
         } else {
             parent.addChild(element);
         }
@@ -78,8 +385,19 @@ public class Configuration {
     }
 
 
+    /**
+     * Lookup a config element
+     *
+     * @param parent the parent element or <code>null</code> for a root element
+     * @param name name of the configuration
+     * @param type type or class name
+     * @return the element or <code>null</code> if there is no such element
+     */
     public ConfigElement get(ConfigElement parent, String name, String type) {
-        return elements.get(ConfigElement.createId(parent, name, type));
+        if (parent != null) {
+            return parent.getChild(name, type);
+        }
+        return isFrozen() ? ConfigElement.find(rootElements, name, type) : ConfigElement.find(rootIndex, name, type);
     }
 
     public List<ConfigElement> getRootElements() {
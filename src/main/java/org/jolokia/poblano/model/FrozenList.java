@@ -0,0 +1,65 @@
+package org.jolokia.poblano.model;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Immutable list backed by an array, used for frozen configurations. Unlike an
+ * unmodifiable view of an {@link java.util.ArrayList} it holds exactly the elements
+ * and can be read concurrently.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+final class FrozenList<E> extends AbstractList<E> implements RandomAccess {
+
+    private static final FrozenList<Object> EMPTY = new FrozenList<>(new Object[0]);
+
+    private final Object[] elements;
+
+    private FrozenList(Object[] elements) {
+        this.elements = elements;
+    }
+
+    /**
+     * Create a frozen copy of a list
+     *
+     * @param list list to copy
+     * @return frozen list, an empty list is shared
+     */
+    @SuppressWarnings("unchecked")
+    static <E> List<E> copyOf(List<E> list) {
+        if (list instanceof FrozenList) {
+            return list;
+        }
+        return list.isEmpty() ? (List<E>) EMPTY : new FrozenList<E>(list.toArray());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        return (E) elements[index];
+    }
+
+    @Override
+    public int size() {
+        return elements.length;
+    }
+}
@@ -0,0 +1,71 @@
+package org.jolokia.poblano.model;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.*;
+
+/**
+ * Table of all mojo goals of a configuration. Goals are identified by their index
+ * in this table, so that the goals an element applies to can be stored as bitset.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+final class Goals {
+
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> indexes = new HashMap<>();
+
+    /**
+     * Get the index of a goal, adding the goal if it is not known yet
+     *
+     * @param goal goal to add
+     * @return index of the goal
+     */
+    int add(String goal) {
+        Integer idx = indexes.get(goal);
+        if (idx == null) {
+            idx = names.size();
+            names.add(goal);
+            indexes.put(goal, idx);
+        }
+        return idx;
+    }
+
+    /**
+     * Get the index of a goal
+     *
+     * @param goal goal to lookup
+     * @return index or -1 if the goal is not known
+     */
+    int indexOf(String goal) {
+        Integer idx = indexes.get(goal);
+        return idx != null ? idx : -1;
+    }
+
+    Set<String> toSet(BitSet bits) {
+        Set<String> ret = new LinkedHashSet<>();
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            ret.add(names.get(i));
+        }
+        return ret;
+    }
+
+    List<String> getNames() {
+        return Collections.unmodifiableList(names);
+    }
+}
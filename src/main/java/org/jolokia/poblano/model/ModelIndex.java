@@ -0,0 +1,257 @@
+package org.jolokia.poblano.model;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Binary index of an extracted configuration model, stored between builds. Each mojo
+ * is stored together with a fingerprint of the sources it has been extracted from, so that
+ * mojos whose sources didn't change can be restored from the index instead of being
+ * extracted again.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+public class ModelIndex {
+
+    // Magic number ("PBLI") and format version. Increase the version whenever the format
+    // or the way the model is extracted changes
+    private static final int MAGIC = 0x50424c49;
+    private static final int VERSION = 4;
+
+    // Model as stored in the index
+    private final Configuration config;
+
+    // Mojo goals mapped to the fingerprint of their sources
+    private final Map<String, String> fingerprints;
+
+    private ModelIndex(Configuration config, Map<String, String> fingerprints) {
+        this.config = config;
+        this.fingerprints = fingerprints;
+    }
+
+    /**
+     * Check whether the model of a mojo has been stored with the given fingerprint
+     *
+     * @param mojo the mojo's goal
+     * @param fingerprint current fingerprint of the mojo's sources
+     * @return true if the mojo can be restored from this index
+     */
+    public boolean isUpToDate(String mojo, String fingerprint) {
+        return fingerprint != null && fingerprint.equals(fingerprints.get(mojo));
+    }
+
+    /**
+     * Add all config elements of a mojo stored in this index to a configuration
+     *
+     * @param target configuration to update
+     * @param mojo mojo to restore
+     */
+    public void restore(Configuration target, String mojo) {
+        target.merge(config, mojo);
+    }
+
+    // =======================================================================================
+
+    /**
+     * Read an index
+     *
+     * @param file file to read from
+     * @return the index read or <code>null</code> if there is no index file or
+     *         it has been written in a different format
+     * @throws IOException if the index file could not be read
+     */
+    public static ModelIndex read(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+
+            int nrMojos = in.readInt();
+            String[] mojos = new String[nrMojos];
+            Map<String, String> fingerprints = new HashMap<>();
+            Configuration config = new Configuration();
+            for (int i = 0; i < nrMojos; i++) {
+                mojos[i] = readString(in);
+                fingerprints.put(mojos[i], readString(in));
+                int nrClasses = in.readInt();
+                if (nrClasses > 0) {
+                    List<String> hierarchy = new ArrayList<>(nrClasses);
+                    for (int j = 0; j < nrClasses; j++) {
+                        hierarchy.add(readString(in));
+                    }
+                    config.updateHierarchy(mojos[i], hierarchy);
+                }
+            }
+
+            int nrElements = in.readInt();
+            ConfigElement[] elements = new ConfigElement[nrElements];
+            int[] references = new int[nrElements];
+            for (int i = 0; i < nrElements; i++) {
+                int parentIdx = in.readInt();
+                ConfigElement parent = parentIdx >= 0 ? elements[parentIdx] : null;
+                String name = readString(in);
+                String type = readString(in);
+                String defaultVal = readString(in);
+                String documentation = readString(in);
+                String summary = readString(in);
+                String since = readString(in);
+                String declaringType = readString(in);
+                String property = readString(in);
+                int nrElementMojos = in.readInt();
+                ConfigElement element = null;
+                for (int j = 0; j < nrElementMojos; j++) {
+                    element = config.updateElement(parent, mojos[in.readInt()], name, type, defaultVal, documentation);
+                }
+                if (element == null) {
+                    throw new IOException("Invalid index " + file + ": No mojo for element " + name);
+                }
+                element.setDocumentationDetails(summary, since);
+                if (declaringType != null) {
+                    element.setDeclaringType(declaringType);
+                }
+                if (property != null) {
+                    element.setProperty(property);
+                }
+                int nrEnumValues = in.readInt();
+                if (nrEnumValues >= 0) {
+                    List<EnumValueElement> enumValues = new ArrayList<>(nrEnumValues);
+                    for (int j = 0; j < nrEnumValues; j++) {
+                        enumValues.add(new EnumValueElement(readString(in), readString(in)));
+                    }
+                    element.setEnumValues(enumValues);
+                }
+                references[i] = in.readInt();
+                elements[i] = element;
+            }
+            for (int i = 0; i < nrElements; i++) {
+                if (references[i] >= 0) {
+                    elements[i].setReference(elements[references[i]]);
+                }
+            }
+            return new ModelIndex(config, fingerprints);
+        }
+    }
+
+    /**
+     * Write a configuration model to an index file
+     *
+     * @param file file to write to. Parent directories are created if necessary.
+     * @param config model to store
+     * @param fingerprints goals of all mojos within the configuration mapped to the fingerprints of their sources
+     * @throws IOException if the file could not be written
+     */
+    public static void write(File file, Configuration config, Map<String, String> fingerprints) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir + " for model index");
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            Map<String, Integer> mojoIdx = new HashMap<>();
+            out.writeInt(fingerprints.size());
+            for (Map.Entry<String, String> entry : fingerprints.entrySet()) {
+                mojoIdx.put(entry.getKey(), mojoIdx.size());
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+                List<String> hierarchy = config.getHierarchy(entry.getKey());
+                out.writeInt(hierarchy.size());
+                for (String type : hierarchy) {
+                    writeString(out, type);
+                }
+            }
+
+            // Elements in pre-order so that parents are always read before their children
+            List<ConfigElement> elements = new ArrayList<>();
+            collect(config.getRootElements(), elements);
+            Map<ConfigElement, Integer> elementIdx = new HashMap<>();
+            for (ConfigElement element : elements) {
+                elementIdx.put(element, elementIdx.size());
+            }
+
+            out.writeInt(elements.size());
+            for (ConfigElement element : elements) {
+                out.writeInt(element.getParent() != null ? elementIdx.get(element.getParent()) : -1);
+                writeString(out, element.getName());
+                writeString(out, element.getType());
+                writeString(out, element.getDefaultVal());
+                writeString(out, element.getDocumentation());
+                writeString(out, element.getSummary());
+                writeString(out, element.getSince());
+                writeString(out, element.getDeclaringType());
+                writeString(out, element.getProperty());
+                List<Integer> elementMojos = new ArrayList<>();
+                for (String mojo : element.getMojos()) {
+                    Integer idx = mojoIdx.get(mojo);
+                    if (idx != null) {
+                        elementMojos.add(idx);
+                    }
+                }
+                out.writeInt(elementMojos.size());
+                for (Integer idx : elementMojos) {
+                    out.writeInt(idx);
+                }
+                List<EnumValueElement> enumValues = element.getEnumValues();
+                out.writeInt(enumValues != null ? enumValues.size() : -1);
+                if (enumValues != null) {
+                    for (EnumValueElement enumValue : enumValues) {
+                        writeString(out, enumValue.getValue());
+                        writeString(out, enumValue.getDocumentation());
+                    }
+                }
+                Integer referenceIdx = element.getReference() != null ? elementIdx.get(element.getReference()) : null;
+                out.writeInt(referenceIdx != null ? referenceIdx : -1);
+            }
+        }
+    }
+
+    private static void collect(List<ConfigElement> elements, List<ConfigElement> result) {
+        for (ConfigElement element : elements) {
+            result.add(element);
+            collect(element.getChildren(), result);
+        }
+    }
+
+    // Strings are stored as length and UTF-8 bytes, with -1 for null
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,314 @@
+package org.jolokia.poblano.validator;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.stream.*;
+
+import org.jolokia.poblano.XSDGenerator;
+import org.jolokia.poblano.model.ConfigElement;
+import org.jolokia.poblano.model.Configuration;
+import org.jolokia.poblano.model.EnumValueElement;
+
+/**
+ * Validates plugin configuration blocks (i.e. the content of a <code>&lt;configuration&gt;</code>
+ * element) against an extracted configuration model, with the same rules as the generated XSD.
+ *
+ * The model is compiled once into a table of element rules, so validating a document is a single
+ * streaming pass with one map lookup per element. Values containing Maven property expressions
+ * (<code>${...}</code>) are not type checked, since they are only known after interpolation.
+ *
+ * A validator is immutable after creation and can be used concurrently.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+public class ConfigurationValidator {
+
+    // Rule for the configuration element itself
+    private final ElementRule root;
+
+    // StAX factories are not guaranteed to be thread safe
+    private final ThreadLocal<XMLInputFactory> inputFactory = new ThreadLocal<XMLInputFactory>() {
+        @Override
+        protected XMLInputFactory initialValue() {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+            return factory;
+        }
+    };
+
+    /**
+     * Create a validator for the configuration of all goals
+     *
+     * @param config configuration model
+     */
+    public ConfigurationValidator(Configuration config) {
+        this(config, null);
+    }
+
+    /**
+     * Create a validator for the configuration of a single goal
+     *
+     * @param config configuration model
+     * @param goal goal whose configuration is validated or <code>null</code> for all goals
+     * @throws IllegalArgumentException if the configuration doesn't contain the goal
+     */
+    public ConfigurationValidator(Configuration config, String goal) {
+        int goalId = -1;
+        if (goal != null) {
+            goalId = config.getGoalId(goal);
+            if (goalId < 0) {
+                throw new IllegalArgumentException("No mojo with goal '" + goal + "' found");
+            }
+        }
+        root = ElementRule.complex("configuration");
+        Map<String, ElementRule> types = new HashMap<>();
+        for (ConfigElement element : config.getRootElements()) {
+            if (goalId < 0 || element.appliesTo(goalId)) {
+                root.addChild(element.getName(), compile(element, types));
+            }
+        }
+    }
+
+    // ==========================================================================================
+
+    // Configuration types are compiled once and shared. The rule is registered before its
+    // children are compiled, so that recursive types refer back to it.
+    private ElementRule compile(ConfigElement element, Map<String, ElementRule> types) {
+        if (element.isReference()) {
+            return compile(element.getReference(), types);
+        } else if (element.isMap()) {
+            return ElementRule.ANY;
+        } else if (element.isEnum()) {
+            Set<String> values = new HashSet<>();
+            for (EnumValueElement value : element.getEnumValues()) {
+                values.add(value.getValue());
+            }
+            return ElementRule.enumeration(element.getType(), values);
+        } else if (!element.isComplexType()) {
+            return ElementRule.simple(element.getType(),
+                                      ValueType.forSchemaType(XSDGenerator.getSimpleType(element.getType())));
+        }
+
+        boolean sharedType = !element.isListLike();
+        if (sharedType && types.containsKey(element.getType())) {
+            return types.get(element.getType());
+        }
+        ElementRule rule = ElementRule.complex(element.getType());
+        if (sharedType) {
+            types.put(element.getType(), rule);
+        }
+        for (ConfigElement child : element.getChildren()) {
+            rule.addChild(child.getName(), compile(child, types));
+        }
+        return rule;
+    }
+
+    // ==========================================================================================
+
+    /**
+     * Validate a configuration block. The document's root element is the configuration element,
+     * its name is not checked.
+     *
+     * @param reader reader for the document
+     * @return all errors found, empty if the configuration is valid
+     */
+    public List<ValidationError> validate(Reader reader) {
+        List<ValidationError> errors = new ArrayList<>();
+        try {
+            XMLStreamReader xml = inputFactory.get().createXMLStreamReader(reader);
+            try {
+                validate(xml, errors);
+            } finally {
+                xml.close();
+            }
+        } catch (XMLStreamException e) {
+            Location location = e.getLocation();
+            errors.add(new ValidationError(null,
+                                           location != null ? location.getLineNumber() : -1,
+                                           location != null ? location.getColumnNumber() : -1,
+                                           "Invalid XML: " + e.getMessage()));
+        }
+        return errors;
+    }
+
+    /**
+     * Validate a configuration block stored in a file
+     *
+     * @param file file to validate
+     * @return all errors found, empty if the configuration is valid
+     * @throws IOException if the file cannot be read
+     */
+    public List<ValidationError> validate(File file) throws IOException {
+        try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            return validate(reader);
+        }
+    }
+
+    /**
+     * Validate many files concurrently. A file which cannot be read is reported with
+     * a single error.
+     *
+     * @param files files to validate
+     * @param threads maximum number of threads to use
+     * @return errors per file, in the order of the given files
+     */
+    public Map<File, List<ValidationError>> validate(Collection<File> files, int threads) {
+        Map<File, List<ValidationError>> ret = new LinkedHashMap<>();
+        if (files.isEmpty()) {
+            return ret;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, files.size())),
+                                                                new ValidatorThreadFactory());
+        try {
+            Map<File, Future<List<ValidationError>>> futures = new LinkedHashMap<>();
+            for (final File file : files) {
+                futures.put(file, executor.submit(new Callable<List<ValidationError>>() {
+                    public List<ValidationError> call() throws IOException {
+                        return validate(file);
+                    }
+                }));
+            }
+            for (Map.Entry<File, Future<List<ValidationError>>> entry : futures.entrySet()) {
+                ret.put(entry.getKey(), getErrors(entry.getKey(), entry.getValue()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return ret;
+    }
+
+    /**
+     * Validate many files concurrently with one thread per available processor
+     *
+     * @param files files to validate
+     * @return errors per file, in the order of the given files
+     */
+    public Map<File, List<ValidationError>> validate(Collection<File> files) {
+        return validate(files, Runtime.getRuntime().availableProcessors());
+    }
+
+    private List<ValidationError> getErrors(File file, Future<List<ValidationError>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Collections.singletonList(new ValidationError(null, -1, -1, "Interrupted while validating " + file));
+        } catch (ExecutionException e) {
+            return Collections.singletonList(new ValidationError(null, -1, -1, "Cannot read " + file + ": " +
+                                                                               e.getCause().getMessage()));
+        }
+    }
+
+    // ==========================================================================================
+
+    private void validate(XMLStreamReader xml, List<ValidationError> errors) throws XMLStreamException {
+        // Rules of the open elements. Invalid elements are skipped with all their content.
+        Deque<ElementRule> rules = new ArrayDeque<>();
+        Deque<String> path = new ArrayDeque<>();
+        StringBuilder text = new StringBuilder();
+        int textLine = -1;
+        int textColumn = -1;
+        boolean textReported = false;
+
+        while (xml.hasNext()) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = xml.getLocalName();
+                ElementRule parent = rules.peek();
+                ElementRule rule;
+                path.addLast(name);
+                if (path.size() == 1) {
+                    rule = root;
+                } else if (parent.getContent() == ElementRule.Content.ANY) {
+                    rule = ElementRule.ANY;
+                } else if (parent.getContent() == ElementRule.Content.SIMPLE) {
+                    addError(errors, xml, path, "Element '" + name + "' not allowed within a value of type " + parent.getType());
+                    rule = ElementRule.ANY;
+                } else {
+                    rule = parent.getChild(name);
+                    if (rule == null) {
+                        addError(errors, xml, path, "Unknown element '" + name + "', expected one of " + parent.getChildNames());
+                        rule = ElementRule.ANY;
+                    }
+                }
+                // Value is checked at the end of the element, but reported at its start
+                rules.push(rule);
+                text.setLength(0);
+                textLine = xml.getLocation().getLineNumber();
+                textColumn = xml.getLocation().getColumnNumber();
+                textReported = false;
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                ElementRule rule = rules.peek();
+                if (rule.getContent() == ElementRule.Content.SIMPLE) {
+                    text.append(xml.getText());
+                } else if (rule.getContent() == ElementRule.Content.COMPLEX &&
+                           xml.getText().trim().length() != 0 && !textReported) {
+                    addError(errors, xml, path, "Text not allowed for element of type " + rule.getType());
+                    textReported = true;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                ElementRule rule = rules.pop();
+                if (rule.getContent() == ElementRule.Content.SIMPLE) {
+                    String value = text.toString().trim();
+                    // Empty values and property expressions are not checked
+                    if (value.length() != 0 && !value.contains("${")) {
+                        String message = rule.check(value);
+                        if (message != null) {
+                            errors.add(new ValidationError(toPath(path), textLine, textColumn, message));
+                        }
+                    }
+                }
+                text.setLength(0);
+                path.removeLast();
+            }
+        }
+    }
+
+    private void addError(List<ValidationError> errors, XMLStreamReader xml, Deque<String> path, String message) {
+        Location location = xml.getLocation();
+        errors.add(new ValidationError(toPath(path), location.getLineNumber(), location.getColumnNumber(), message));
+    }
+
+    private String toPath(Deque<String> path) {
+        StringBuilder ret = new StringBuilder();
+        for (String name : path) {
+            ret.append('/').append(name);
+        }
+        return ret.toString();
+    }
+
+    // Daemon threads, so that validation doesn't block the JVM from exiting
+    private static class ValidatorThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "poblano-validator-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.jolokia.poblano.validator;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.*;
+
+/**
+ * Compiled rule for the content of a configuration element. Rules for configuration types
+ * are shared by all elements of this type, so a rule's child table might refer back to the
+ * rule itself for recursive types.
+ *
+ * Rules are only modified while compiling and are read only afterwards.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+final class ElementRule {
+
+    enum Content {
+        // Text value, possibly restricted to a set of enum values
+        SIMPLE,
+        // Child elements only, looked up in the child table
+        COMPLEX,
+        // Anything (e.g. maps), not validated at all
+        ANY
+    }
+
+    // Rule for elements whose content is not checked
+    static final ElementRule ANY = new ElementRule(Content.ANY, null, null, null);
+
+    private final Content content;
+    private final String type;
+    private final ValueType valueType;
+    private final Set<String> enumValues;
+    private final Map<String, ElementRule> children;
+
+    private ElementRule(Content content, String type, ValueType valueType, Set<String> enumValues) {
+        this.content = content;
+        this.type = type;
+        this.valueType = valueType;
+        this.enumValues = enumValues;
+        this.children = content == Content.COMPLEX ? new HashMap<String, ElementRule>() : null;
+    }
+
+    static ElementRule simple(String type, ValueType valueType) {
+        return new ElementRule(Content.SIMPLE, type, valueType, null);
+    }
+
+    static ElementRule enumeration(String type, Set<String> enumValues) {
+        return new ElementRule(Content.SIMPLE, type, ValueType.STRING, enumValues);
+    }
+
+    static ElementRule complex(String type) {
+        return new ElementRule(Content.COMPLEX, type, null, null);
+    }
+
+    Content getContent() {
+        return content;
+    }
+
+    String getType() {
+        return type;
+    }
+
+    // Only used while compiling. The first rule for a name wins.
+    void addChild(String name, ElementRule rule) {
+        if (!children.containsKey(name)) {
+            children.put(name, rule);
+        }
+    }
+
+    ElementRule getChild(String name) {
+        return children.get(name);
+    }
+
+    Set<String> getChildNames() {
+        return new TreeSet<>(children.keySet());
+    }
+
+    /**
+     * Check a simple value
+     *
+     * @param value trimmed value
+     * @return error message or <code>null</code> if the value is valid
+     */
+    String check(String value) {
+        if (enumValues != null) {
+            return enumValues.contains(value) ?
+                null :
+                "Invalid value '" + value + "', must be one of " + new TreeSet<>(enumValues);
+        }
+        return valueType.isValid(value) ?
+            null :
+            "Invalid value '" + value + "' for type " + type + " (" + valueType.getSchemaType() + ")";
+    }
+}
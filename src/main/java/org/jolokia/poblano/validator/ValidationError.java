@@ -0,0 +1,77 @@
+package org.jolokia.poblano.validator;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * A single violation found when validating a configuration block
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+public class ValidationError {
+
+    private final String path;
+    private final int line;
+    private final int column;
+    private final String message;
+
+    public ValidationError(String path, int line, int column, String message) {
+        this.path = path;
+        this.line = line;
+        this.column = column;
+        this.message = message;
+    }
+
+    /**
+     * Path of the element, e.g. "/configuration/images/image/name"
+     *
+     * @return path or <code>null</code> if the error is not related to an element
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return line within the document or -1 if not known
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * @return column within the line or -1 if not known
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder ret = new StringBuilder();
+        if (line >= 0) {
+            ret.append(line).append(':').append(column).append(' ');
+        }
+        if (path != null) {
+            ret.append(path).append(": ");
+        }
+        return ret.append(message).toString();
+    }
+}
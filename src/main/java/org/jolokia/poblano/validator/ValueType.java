@@ -0,0 +1,81 @@
+package org.jolokia.poblano.validator;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.regex.Pattern;
+
+/**
+ * Checks for the lexical space of the XML Schema types used for simple configuration values.
+ * Values are expected to be trimmed already.
+ *
+ * @author roland
+ * @since 30/05/16
+ */
+enum ValueType {
+
+    STRING("xs:string", null),
+    INTEGER("xs:integer", "[+-]?[0-9]+"),
+    LONG("xs:long", "[+-]?[0-9]+") {
+        @Override
+        boolean isValid(String value) {
+            if (!super.isValid(value)) {
+                return false;
+            }
+            try {
+                Long.parseLong(value.startsWith("+") ? value.substring(1) : value);
+                return true;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+    },
+    FLOAT("xs:float", "[+-]?([0-9]+(\\.[0-9]*)?|\\.[0-9]+)([eE][+-]?[0-9]+)?|-?INF|NaN"),
+    DOUBLE("xs:double", "[+-]?([0-9]+(\\.[0-9]*)?|\\.[0-9]+)([eE][+-]?[0-9]+)?|-?INF|NaN"),
+    BOOLEAN("xs:boolean", "true|false|1|0"),
+    DATE("xs:date", "-?[0-9]{4,}-[0-9]{2}-[0-9]{2}(Z|[+-][0-9]{2}:[0-9]{2})?");
+
+    private final String schemaType;
+    private final Pattern pattern;
+
+    ValueType(String schemaType, String pattern) {
+        this.schemaType = schemaType;
+        this.pattern = pattern != null ? Pattern.compile(pattern) : null;
+    }
+
+    boolean isValid(String value) {
+        return pattern == null || pattern.matcher(value).matches();
+    }
+
+    String getSchemaType() {
+        return schemaType;
+    }
+
+    /**
+     * Lookup the check for an XML Schema type
+     *
+     * @param schemaType type with "xs" prefix
+     * @return the value type, {@link #STRING} for unknown types
+     */
+    static ValueType forSchemaType(String schemaType) {
+        for (ValueType type : values()) {
+            if (type.schemaType.equals(schemaType)) {
+                return type;
+            }
+        }
+        return STRING;
+    }
+}
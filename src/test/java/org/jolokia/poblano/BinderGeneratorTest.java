@@ -0,0 +1,138 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import javax.tools.*;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author roland
+ * @since 30/05/16
+ */
+public class BinderGeneratorTest {
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static ClassLoader classLoader;
+    private static List<String> notes = new ArrayList<>();
+
+    @BeforeClass
+    public static void compile() throws IOException {
+        File classes = folder.newFolder("classes");
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+            File source = new File(BinderGeneratorTest.class.getResource("/BinderMojo.java").getFile());
+            List<String> options = Arrays.asList("-d", classes.getPath(),
+                                                 "-classpath", System.getProperty("java.class.path"),
+                                                 "-Apoblano.binders=true");
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null,
+                                                                 fileManager.getJavaFileObjects(source));
+            task.setProcessors(Collections.singletonList(new PoblanoProcessor()));
+            assertTrue(diagnostics.getDiagnostics().toString(), task.call());
+        }
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            notes.add(diagnostic.getMessage(null));
+        }
+        classLoader = new URLClassLoader(new URL[] { classes.toURI().toURL() }, BinderGeneratorTest.class.getClassLoader());
+    }
+
+    @Test
+    public void bind() throws Exception {
+        String file = new File("target").getAbsolutePath();
+        Object mojo = bind(true,
+                           "<configuration>\n" +
+                           "  <name> test </name>\n" +
+                           "  <count>3</count>\n" +
+                           "  <enabled>true</enabled>\n" +
+                           "  <mode>SLOW</mode>\n" +
+                           "  <dir>" + file + "</dir>\n" +
+                           "  <!-- Nested and recursive -->\n" +
+                           "  <server><host>a</host><backup><host>b</host><separator>:</separator></backup></server>\n" +
+                           "  <servers><server><host>c</host></server><server><host>d</host></server></servers>\n" +
+                           "  <ports><port>80</port><port>443</port></ports>\n" +
+                           "  <tags><tag>x</tag></tags>\n" +
+                           "</configuration>");
+        assertEquals("test", get(mojo, "name"));
+        assertEquals(3, get(mojo, "count"));
+        assertEquals(true, get(mojo, "enabled"));
+        assertEquals("SLOW", get(mojo, "mode").toString());
+        assertEquals(new File(file), get(mojo, "dir"));
+        Object server = get(mojo, "server");
+        assertEquals("a", get(server, "host"));
+        assertEquals("b", get(get(server, "backup"), "host"));
+        assertEquals(':', get(get(server, "backup"), "separator"));
+        List<?> servers = (List<?>) get(mojo, "servers");
+        assertEquals(2, servers.size());
+        assertEquals("d", get(servers.get(1), "host"));
+        assertArrayEquals(new int[] { 80, 443 }, (int[]) get(mojo, "ports"));
+        assertEquals(Collections.singleton("x"), get(mojo, "tags"));
+    }
+
+    @Test
+    public void fallback() throws Exception {
+        // Inaccessible field, map, expression, relative file, unknown element, wrong item name, invalid value
+        for (String content : Arrays.asList("<hidden>x</hidden>",
+                                            "<env><a>b</a></env>",
+                                            "<name>${project.name}</name>",
+                                            "<dir>target</dir>",
+                                            "<unknown>1</unknown>",
+                                            "<ports><item>1</item></ports>",
+                                            "<count>many</count>",
+                                            "<server implementation=\"Other\"/>")) {
+            bind(false, "<configuration>" + content + "</configuration>");
+        }
+    }
+
+    @Test
+    public void unboundParameters() {
+        assertTrue(notes.toString(), notes.contains("binder: Parameters [hidden, env] can't be bound without reflection, " +
+                                                    "binder falls back when they are configured"));
+    }
+
+    private Object bind(boolean expected, String configuration) throws Exception {
+        Class<?> mojoClass = classLoader.loadClass("BinderMojo");
+        Object mojo = mojoClass.newInstance();
+        Method bind = classLoader.loadClass("BinderMojo" + BinderGenerator.BINDER_SUFFIX)
+                                 .getMethod("bind", mojoClass, java.io.Reader.class);
+        assertEquals(configuration, expected, bind.invoke(null, mojo, new StringReader(configuration)));
+        return mojo;
+    }
+
+    private Object get(Object object, String name) throws Exception {
+        Field field = object.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(object);
+    }
+}
@@ -0,0 +1,162 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import javax.tools.*;
+
+import org.jolokia.poblano.model.Configuration;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author roland
+ * @since 30/05/16
+ */
+public class DescriptorGeneratorTest {
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static Class<?> descriptor;
+
+    @BeforeClass
+    public static void compile() throws Exception {
+        File classes = folder.newFolder("classes");
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+            File source = new File(DescriptorGeneratorTest.class.getResource("/BinderMojo.java").getFile());
+            List<String> options = Arrays.asList("-d", classes.getPath(),
+                                                 "-classpath", System.getProperty("java.class.path"),
+                                                 "-Apoblano.descriptors=true");
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null,
+                                                                 fileManager.getJavaFileObjects(source));
+            task.setProcessors(Collections.singletonList(new PoblanoProcessor()));
+            assertTrue(diagnostics.getDiagnostics().toString(), task.call());
+        }
+        ClassLoader classLoader = new URLClassLoader(new URL[] { classes.toURI().toURL() },
+                                                     DescriptorGeneratorTest.class.getClassLoader());
+        descriptor = classLoader.loadClass("BinderMojo" + DescriptorGenerator.DESCRIPTOR_SUFFIX);
+    }
+
+    @Test
+    public void parameters() throws Exception {
+        assertEquals("binder", descriptor.getField("GOAL").get(null));
+        int[] roots = (int[]) call("getRoots");
+        List<String> names = new ArrayList<>();
+        for (int root : roots) {
+            names.add((String) call("getName", root));
+            assertEquals(-1, call("getParent", root));
+        }
+        assertEquals(Arrays.asList("name", "count", "enabled", "hidden", "mode", "dir", "server", "servers",
+                                   "ports", "tags", "env"), names);
+
+        int name = (Integer) call("indexOf", "name");
+        assertEquals("java.lang.String", call("getType", name));
+        assertEquals("poblano", call("getDefaultValue", name));
+        assertEquals("binder.name", call("getProperty", name));
+        assertEquals(name, call("indexOfProperty", "binder.name"));
+        assertEquals(-1, call("indexOfProperty", "binder.unknown"));
+        assertNull(call("getDefaultValue", call("indexOf", "count")));
+
+        int mode = (Integer) call("indexOf", "mode");
+        assertArrayEquals(new String[] { "FAST", "SLOW" }, (String[]) call("getEnumValues", mode));
+        assertEquals(0, ((String[]) call("getEnumValues", name)).length);
+    }
+
+    @Test
+    public void nested() throws Exception {
+        int server = (Integer) call("indexOf", "server");
+        int host = (Integer) call("indexOf", "server.host");
+        assertEquals(server, call("getParent", host));
+        assertEquals(3, ((int[]) call("getChildren", server)).length);
+
+        // Recursive elements share the children of the enclosing type
+        assertEquals(host, call("indexOf", "server.backup.backup.host"));
+        assertEquals(-1, call("indexOf", "server.unknown"));
+        assertEquals(-1, call("indexOf", "name.host"));
+    }
+
+    @Test
+    public void literal() {
+        assertEquals("\"a\\\"b\\\\c\\012\\000\\u00e4\"", DescriptorGenerator.literal("a\"b\\c\n\u0000ä"));
+    }
+
+    @Test
+    public void largeConfiguration() throws Exception {
+        // More data than fits into a single string constant
+        final String source = DescriptorGenerator.createSource(createConfiguration(20000), "large", "test.LargeMojo",
+                                                               "test.LargeDescriptor");
+        File classes = folder.newFolder("large");
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///test/LargeDescriptor.java"),
+                                                       JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics,
+                                                             Arrays.asList("-d", classes.getPath(), "-proc:none"),
+                                                             null, Collections.singletonList(file));
+        assertTrue(diagnostics.getDiagnostics().toString(), task.call());
+
+        // Class initializer unpacks all arrays
+        ClassLoader classLoader = new URLClassLoader(new URL[] { classes.toURI().toURL() });
+        Class<?> large = classLoader.loadClass("test.LargeDescriptor");
+        assertEquals(20000, large.getMethod("size").invoke(null));
+        assertEquals(19999, large.getMethod("indexOf", String.class).invoke(null, "param19999"));
+        assertEquals("java.lang.String", large.getMethod("getType", int.class).invoke(null, 19999));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooLarge() {
+        DescriptorGenerator.createSource(createConfiguration(Character.MAX_VALUE + 1), "large", "test.LargeMojo",
+                                         "test.LargeDescriptor");
+    }
+
+    private Configuration createConfiguration(int size) {
+        Configuration config = new Configuration();
+        for (int i = 0; i < size; i++) {
+            config.updateElement(null, "large", "param" + i, "java.lang.String", null, null);
+        }
+        return config;
+    }
+
+    private Object call(String method, Object... args) throws Exception {
+        for (Method candidate : descriptor.getMethods()) {
+            if (candidate.getName().equals(method) && candidate.getParameterTypes().length == args.length) {
+                return candidate.invoke(null, args);
+            }
+        }
+        throw new NoSuchMethodException(method);
+    }
+}
@@ -0,0 +1,56 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author roland
+ * @since 30/05/16
+ */
+public class DocumentationSanitizerTest {
+
+    private final DocumentationSanitizer sanitizer = new DocumentationSanitizer();
+
+    @Test
+    public void fastPath() {
+        assertEquals("<p>Plain text &amp; more</p>", sanitizer.normalize("Plain text & more"));
+        assertEquals("<p>First.</p><p>Second <code>x</code>.</p>",
+                     sanitizer.normalize("First.\n<p>\nSecond <code>x</code>."));
+        assertEquals("<p>Intro</p><ul><li>one</li><li>two <em>!</em></li></ul><p>Outro</p>",
+                     sanitizer.normalize("Intro\n<ul>\n  <li>one</li>\n  <li>two <em>!</em></li>\n</ul>\nOutro"));
+        assertEquals("<p>a<br/>b</p>", sanitizer.normalize("a<br>b"));
+    }
+
+    @Test
+    public void tidyFallback() {
+        assertNull(sanitizer.normalize("<ul><li>unclosed</ul>"));
+        assertNull(sanitizer.normalize("<a href=\"x\">link</a>"));
+        assertNull(sanitizer.normalize("&nbsp;"));
+        assertEquals("<p>&#160;x</p>", sanitizer.sanitize("&nbsp;x"));
+    }
+
+    @Test
+    public void cached() {
+        String doc = " Shared documentation\n";
+        assertSame(sanitizer.sanitize(doc), sanitizer.sanitize(new String(doc)));
+        assertNull(sanitizer.sanitize("  \n"));
+        assertNull(sanitizer.sanitize(null));
+    }
+}
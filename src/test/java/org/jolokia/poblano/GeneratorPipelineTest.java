@@ -0,0 +1,237 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+import org.jolokia.poblano.model.ConfigElement;
+import org.jolokia.poblano.model.Configuration;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author roland
+ * @since 30/05/16
+ */
+public class GeneratorPipelineTest {
+
+    @Test
+    public void allGenerators() throws Exception {
+        Map<String, String> outputs = run(XSDGeneratorTest.createTestModel(), "xsd, asciidoc, json");
+        assertEquals(new HashSet<>(Arrays.asList("META-INF/poblano/configuration.xsd",
+                                                 "META-INF/poblano/asciidoc/test.adoc",
+                                                 "META-INF/poblano/asciidoc/_types/Nested.adoc",
+                                                 "META-INF/poblano/asciidoc/_types/Nested.InnerNested.adoc",
+                                                 "META-INF/poblano/configuration-schema.json")),
+                     outputs.keySet());
+
+        String adoc = outputs.get("META-INF/poblano/asciidoc/test.adoc");
+        assertTrue(adoc.startsWith(":poblano-goal: test\n"));
+        assertTrue(adoc.contains("\n[[poblano-test]]\n"));
+        assertTrue(adoc.contains("a| A nested bean\n\n* Wrong item\n"));
+        assertTrue(adoc.contains("| `nested`\n| <<poblano-{poblano-goal}-type-Nested,Nested>>\n"));
+        assertTrue(adoc.contains("| `nestedList.nested`\n| <<poblano-{poblano-goal}-type-Nested,Nested>>\n"));
+        assertTrue(adoc.contains("| `speed`\n| Speed\n| `FAST`\na| How fast to go\n\nOne of `FAST`, `SLOW`.\n"));
+        assertTrue(adoc.contains("\n[[poblano-test-type-Nested.InnerNested]]\ninclude::_types/Nested.InnerNested.adoc[]\n"));
+        assertFalse(adoc.contains("colour"));
+        String inner = outputs.get("META-INF/poblano/asciidoc/_types/Nested.InnerNested.adoc");
+        assertTrue(inner.contains("| `colour`\n| String\n| \na| The colour of life\n"));
+
+        String json = outputs.get("META-INF/poblano/configuration-schema.json");
+        assertTrue(json.contains("\"id\": \"urn:poblano:configuration\""));
+        assertTrue(json.contains("\"description\": \"A nested bean\\n- Wrong item\""));
+        assertTrue(json.contains("\"stringArray\": {\n" +
+                                 "      \"description\": \"Array of strings\",\n" +
+                                 "      \"type\": \"array\",\n" +
+                                 "      \"items\": {\n" +
+                                 "        \"type\": \"string\"\n" +
+                                 "      }\n" +
+                                 "    }"));
+        assertTrue(json.contains("\"enum\": [\n        \"FAST\",\n        \"SLOW\"\n      ],\n      \"default\": \"FAST\""));
+    }
+
+    @Test
+    public void asciiDocFragments() throws Exception {
+        Configuration config = new Configuration();
+        for (String goal : Arrays.asList("build", "push")) {
+            ConfigElement skip = config.updateElement(null, goal, "skip", "boolean", null, "Skip it");
+            config.updateDeclaringType(skip, "org.example.BaseMojo");
+            config.updateHierarchy(goal, Arrays.asList("org.example." + goal + "Mojo", "org.example.BaseMojo"));
+        }
+        ConfigElement image = config.updateElement(null, "build", "image", "org.example.Image", null, "Image to build");
+        config.updateDeclaringType(image, "org.example.buildMojo");
+        config.updateElement(image, "build", "name", "java.lang.String", null, "Image name");
+
+        Map<String, String> outputs = run(config, "asciidoc");
+        assertEquals(new HashSet<>(Arrays.asList("META-INF/poblano/asciidoc/build.adoc",
+                                                 "META-INF/poblano/asciidoc/push.adoc",
+                                                 "META-INF/poblano/asciidoc/_mojos/org.example.BaseMojo.adoc",
+                                                 "META-INF/poblano/asciidoc/_types/org.example.Image.adoc")),
+                     outputs.keySet());
+        String build = outputs.get("META-INF/poblano/asciidoc/build.adoc");
+        assertTrue(build.contains("| `image`\n| <<poblano-{poblano-goal}-type-org.example.Image,Image>>\n"));
+        assertTrue(build.contains("\ninclude::_mojos/org.example.BaseMojo.adoc[]\n"));
+        assertFalse(build.contains("`skip`"));
+        String base = outputs.get("META-INF/poblano/asciidoc/_mojos/org.example.BaseMojo.adoc");
+        assertTrue(base.contains("| `skip`\n| boolean\n| \na| Skip it\n"));
+
+        // Only the changed fragment gets a different content, all other files can be kept
+        config = config.copy();
+        config.updateElement(config.get(null, "image", "org.example.Image"), "build", "tag", "java.lang.String",
+                             null, "Image tag");
+        Map<String, String> changed = run(config, "asciidoc");
+        assertEquals(outputs.keySet(), changed.keySet());
+        for (String path : outputs.keySet()) {
+            assertEquals(path, !path.endsWith("/org.example.Image.adoc"), outputs.get(path).equals(changed.get(path)));
+        }
+    }
+
+    @Test
+    public void recursiveJsonSchema() throws Exception {
+        Configuration config = new Configuration();
+        ConfigElement node = config.updateElement(null, "tree", "tree", "Node", null, "The tree");
+        ConfigElement children = config.updateElement(node, "tree", "children", ConfigElement.COLLECTION_TYPE, null, null);
+        config.updateReference(config.updateElement(children, "tree", "node", "Node", null, null), node);
+
+        String json = run(config, "json").get("META-INF/poblano/configuration-schema.json");
+        assertTrue(json.contains("\"tree\": {\n      \"$ref\": \"#/definitions/Node\"\n    }"));
+        assertTrue(json.contains("\"items\": {\n            \"$ref\": \"#/definitions/Node\"\n          }"));
+    }
+
+    @Test
+    public void goalViews() throws Exception {
+        Configuration config = new Configuration();
+        ConfigElement image = config.updateElement(null, "build", "image", "Image", null, "Image to build");
+        config.updateElement(image, "build", "name", "java.lang.String", null, null);
+        config.updateElement(null, "build", "skip", "boolean", null, null);
+        config.updateElement(null, "push", "skip", "boolean", null, null);
+        config.updateElement(null, "push", "registry", "java.lang.String", null, null);
+
+        Map<String, String> options = new HashMap<>();
+        options.put(PoblanoOptions.GOALS, "*");
+        Map<String, String> outputs = run(config, "xsd,json", options);
+        assertEquals(new HashSet<>(Arrays.asList("META-INF/poblano/configuration.xsd",
+                                                 "META-INF/poblano/configuration-build.xsd",
+                                                 "META-INF/poblano/configuration-push.xsd",
+                                                 "META-INF/poblano/configuration-schema.json",
+                                                 "META-INF/poblano/configuration-schema-build.json",
+                                                 "META-INF/poblano/configuration-schema-push.json")),
+                     outputs.keySet());
+
+        String all = outputs.get("META-INF/poblano/configuration.xsd");
+        String push = outputs.get("META-INF/poblano/configuration-push.xsd");
+        assertTrue(all.contains("name=\"image\"") && all.contains("name=\"registry\""));
+        assertTrue(push.contains("name=\"skip\"") && push.contains("name=\"registry\""));
+        assertFalse(push.contains("name=\"image\""));
+        String buildJson = outputs.get("META-INF/poblano/configuration-schema-build.json");
+        assertTrue(buildJson.contains("\"image\"") && buildJson.contains("\"skip\""));
+        assertFalse(buildJson.contains("\"registry\""));
+    }
+
+    @Test
+    public void minifiedCompressedXsd() throws Exception {
+        Map<String, String> options = new HashMap<>();
+        options.put(PoblanoOptions.XSD_FORMAT, "minified");
+        options.put(PoblanoOptions.XSD_GZIP, "true");
+        options.put(PoblanoOptions.XSD_DOCUMENTATION, "false");
+        GeneratorPipeline.Result result =
+            new GeneratorPipeline(Arrays.<Generator>asList(new XSDGenerator()))
+                .run(XSDGeneratorTest.createTestModel(), new PoblanoOptions(options)).get(0);
+        assertNull(result.getError());
+        byte[] compressed = result.getOutputs().get("META-INF/poblano/configuration.xsd.gz");
+        assertNotNull(compressed);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[4096];
+            for (int len = in.read(buffer); len > 0; len = in.read(buffer)) {
+                out.write(buffer, 0, len);
+            }
+        }
+        String xsd = out.toString("UTF-8");
+        assertFalse(xsd.contains("\n"));
+        assertFalse(xsd.contains("xs:annotation"));
+        assertTrue(xsd.contains("<xs:element name=\"colour\" type=\"xs:string\"/>"));
+    }
+
+    @Test
+    public void unknownGoalView() throws Exception {
+        Map<String, String> options = new HashMap<>();
+        options.put(PoblanoOptions.GOALS, "deploy");
+        PoblanoOptions poblanoOptions = new PoblanoOptions(options);
+        List<GeneratorPipeline.Result> results =
+            new GeneratorPipeline(Arrays.<Generator>asList(new XSDGenerator()))
+                .run(XSDGeneratorTest.createTestModel(), poblanoOptions);
+        assertTrue(results.get(0).getError().getMessage().contains("deploy"));
+    }
+
+    @Test
+    public void goalPath() {
+        assertEquals("META-INF/poblano/configuration-build.xsd",
+                     PoblanoOptions.getGoalPath("META-INF/poblano/configuration.xsd", "build"));
+        assertEquals("schema/config-build", PoblanoOptions.getGoalPath("schema/config", "build"));
+        assertEquals("my.dir/config-build", PoblanoOptions.getGoalPath("my.dir/config", "build"));
+    }
+
+    @Test
+    public void failingGenerator() throws Exception {
+        Generator failing = new Generator() {
+            public String getName() {
+                return "failing";
+            }
+
+            public void generate(Configuration config, GeneratorContext context) {
+                throw new IllegalStateException("Boom");
+            }
+        };
+        List<GeneratorPipeline.Result> results =
+            new GeneratorPipeline(Arrays.asList(failing, new JsonSchemaGenerator()))
+                .run(XSDGeneratorTest.createTestModel(), new PoblanoOptions(new HashMap<String, String>()));
+        assertEquals("Boom", results.get(0).getError().getMessage());
+        assertNull(results.get(1).getError());
+        assertEquals(1, results.get(1).getOutputs().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownGenerator() {
+        GeneratorPipeline.create(Arrays.asList("xsd", "unknown"), getClass().getClassLoader(), Metrics.DISABLED);
+    }
+
+    private Map<String, String> run(Configuration config, String generators) throws Exception {
+        return run(config, generators, new HashMap<String, String>());
+    }
+
+    private Map<String, String> run(Configuration config, String generators, Map<String, String> options) throws Exception {
+        options.put(PoblanoOptions.GENERATORS, generators);
+        PoblanoOptions poblanoOptions = new PoblanoOptions(options);
+        Map<String, String> outputs = new HashMap<>();
+        for (GeneratorPipeline.Result result : GeneratorPipeline.create(poblanoOptions.getGenerators(), getClass().getClassLoader(), Metrics.DISABLED)
+                                                                .run(config, poblanoOptions)) {
+            assertNull(result.getError());
+            for (Map.Entry<String, byte[]> entry : result.getOutputs().entrySet()) {
+                outputs.put(entry.getKey(), new String(entry.getValue(), "UTF-8"));
+            }
+        }
+        return outputs;
+    }
+}
@@ -1,13 +1,46 @@
 package org.jolokia.poblano;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
-import javax.tools.JavaFileObject;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedSourceVersion;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.*;
 
 import com.google.testing.compile.JavaFileObjects;
+import org.jolokia.poblano.model.ConfigElement;
+import org.jolokia.poblano.model.Configuration;
+import org.jolokia.poblano.model.ModelIndex;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import static com.google.common.truth.Truth.assert_;
+import static org.junit.Assert.*;
 import static com.google.testing.compile.JavaSourcesSubjectFactory.javaSources;
 
 /*
@@ -33,13 +66,481 @@ import static com.google.testing.compile.JavaSourcesSubjectFactory.javaSources;
  */
 public class PoblanoProcessorTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void simple() throws Exception {
         JavaFileObject mojoFile = JavaFileObjects.forResource("TestMojo.java");
         assert_().about(javaSources())
                  .that(Arrays.asList(mojoFile))
                  .processedWith(new PoblanoProcessor())
+                 .compilesWithoutError()
+                 .and()
+                 .generatesFileNamed(StandardLocation.CLASS_OUTPUT, "", "META-INF/poblano/configuration.xsd");
+    }
+
+    @Test
+    public void outputOptions() throws Exception {
+        JavaFileObject mojoFile = JavaFileObjects.forResource("TestMojo.java");
+        assert_().about(javaSources())
+                 .that(Arrays.asList(mojoFile))
+                 .withCompilerOptions("-Apoblano.location=SOURCE_OUTPUT",
+                                      "-Apoblano.xsd.file=test/test-mojo.xsd",
+                                      "-Apoblano.namespace=http://example.com/test-plugin")
+                 .processedWith(new PoblanoProcessor())
+                 .compilesWithoutError()
+                 .and()
+                 .generatesFileNamed(StandardLocation.SOURCE_OUTPUT, "", "test/test-mojo.xsd");
+    }
+
+    @Test
+    public void generators() throws Exception {
+        JavaFileObject mojoFile = JavaFileObjects.forResource("TestMojo.java");
+        assert_().about(javaSources())
+                 .that(Arrays.asList(mojoFile))
+                 .withCompilerOptions("-Apoblano.generators=xsd,asciidoc,json")
+                 .processedWith(new PoblanoProcessor())
+                 .compilesWithoutError()
+                 .and()
+                 .generatesFileNamed(StandardLocation.CLASS_OUTPUT, "", "META-INF/poblano/configuration.xsd")
+                 .and()
+                 .generatesFileNamed(StandardLocation.CLASS_OUTPUT, "", "META-INF/poblano/asciidoc/test.adoc")
+                 .and()
+                 .generatesFileNamed(StandardLocation.CLASS_OUTPUT, "", "META-INF/poblano/configuration-schema.json");
+    }
+
+    @Test
+    public void sharedBaseMojo() throws Exception {
+        File classes = folder.newFolder("classes");
+        File indexFile = new File(folder.getRoot(), "poblano/model.idx");
+        compile(classes, Arrays.asList("TestMojo.java", "OtherMojo.java", "MyBaseMojo.java", "Nested.java"),
+                "-Apoblano.generators=asciidoc", "-Apoblano.index=" + indexFile.getAbsolutePath());
+        assertTrue(new File(classes, "META-INF/poblano/asciidoc/_mojos/MyBaseMojo.adoc").exists());
+        assertTrue(new File(classes, "META-INF/poblano/asciidoc/_types/Nested.adoc").exists());
+
+        Configuration config = new Configuration();
+        ModelIndex index = ModelIndex.read(indexFile);
+        index.restore(config, "test");
+        index.restore(config, "other");
+        List<String> goals = Arrays.asList("other", "test");
+
+        // Inherited parameters exist once for both goals
+        int count = 0;
+        for (ConfigElement element : config.getRootElements()) {
+            count += element.getName().equals("baseParam") ? 1 : 0;
+        }
+        assertEquals(1, count);
+        ConfigElement baseParam = config.get(null, "baseParam", "java.lang.String");
+        assertEquals(goals, sorted(baseParam.getMojos()));
+        assertEquals("MyBaseMojo", baseParam.getDeclaringType());
+
+        // Nested types are extracted once, other usages share their elements
+        ConfigElement nested = config.get(null, "nested", "Nested");
+        assertFalse(nested.isReference());
+        ConfigElement name = config.get(nested, "name", "java.lang.String");
+        assertEquals(goals, sorted(name.getMojos()));
+        ConfigElement inner = config.get(nested, "inner", "Nested.InnerNested");
+        assertEquals(goals, sorted(config.get(inner, "colour", "java.lang.String").getMojos()));
+        ConfigElement item = config.get(config.get(null, "nestedList", ConfigElement.COLLECTION_TYPE), "nested", "Nested");
+        assertSame(nested, item.getReference());
+        assertFalse(item.hasChildren());
+    }
+
+    @Test
+    public void recursiveConfiguration() throws Exception {
+        File classes = folder.newFolder("classes");
+        File indexFile = new File(folder.getRoot(), "poblano/model.idx");
+        compile(classes, Arrays.asList("RecursiveMojo.java"), "-Apoblano.index=" + indexFile.getAbsolutePath());
+
+        // Nested elements of the same type refer back to the enclosing element
+        Configuration config = new Configuration();
+        ModelIndex.read(indexFile).restore(config, "recursive");
+        ConfigElement tree = config.get(null, "tree", "RecursiveMojo.Node");
+        ConfigElement node = config.get(config.get(tree, "children", ConfigElement.COLLECTION_TYPE), "node", "RecursiveMojo.Node");
+        assertTrue(node.isReference());
+        assertSame(tree, node.getReference());
+        ConfigElement ping = config.get(null, "ping", "RecursiveMojo.Ping");
+        ConfigElement innerPing = config.get(config.get(ping, "pong", "RecursiveMojo.Pong"), "ping", "RecursiveMojo.Ping");
+        assertSame(ping, innerPing.getReference());
+
+        // The schema declares each type once and refers to it by name
+        String xsd = new String(Files.readAllBytes(new File(classes, "META-INF/poblano/configuration.xsd").toPath()),
+                                StandardCharsets.UTF_8);
+        for (String type : Arrays.asList("RecursiveMojo.Node", "RecursiveMojo.Ping", "RecursiveMojo.Pong")) {
+            assertEquals(type, 1, count(xsd, "<xs:complexType name=\"" + type + "\">"));
+        }
+        assertTrue(xsd.contains("<xs:element name=\"tree\" type=\"RecursiveMojo.Node\">"));
+        assertTrue(xsd.contains("<xs:element name=\"node\" type=\"RecursiveMojo.Node\"/>"));
+        assertTrue(xsd.contains("<xs:element name=\"ping\" type=\"RecursiveMojo.Ping\">"));
+        assertTrue(xsd.contains("<xs:element name=\"pong\" type=\"RecursiveMojo.Pong\">"));
+        // No anonymous copies of the types
+        assertEquals(1, count(xsd, "<xs:complexType>"));
+    }
+
+    private int count(String text, String part) {
+        int ret = 0;
+        for (int idx = text.indexOf(part); idx >= 0; idx = text.indexOf(part, idx + 1)) {
+            ret++;
+        }
+        return ret;
+    }
+
+    @Test
+    public void modelIndex() throws Exception {
+        File classes = folder.newFolder("classes");
+        File indexFile = new File(folder.getRoot(), "poblano/model.idx");
+        File metricsFile = new File(folder.getRoot(), "poblano/metrics.json");
+        File xsd = new File(classes, "META-INF/poblano/configuration.xsd");
+        String[] options = {
+            "-Apoblano.index=" + indexFile.getAbsolutePath(),
+            "-Apoblano.metrics=true",
+            "-Apoblano.metrics.file=" + metricsFile.getAbsolutePath()
+        };
+        List<File> sources = Arrays.asList(getResourceFile("TestMojo.java"), getResourceFile("MyBaseMojo.java"),
+                                           getResourceFile("Nested.java"), getResourceFile("RecursiveMojo.java"));
+        compile(classes, sources, options);
+        assertTrue(indexFile.exists());
+        assertTrue(readMetrics(metricsFile).contains("\"mojos.extracted\": 2"));
+        byte[] extracted = Files.readAllBytes(xsd.toPath());
+
+        // Second compilation restores both mojos from the index, with the same result
+        List<String> notes = compile(classes, sources, options);
+        assertTrue(notes.toString(), notes.contains("test: Unchanged, using model from index"));
+        assertTrue(notes.toString(), notes.contains("recursive: Unchanged, using model from index"));
+        String json = readMetrics(metricsFile);
+        assertTrue(json, json.contains("\"mojos.restored\": 2"));
+        assertFalse(json, json.contains("\"mojos.extracted\""));
+        assertArrayEquals(extracted, Files.readAllBytes(xsd.toPath()));
+
+        // Only the changed mojo is extracted again
+        File changed = new File(folder.newFolder("src"), "RecursiveMojo.java");
+        String source = new String(Files.readAllBytes(getResourceFile("RecursiveMojo.java").toPath()), StandardCharsets.UTF_8);
+        Files.write(changed.toPath(),
+                    source.replace("    private Ping ping;\n", "    private Ping ping;\n\n    @Parameter\n    private String label;\n")
+                          .getBytes(StandardCharsets.UTF_8));
+        notes = compile(classes, Arrays.asList(sources.get(0), sources.get(1), sources.get(2), changed), options);
+        assertTrue(notes.toString(), notes.contains("test: Unchanged, using model from index"));
+        assertTrue(notes.toString(), notes.contains("recursive: Processing ..."));
+        json = readMetrics(metricsFile);
+        assertTrue(json, json.contains("\"mojos.restored\": 1"));
+        assertTrue(json, json.contains("\"mojos.extracted\": 1"));
+        Configuration config = new Configuration();
+        ModelIndex.read(indexFile).restore(config, "recursive");
+        assertNotNull(config.get(null, "label", "java.lang.String"));
+    }
+
+    private String readMetrics(File metricsFile) throws IOException {
+        return new String(Files.readAllBytes(metricsFile.toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void unchangedOutputs() throws Exception {
+        File classes = folder.newFolder("classes");
+        File xsd = new File(classes, "META-INF/poblano/configuration.xsd");
+        assertTrue(compile(classes).isEmpty());
+        File adoc = new File(classes, "META-INF/poblano/asciidoc/test.adoc");
+        File fragment = new File(classes, "META-INF/poblano/asciidoc/_types/Nested.adoc");
+        assertTrue(xsd.setLastModified(1000L) && adoc.setLastModified(1000L) && fragment.setLastModified(1000L));
+
+        // Second build produces the same content, which is not written again
+        List<String> notes = compile(classes);
+        assertEquals(1000L, xsd.lastModified());
+        assertEquals(1000L, adoc.lastModified());
+        assertEquals(1000L, fragment.lastModified());
+        // XSD, JSON schema and all AsciiDoc pages and fragments
+        int total = countFiles(new File(classes, "META-INF/poblano"));
+        assertTrue(total > 3);
+        assertTrue(notes.toString(), notes.contains(total + " of " + total + " outputs unchanged, not written again"));
+    }
+
+    @Test
+    public void unchangedOutputsCreatedViaFiler() throws Exception {
+        File classes = folder.newFolder("classes");
+        compile(classes);
+
+        // Outputs which are not written again are still created with their originating elements
+        List<File> sources = Arrays.asList(getResourceFile("TestMojo.java"), getResourceFile("MyBaseMojo.java"),
+                                           getResourceFile("Nested.java"));
+        RecordingProcessor processor = new RecordingProcessor();
+        List<String> notes = compile(classes, sources, processor, "-Apoblano.generators=xsd,json,asciidoc");
+        Set<String> outputs = new TreeSet<>();
+        collectFiles(new File(classes, "META-INF/poblano"), "META-INF/poblano/", outputs);
+        assertTrue(notes.toString(), notes.contains(outputs.size() + " of " + outputs.size() + " outputs unchanged, not written again"));
+        assertEquals(outputs, processor.resources.keySet());
+        for (Map.Entry<String, List<String>> resource : processor.resources.entrySet()) {
+            assertEquals(resource.getKey(), Collections.singletonList("TestMojo"), resource.getValue());
+        }
+    }
+
+    private void collectFiles(File dir, String path, Set<String> files) {
+        for (File file : dir.listFiles()) {
+            if (file.isDirectory()) {
+                collectFiles(file, path + file.getName() + "/", files);
+            } else {
+                files.add(path + file.getName());
+            }
+        }
+    }
+
+    private int countFiles(File dir) {
+        int ret = 0;
+        for (File file : dir.listFiles()) {
+            ret += file.isDirectory() ? countFiles(file) : 1;
+        }
+        return ret;
+    }
+
+    // Compile TestMojo into the given directory, returning the notes about unchanged outputs
+    private List<String> compile(File classes) throws IOException {
+        List<String> ret = new ArrayList<>();
+        for (String note : compile(classes, Arrays.asList("TestMojo.java", "MyBaseMojo.java", "Nested.java"),
+                                   "-Apoblano.generators=xsd,json,asciidoc")) {
+            if (note.contains("unchanged, not written")) {
+                ret.add(note);
+            }
+        }
+        return ret;
+    }
+
+    // Compile test resources into the given directory, returning the notes given by the processor
+    private List<String> compile(File classes, List<String> resources, String... processorOptions) throws IOException {
+        List<File> sources = new ArrayList<>();
+        for (String source : resources) {
+            sources.add(getResourceFile(source));
+        }
+        return compile(classes, sources, processorOptions);
+    }
+
+    private File getResourceFile(String resource) {
+        return new File(getClass().getResource("/" + resource).getFile());
+    }
+
+    private List<String> compile(File classes, Collection<File> sources, String... processorOptions) throws IOException {
+        return compile(classes, sources, new PoblanoProcessor(), processorOptions);
+    }
+
+    private List<String> compile(File classes, Collection<File> sources, Processor processor, String... processorOptions)
+        throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+            List<String> options = new ArrayList<>(Arrays.asList("-d", classes.getPath(),
+                                                                 "-classpath", System.getProperty("java.class.path")));
+            options.addAll(Arrays.asList(processorOptions));
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null,
+                                                                 fileManager.getJavaFileObjectsFromFiles(sources));
+            task.setProcessors(Collections.singletonList(processor));
+            assertTrue(diagnostics.getDiagnostics().toString(), task.call());
+        }
+        List<String> ret = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.NOTE) {
+                ret.add(diagnostic.getMessage(null));
+            }
+        }
+        return ret;
+    }
+
+    @Test
+    public void metrics() throws Exception {
+        File metricsFile = new File(folder.getRoot(), "poblano/metrics.json");
+        assert_().about(javaSources())
+                 .that(Arrays.asList(JavaFileObjects.forResource("TestMojo.java")))
+                 .withCompilerOptions("-Apoblano.metrics=true",
+                                      "-Apoblano.metrics.file=" + metricsFile.getAbsolutePath())
+                 .processedWith(new PoblanoProcessor())
+                 .compilesWithoutError()
+                 .withNoteContaining("Poblano metrics:");
+        String json = new String(Files.readAllBytes(metricsFile.toPath()), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"extract:test\""));
+        assertTrue(json.contains("\"generate:xsd\""));
+        assertTrue(json.contains("\"mojos.extracted\": 1"));
+    }
+
+    @Test
+    public void threads() throws Exception {
+        List<String> resources = Arrays.asList("TestMojo.java", "OtherMojo.java", "MyBaseMojo.java", "Nested.java",
+                                               "RecursiveMojo.java", "GenericMojo.java", "JavadocMojo.java",
+                                               "ListMojo.java", "BinderMojo.java");
+        String[] options = {
+            "-Apoblano.generators=xsd,json,asciidoc",
+            "-Apoblano.goals=*",
+            "-Apoblano.binders=true",
+            "-Apoblano.descriptors=true"
+        };
+        File sequential = folder.newFolder("sequential");
+        compile(sequential, resources, concat(options, "-Apoblano.threads=1"));
+        File parallel = folder.newFolder("parallel");
+        compile(parallel, resources, concat(options, "-Apoblano.threads=4"));
+
+        // Models built concurrently are merged in the order of the mojos, so all outputs are the same
+        Set<String> files = new TreeSet<>();
+        collectFiles(sequential, "", files);
+        Set<String> parallelFiles = new TreeSet<>();
+        collectFiles(parallel, "", parallelFiles);
+        assertEquals(files, parallelFiles);
+        assertTrue(files.contains("BinderMojoPoblanoBinder.java"));
+        assertTrue(files.contains("META-INF/poblano/configuration.xsd"));
+        for (String file : files) {
+            if (!file.endsWith(".class")) {
+                assertArrayEquals(file, Files.readAllBytes(new File(sequential, file).toPath()),
+                                  Files.readAllBytes(new File(parallel, file).toPath()));
+            }
+        }
+    }
+
+    private String[] concat(String[] options, String option) {
+        String[] ret = Arrays.copyOf(options, options.length + 1);
+        ret[options.length] = option;
+        return ret;
+    }
+
+    @Test
+    public void javadoc() throws Exception {
+        File indexFile = new File(folder.getRoot(), "poblano/model.idx");
+        assert_().about(javaSources())
+                 .that(Arrays.asList(JavaFileObjects.forResource("JavadocMojo.java"),
+                                     JavaFileObjects.forResource("RecursiveMojo.java"),
+                                     JavaFileObjects.forResource("TestMojo.java")))
+                 .withCompilerOptions("-Apoblano.index=" + indexFile.getAbsolutePath())
+                 .processedWith(new PoblanoProcessor())
                  .compilesWithoutError();
+
+        Configuration config = new Configuration();
+        ModelIndex.read(indexFile).restore(config, "javadoc");
+        ConfigElement retries = config.get(null, "retries", "int");
+        assertEquals("Number of retries.", retries.getSummary());
+        assertEquals("1.2", retries.getSince());
+        assertEquals(" Number of retries. Defaults to 3, see\n <code>Node.name</code> and <code>a&lt;b&gt;</code>.\n",
+                     retries.getDocumentation());
+        ConfigElement mode = config.get(null, "mode", "JavadocMojo.Mode");
+        assertEquals(" Connect via sockets\n", mode.getEnumValues().get(0).getDocumentation());
+        assertNull(mode.getEnumValues().get(1).getDocumentation());
     }
 
+    @Test
+    public void genericTypes() throws Exception {
+        File indexFile = new File(folder.getRoot(), "poblano/model.idx");
+        assert_().about(javaSources())
+                 .that(Arrays.asList(JavaFileObjects.forResource("GenericMojo.java")))
+                 .withCompilerOptions("-Apoblano.index=" + indexFile.getAbsolutePath())
+                 .processedWith(new PoblanoProcessor())
+                 .compilesWithoutError();
+
+        Configuration config = new Configuration();
+        ModelIndex.read(indexFile).restore(config, "generic");
+        // Type arguments are substituted into generic classes, each parameterization separately
+        ConfigElement wrapped = config.get(null, "wrapped", "GenericMojo.Wrapper<GenericMojo.Port>");
+        assertNotNull(child(config, child(config, wrapped, "value", "GenericMojo.Port"), "number", "int"));
+        ConfigElement values = config.get(wrapped, "values", ConfigElement.COLLECTION_TYPE);
+        assertNotNull(config.get(values, "port", "GenericMojo.Port"));
+        ConfigElement volume = config.get(null, "volume", "GenericMojo.Wrapper<GenericMojo.Volume>");
+        assertNotNull(child(config, child(config, volume, "value", "GenericMojo.Volume"), "path", "java.lang.String"));
+        // Wildcards are replaced by their bound, primitive arrays are supported
+        ConfigElement ports = config.get(null, "ports", ConfigElement.COLLECTION_TYPE);
+        assertNotNull(child(config, config.get(ports, "port", "GenericMojo.Port"), "number", "int"));
+        assertNotNull(config.get(config.get(null, "numbers", ConfigElement.ARRAY_TYPE), "number", "int"));
+        // Type arguments of the super class
+        assertNotNull(child(config, config.get(null, "base", "GenericMojo.Port"), "number", "int"));
+    }
+
+    private List<String> sorted(Set<String> values) {
+        return new ArrayList<>(new TreeSet<>(values));
+    }
+
+    // Child of an element, following the reference of elements sharing the configuration of another one
+    private ConfigElement child(Configuration config, ConfigElement parent, String name, String type) {
+        return config.get(parent.isReference() ? parent.getReference() : parent, name, type);
+    }
+
+    @Test
+    public void deferredMojo() throws Exception {
+        File indexFile = new File(folder.getRoot(), "poblano/model.idx");
+        File metricsFile = new File(folder.getRoot(), "poblano/metrics.json");
+        assert_().about(javaSources())
+                 .that(Arrays.asList(JavaFileObjects.forResource("DeferredMojo.java"),
+                                     JavaFileObjects.forResource("TestMojo.java")))
+                 .withCompilerOptions("-Apoblano.index=" + indexFile.getAbsolutePath(),
+                                      "-Apoblano.metrics=true",
+                                      "-Apoblano.metrics.file=" + metricsFile.getAbsolutePath())
+                 .processedWith(new ConfigTypeProcessor(), new PoblanoProcessor())
+                 .compilesWithoutError()
+                 .withNoteContaining("deferred: Configuration refers to unresolved types");
+
+        String json = new String(Files.readAllBytes(metricsFile.toPath()), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"mojos.deferred\": 1"));
+        assertTrue(json.contains("\"mojos.extracted\": 2"));
+
+        // The generated type's configuration is part of the model
+        Configuration config = new Configuration();
+        ModelIndex.read(indexFile).restore(config, "deferred");
+        ConfigElement generated = config.get(null, "generated", "GeneratedConfig");
+        assertNotNull(generated);
+        assertNotNull(config.get(generated, "host", "java.lang.String"));
+    }
+
+    // Generates a configuration type in the first round
+    @SupportedAnnotationTypes("*")
+    @SupportedSourceVersion(SourceVersion.RELEASE_7)
+    static class ConfigTypeProcessor extends AbstractProcessor {
+
+        private boolean generated;
+
+        @Override
+        public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+            if (!generated) {
+                generated = true;
+                try (Writer writer = processingEnv.getFiler().createSourceFile("GeneratedConfig").openWriter()) {
+                    writer.write("public class GeneratedConfig {\n" +
+                                 "    @org.apache.maven.plugins.annotations.Parameter\n" +
+                                 "    private String host;\n" +
+                                 "}\n");
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return false;
+        }
+    }
+
+    // Records the resources created via the Filer together with their originating elements
+    @SupportedAnnotationTypes("*")
+    @SupportedSourceVersion(SourceVersion.RELEASE_7)
+    static class RecordingProcessor extends PoblanoProcessor {
+
+        private final Map<String, List<String>> resources = new TreeMap<>();
+
+        @Override
+        public synchronized void init(final ProcessingEnvironment processingEnv) {
+            final Filer filer = (Filer) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Filer.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("createResource")) {
+                            List<String> elements = new ArrayList<>();
+                            for (Element element : (Element[]) args[3]) {
+                                elements.add(element.toString());
+                            }
+                            resources.put((String) args[2], elements);
+                        }
+                        return delegate(processingEnv.getFiler(), method, args);
+                    }
+                });
+            super.init((ProcessingEnvironment) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[] { ProcessingEnvironment.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        return method.getName().equals("getFiler") ? filer : delegate(processingEnv, method, args);
+                    }
+                }));
+        }
+
+        private static Object delegate(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
 }
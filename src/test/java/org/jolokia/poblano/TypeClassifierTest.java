@@ -0,0 +1,87 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.*;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author roland
+ * @since 30/05/16
+ */
+public class TypeClassifierTest {
+
+    @Test
+    public void parameterizedTypesShareCacheEntry() throws Exception {
+        final Metrics metrics = new Metrics(true, false);
+        final List<TypeClassifier.Kind> kinds = new ArrayList<>();
+        compile(new AbstractProcessor() {
+            @Override
+            public Set<String> getSupportedAnnotationTypes() {
+                return Collections.singleton("*");
+            }
+
+            @Override
+            public SourceVersion getSupportedSourceVersion() {
+                return SourceVersion.latestSupported();
+            }
+
+            @Override
+            public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+                TypeElement mojo = processingEnv.getElementUtils().getTypeElement("ListMojo");
+                if (mojo != null && kinds.isEmpty()) {
+                    TypeClassifier classifier = new TypeClassifier(processingEnv, metrics);
+                    for (VariableElement field : ElementFilter.fieldsIn(mojo.getEnclosedElements())) {
+                        kinds.add(classifier.classify(field.asType()));
+                    }
+                }
+                return false;
+            }
+        });
+        // List<String> and List<Integer> are different mirrors of the same erased type
+        assertEquals(Arrays.asList(TypeClassifier.Kind.COLLECTION, TypeClassifier.Kind.COLLECTION), kinds);
+        assertEquals(1, metrics.getCounter("classifier.cache.miss"));
+        assertEquals(1, metrics.getCounter("classifier.cache.hit"));
+    }
+
+    private void compile(AbstractProcessor processor) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+            File source = new File(getClass().getResource("/ListMojo.java").getFile());
+            JavaCompiler.CompilationTask task =
+                compiler.getTask(null, fileManager, diagnostics,
+                                 Arrays.asList("-proc:only", "-classpath", System.getProperty("java.class.path")),
+                                 null, fileManager.getJavaFileObjects(source));
+            task.setProcessors(Collections.singletonList(processor));
+            assertTrue(diagnostics.getDiagnostics().toString(), task.call());
+        }
+    }
+}
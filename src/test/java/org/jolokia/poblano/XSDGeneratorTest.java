@@ -0,0 +1,146 @@
+package org.jolokia.poblano;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.SchemaFactory;
+
+import org.jolokia.poblano.model.ConfigElement;
+import org.jolokia.poblano.model.Configuration;
+import org.jolokia.poblano.model.EnumValueElement;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author roland
+ * @since 30/05/16
+ */
+public class XSDGeneratorTest {
+
+    private static final String NAMESPACE = "http://fabric8.io/docker-maven-plugin";
+
+    @Test
+    public void streamingMatchesGoldenFile() throws Exception {
+        assertMatchesGoldenFile(XSDGenerator.Mode.STREAMING);
+    }
+
+    @Test
+    public void domMatchesGoldenFile() throws Exception {
+        assertMatchesGoldenFile(XSDGenerator.Mode.DOM);
+    }
+
+    @Test
+    public void sharedTypesDeclaredOnce() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new XSDGenerator().generate(out, NAMESPACE, createTestModel());
+        String xsd = out.toString("UTF-8");
+        // "Nested" is used twice, but its content is declared only once
+        assertEquals(1, count(xsd, "name=\"colour\""));
+        assertEquals(2, count(xsd, "type=\"Nested\""));
+        SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+                     .newSchema(new StreamSource(new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    private int count(String text, String part) {
+        int count = 0;
+        for (int idx = text.indexOf(part); idx >= 0; idx = text.indexOf(part, idx + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    private void assertMatchesGoldenFile(XSDGenerator.Mode mode) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new XSDGenerator(mode).generate(out, NAMESPACE, createTestModel());
+
+        Document expected = parse(getClass().getResourceAsStream("/golden/TestMojo.xsd"));
+        Document actual = parse(new ByteArrayInputStream(out.toByteArray()));
+        assertTrue("XSD generated in " + mode + " mode differs from golden file:\n" + out.toString("UTF-8"),
+                   expected.isEqualNode(actual));
+    }
+
+    // Same model as extracted from TestMojo, plus an enum
+    static Configuration createTestModel() {
+        Configuration config = new Configuration();
+        String mojo = "test";
+        config.updateElement(null, mojo, "name", "java.lang.String", "", " The name of the test\n");
+        config.updateElement(null, mojo, "type", "java.lang.String", "", null);
+        ConfigElement nested = config.updateElement(null, mojo, "nested", "Nested", "",
+                                                    " A nested bean\n\n <ul>\n     <li>Wrong item\n </ul>\n");
+        addNestedChildren(config, mojo, nested);
+        ConfigElement nestedList = config.updateElement(null, mojo, "nestedList", ConfigElement.COLLECTION_TYPE, "",
+                                                        " List of nested beans\n\n");
+        addNestedChildren(config, mojo, config.updateElement(nestedList, mojo, "nested", "Nested", null, null));
+        ConfigElement stringArray = config.updateElement(null, mojo, "stringArray", ConfigElement.ARRAY_TYPE, "",
+                                                         " Array of strings\n");
+        config.updateElement(stringArray, mojo, "item", "java.lang.String", null, null);
+        config.updateElement(null, mojo, "map", ConfigElement.MAP_TYPE, "", " A map\n");
+        config.updateEnum(null, Arrays.asList(new EnumValueElement("FAST", " Quick <em>and</em> dirty\n"),
+                                              new EnumValueElement("SLOW", null)),
+                          mojo, "speed", "TestMojo.Speed", "FAST", " How fast to go\n");
+        config.updateElement(null, mojo, "baseParam", "java.lang.String", "", " A base class parameter\n");
+        return config;
+    }
+
+    private static void addNestedChildren(Configuration config, String mojo, ConfigElement nested) {
+        ConfigElement inner = config.updateElement(nested, mojo, "inner", "Nested.InnerNested", "", " Inner bean\n");
+        config.updateElement(inner, mojo, "colour", "java.lang.String", "", " The colour of life\n");
+        config.updateElement(nested, mojo, "name", "java.lang.String", "", " Name of nested\n");
+        config.updateElement(nested, mojo, "button", "boolean", "", " Button to push\n");
+        config.updateElement(nested, mojo, "max", "int", "", " Max hits\n");
+        config.updateElement(nested, mojo, "min", "java.lang.Integer", "", " Min hits\n");
+    }
+
+    // Parse into a DOM without formatting whitespace so that only the content is compared
+    private Document parse(InputStream is) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document doc = factory.newDocumentBuilder().parse(is);
+        normalizeWhitespace(doc.getDocumentElement());
+        doc.normalizeDocument();
+        return doc;
+    }
+
+    private void normalizeWhitespace(Node node) {
+        Node child = node.getFirstChild();
+        while (child != null) {
+            Node next = child.getNextSibling();
+            if (child.getNodeType() == Node.TEXT_NODE) {
+                String text = child.getNodeValue().trim();
+                if (text.length() == 0) {
+                    node.removeChild(child);
+                } else {
+                    child.setNodeValue(text);
+                }
+            } else {
+                normalizeWhitespace(child);
+            }
+            child = next;
+        }
+    }
+}
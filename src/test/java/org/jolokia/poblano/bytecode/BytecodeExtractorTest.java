@@ -0,0 +1,156 @@
+package org.jolokia.poblano.bytecode;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import javax.tools.*;
+
+import org.jolokia.poblano.PoblanoProcessor;
+import org.jolokia.poblano.XSDGenerator;
+import org.jolokia.poblano.model.Configuration;
+import org.jolokia.poblano.model.ModelIndex;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author roland
+ * @since 30/05/16
+ */
+public class BytecodeExtractorTest {
+
+    private static final String[] SOURCES = {
+        "TestMojo.java", "OtherMojo.java", "MyBaseMojo.java", "Nested.java", "RecursiveMojo.java", "JavadocMojo.java",
+        "GenericMojo.java"
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sameModelAsProcessor() throws Exception {
+        File classes = folder.newFolder("classes");
+        File indexFile = new File(folder.getRoot(), "model.idx");
+        compile(classes, indexFile);
+        File jar = createJar(classes, new File(folder.getRoot(), "plugin.jar"));
+
+        Configuration fromJar = new BytecodeExtractor(2).extract(jar);
+        assertEquals(new HashSet<>(Arrays.asList("test", "other", "recursive", "javadoc", "generic")),
+                     new HashSet<>(fromJar.getGoals()));
+        // Root elements are ordered by the mojos, so the processor's model is restored in the same order
+        ModelIndex index = ModelIndex.read(indexFile);
+        Configuration fromSource = new Configuration();
+        for (String goal : fromJar.getGoals()) {
+            index.restore(fromSource, goal);
+        }
+        assertEquals(toXsd(fromSource), toXsd(fromJar));
+
+        // Directories of class files give the same result, independent of the number of threads
+        assertEquals(toXsd(fromJar), toXsd(new BytecodeExtractor(2).extract(classes)));
+        assertEquals(toXsd(fromJar), toXsd(new BytecodeExtractor(1).extract(jar)));
+    }
+
+    @Test
+    public void signatures() {
+        assertEquals("java.util.Map<java.lang.String,java.util.List<? extends Outer.Inner>>",
+                     TypeRef.fromSignature("Ljava/util/Map<Ljava/lang/String;Ljava/util/List<+LOuter$Inner;>;>;").toString());
+        TypeRef array = TypeRef.fromSignature("[[I");
+        assertEquals("int[][]", array.toString());
+        assertEquals("int[]", array.getComponentType().toString());
+        assertEquals(TypeRef.Kind.TYPE_VARIABLE, TypeRef.fromSignature("TT;").getKind());
+
+        // Class signatures with bounded type variables and a parameterized super class
+        String classSignature = "<T:Ljava/lang/Object;N::Ljava/lang/Comparable<TN;>;>LBase<TT;[TN;>;Ljava/io/Serializable;";
+        List<TypeRef> parameters = TypeRef.typeParametersOf(classSignature);
+        assertEquals(2, parameters.size());
+        assertEquals("T", parameters.get(0).toString());
+        assertEquals("T", parameters.get(0).normalize().toString());
+        assertEquals("java.lang.Comparable<N>", parameters.get(1).normalize().toString());
+        Map<String, TypeRef> bindings = new HashMap<>();
+        bindings.put("T", TypeRef.forClass("Outer$Inner"));
+        bindings.put("N", TypeRef.forClass("java.lang.Integer"));
+        assertEquals("Base<Outer.Inner,java.lang.Integer[]>",
+                     TypeRef.superclassOf(classSignature).substitute(bindings).toString());
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidJar() throws Exception {
+        File file = folder.newFile("broken.jar");
+        Files.write(file.toPath(), "no zip".getBytes(StandardCharsets.UTF_8));
+        new BytecodeExtractor().extract(file);
+    }
+
+    // ==========================================================================================
+
+    private void compile(File classes, File indexFile) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+            List<File> sources = new ArrayList<>();
+            for (String source : SOURCES) {
+                sources.add(new File(getClass().getResource("/" + source).getFile()));
+            }
+            List<String> options = Arrays.asList("-d", classes.getPath(),
+                                                 "-classpath", System.getProperty("java.class.path"),
+                                                 "-Apoblano.index=" + indexFile.getAbsolutePath());
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, null, options, null,
+                                                                 fileManager.getJavaFileObjectsFromFiles(sources));
+            task.setProcessors(Collections.singletonList(new PoblanoProcessor()));
+            assertTrue(task.call());
+        }
+    }
+
+    // Mix of stored and compressed entries
+    private File createJar(File classes, File jar) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            int count = 0;
+            for (File file : classes.listFiles()) {
+                if (!file.getName().endsWith(".class")) {
+                    continue;
+                }
+                byte[] content = Files.readAllBytes(file.toPath());
+                JarEntry entry = new JarEntry(file.getName());
+                if (count++ % 2 == 0) {
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(content.length);
+                    CRC32 crc = new CRC32();
+                    crc.update(content);
+                    entry.setCrc(crc.getValue());
+                }
+                out.putNextEntry(entry);
+                out.write(content);
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private String toXsd(Configuration config) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new XSDGenerator().generate(out, "urn:test", config, null, XSDGenerator.Format.PRETTY, false);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,99 @@
+package org.jolokia.poblano.model;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.*;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author roland
+ * @since 30/05/16
+ */
+public class ConfigurationTest {
+
+    @Test
+    public void lookup() {
+        Configuration config = new Configuration();
+        ConfigElement image = config.updateElement(null, "build", "image", "Image", null, null);
+        ConfigElement name = config.updateElement(image, "build", "name", "java.lang.String", null, null);
+        ConfigElement nameAsInt = config.updateElement(image, "build", "name", "java.lang.Integer", null, null);
+        ConfigElement rootName = config.updateElement(null, "build", "name", "java.lang.String", null, null);
+
+        assertNotSame(name, nameAsInt);
+        assertNotSame(name, rootName);
+        assertSame(name, config.get(image, "name", "java.lang.String"));
+        assertSame(nameAsInt, config.get(image, "name", "java.lang.Integer"));
+        assertSame(rootName, config.get(null, "name", "java.lang.String"));
+        assertNull(config.get(image, "name", "java.lang.Long"));
+        assertNull(config.get(null, "unknown", "Image"));
+
+        // Same element is updated for another mojo
+        assertSame(name, config.updateElement(image, "push", "name", "java.lang.String", null, null));
+        assertTrue(name.appliesTo("push"));
+        assertEquals(2, image.getChildren().size());
+        assertEquals(2, config.getRootElements().size());
+    }
+
+    @Test
+    public void freeze() {
+        Configuration config = new Configuration();
+        ConfigElement image = config.updateElement(null, "build", "image", "Image", null, null);
+        ConfigElement name = config.updateElement(image, "build", "name", "java.lang.String", null, null);
+        config.updateElement(image, "push", "name", "java.lang.String", null, null);
+        ConfigElement mode = config.updateEnum(null, Arrays.asList(new EnumValueElement("FAST", null)),
+                                               "push", "mode", "Mode", "FAST", null);
+        assertFalse(config.isFrozen());
+
+        assertSame(config, config.freeze());
+        assertTrue(config.isFrozen());
+        assertEquals(Arrays.asList("build", "push"), config.getGoals());
+        assertSame(name, config.get(image, "name", "java.lang.String"));
+        assertSame(mode, config.get(null, "mode", "Mode"));
+        assertNull(config.get(image, "name", "java.lang.Integer"));
+        assertTrue(name.appliesTo("build"));
+        assertTrue(name.appliesTo("push"));
+        assertFalse(image.appliesTo("push"));
+        assertFalse(image.appliesTo("unknown"));
+        assertEquals(new HashSet<>(Arrays.asList("build", "push")), name.getMojos());
+        assertTrue(mode.appliesTo(config.getGoalId("push")));
+        assertFalse(mode.appliesTo(config.getGoalId("build")));
+        assertEquals(-1, config.getGoalId("unknown"));
+        assertEquals("FAST", mode.getEnumValues().get(0).getValue());
+
+        try {
+            config.updateElement(image, "build", "tag", "java.lang.String", null, null);
+            fail("Frozen configuration must not be changed");
+        } catch (IllegalStateException exp) {
+            // expected
+        }
+        try {
+            image.getChildren().add(name);
+            fail("Children of a frozen element must not be changed");
+        } catch (UnsupportedOperationException exp) {
+            // expected
+        }
+        try {
+            name.addMojo("deploy");
+            fail("Frozen element must not be changed");
+        } catch (IllegalStateException exp) {
+            // expected
+        }
+    }
+}
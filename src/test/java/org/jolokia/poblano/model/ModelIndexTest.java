@@ -0,0 +1,124 @@
+package org.jolokia.poblano.model;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.util.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author roland
+ * @since 30/05/16
+ */
+public class ModelIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip() throws Exception {
+        ModelIndex index = writeAndRead(createModel());
+        assertTrue(index.isUpToDate("tree", "fp-tree"));
+        assertTrue(index.isUpToDate("other", "fp-other"));
+        assertFalse(index.isUpToDate("tree", "fp-changed"));
+        assertFalse(index.isUpToDate("unknown", "fp-tree"));
+
+        Configuration restored = new Configuration();
+        index.restore(restored, "tree");
+        index.restore(restored, "other");
+
+        ConfigElement tree = restored.get(null, "tree", "Node");
+        ConfigElement mode = restored.get(null, "mode", "Mode");
+        assertEquals("The tree", tree.getDocumentation());
+        assertEquals(Arrays.asList("other", "tree"), sorted(mode.getMojos()));
+        assertEquals("FAST", mode.getDefaultVal());
+        assertEquals(2, mode.getEnumValues().size());
+        assertEquals("Slowly", mode.getEnumValues().get(1).getDocumentation());
+
+        ConfigElement node = restored.get(restored.get(tree, "children", ConfigElement.COLLECTION_TYPE), "node", "Node");
+        assertSame(tree, node.getReference());
+        // "other" shares the type's configuration held by "tree"
+        assertSame(tree, restored.get(null, "other", "Node").getReference());
+        assertEquals(Arrays.asList("other", "tree"), sorted(restored.get(tree, "name", "java.lang.String").getMojos()));
+
+        assertEquals(Arrays.asList("org.example.TreeMojo", "org.example.BaseMojo"), restored.getHierarchy("tree"));
+        assertEquals("org.example.BaseMojo", mode.getDeclaringType());
+        assertNull(tree.getDeclaringType());
+        assertEquals("poblano.mode", mode.getProperty());
+        assertNull(tree.getProperty());
+    }
+
+    @Test
+    public void restoreReferenceWithoutOwner() throws Exception {
+        ModelIndex index = writeAndRead(createModel());
+        Configuration restored = new Configuration();
+        index.restore(restored, "other");
+
+        assertNull(restored.get(null, "tree", "Node"));
+        ConfigElement other = restored.get(null, "other", "Node");
+        // Other took over the type's configuration which refers to itself now
+        assertFalse(other.isReference());
+        ConfigElement name = restored.get(other, "name", "java.lang.String");
+        assertFalse(name.getMojos().contains("tree"));
+        ConfigElement node = restored.get(restored.get(other, "children", ConfigElement.COLLECTION_TYPE), "node", "Node");
+        assertSame(other, node.getReference());
+    }
+
+    @Test
+    public void noIndex() throws Exception {
+        assertNull(ModelIndex.read(new File(folder.getRoot(), "missing.idx")));
+    }
+
+    private ModelIndex writeAndRead(Configuration config) throws Exception {
+        File file = new File(folder.getRoot(), "poblano/model.idx");
+        Map<String, String> fingerprints = new HashMap<>();
+        fingerprints.put("tree", "fp-tree");
+        fingerprints.put("other", "fp-other");
+        ModelIndex.write(file, config, fingerprints);
+        return ModelIndex.read(file);
+    }
+
+    // "tree" holds a recursive type, "other" refers to the same type
+    private Configuration createModel() {
+        Configuration config = new Configuration();
+        ConfigElement tree = config.updateElement(null, "tree", "tree", "Node", null, "The tree");
+        config.updateElement(tree, "tree", "name", "java.lang.String", null, "Name of node");
+        ConfigElement children = config.updateElement(tree, "tree", "children", ConfigElement.COLLECTION_TYPE, null, null);
+        config.updateReference(config.updateElement(children, "tree", "node", "Node", null, null), tree);
+
+        ConfigElement other = config.updateElement(null, "other", "other", "Node", null, "Another tree");
+        config.graft(other, tree.getChildren(), "other");
+
+        List<EnumValueElement> modes = Arrays.asList(new EnumValueElement("FAST", null),
+                                                     new EnumValueElement("SLOW", "Slowly"));
+        config.updateEnum(null, modes, "tree", "mode", "Mode", "FAST", "Mode to use");
+        config.updateEnum(null, modes, "other", "mode", "Mode", "FAST", "Mode to use");
+        config.updateDeclaringType(config.get(null, "mode", "Mode"), "org.example.BaseMojo");
+        config.updateProperty(config.get(null, "mode", "Mode"), "poblano.mode");
+        config.updateHierarchy("tree", Arrays.asList("org.example.TreeMojo", "org.example.BaseMojo"));
+        return config;
+    }
+
+    private List<String> sorted(Set<String> values) {
+        return new ArrayList<>(new TreeSet<>(values));
+    }
+}
@@ -0,0 +1,137 @@
+package org.jolokia.poblano.validator;
+/*
+ *
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import org.jolokia.poblano.model.ConfigElement;
+import org.jolokia.poblano.model.Configuration;
+import org.jolokia.poblano.model.EnumValueElement;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author roland
+ * @since 30/05/16
+ */
+public class ConfigurationValidatorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void valid() {
+        List<ValidationError> errors = validate(
+            "<configuration>\n" +
+            "  <skip>${docker.skip}</skip>\n" +
+            "  <images>\n" +
+            "    <image>\n" +
+            "      <name>jolokia/demo</name>\n" +
+            "      <build><retries> 3 </retries><mode>FAST</mode></build>\n" +
+            "      <labels><any><thing/></any></labels>\n" +
+            "      <nested><image><name>inner</name></image></nested>\n" +
+            "    </image>\n" +
+            "  </images>\n" +
+            "  <registry/>\n" +
+            "</configuration>");
+        assertTrue(errors.toString(), errors.isEmpty());
+    }
+
+    @Test
+    public void invalid() {
+        List<ValidationError> errors = validate(
+            "<configuration>\n" +
+            "  <skip>maybe</skip>\n" +
+            "  <images>\n" +
+            "    <image>\n" +
+            "      <build><retries>many</retries><mode>MEDIUM</mode></build>\n" +
+            "      <unknown><deeper/></unknown>\n" +
+            "      text\n" +
+            "    </image>\n" +
+            "  </images>\n" +
+            "</configuration>");
+        assertEquals(errors.toString(), 5, errors.size());
+        assertEquals("/configuration/skip", errors.get(0).getPath());
+        assertEquals(2, errors.get(0).getLine());
+        assertTrue(errors.get(0).getMessage().contains("xs:boolean"));
+        assertTrue(errors.get(1).getMessage().contains("'many'"));
+        assertTrue(errors.get(2).getMessage().contains("[FAST, SLOW]"));
+        assertEquals("/configuration/images/image/unknown", errors.get(3).getPath());
+        assertTrue(errors.get(4).getMessage().startsWith("Text not allowed"));
+    }
+
+    @Test
+    public void goal() {
+        String xml = "<configuration><registry>docker.io</registry></configuration>";
+        assertTrue(new ConfigurationValidator(createModel(), "push").validate(new StringReader(xml)).isEmpty());
+        assertEquals(1, new ConfigurationValidator(createModel(), "build").validate(new StringReader(xml)).size());
+    }
+
+    @Test
+    public void invalidXml() {
+        List<ValidationError> errors = validate("<configuration><skip>true</configuration>");
+        assertEquals(1, errors.size());
+        assertNull(errors.get(0).getPath());
+    }
+
+    @Test
+    public void parallel() throws Exception {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            File file = folder.newFile("config-" + i + ".xml");
+            String skip = i % 2 == 0 ? "true" : "never";
+            Files.write(file.toPath(), ("<configuration><skip>" + skip + "</skip></configuration>").getBytes(StandardCharsets.UTF_8));
+            files.add(file);
+        }
+        files.add(new File(folder.getRoot(), "missing.xml"));
+        Map<File, List<ValidationError>> result = new ConfigurationValidator(createModel()).validate(files, 4);
+        assertEquals(files, new ArrayList<>(result.keySet()));
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i % 2, result.get(files.get(i)).size());
+        }
+        assertTrue(result.get(files.get(20)).get(0).getMessage().startsWith("Cannot read"));
+    }
+
+    private List<ValidationError> validate(String xml) {
+        return new ConfigurationValidator(createModel()).validate(new StringReader(xml));
+    }
+
+    private Configuration createModel() {
+        Configuration config = new Configuration();
+        config.updateElement(null, "build", "skip", "boolean", null, null);
+        config.updateElement(null, "push", "skip", "boolean", null, null);
+        config.updateElement(null, "push", "registry", "java.lang.String", null, null);
+        ConfigElement images = config.updateElement(null, "build", "images", ConfigElement.COLLECTION_TYPE, null, null);
+        ConfigElement image = config.updateElement(images, "build", "image", "Image", null, null);
+        config.updateElement(image, "build", "name", "java.lang.String", null, null);
+        ConfigElement build = config.updateElement(image, "build", "build", "Build", null, null);
+        config.updateElement(build, "build", "retries", "int", null, null);
+        config.updateEnum(build, Arrays.asList(new EnumValueElement("FAST", null), new EnumValueElement("SLOW", null)),
+                          "build", "mode", "Mode", null, null);
+        config.updateElement(image, "build", "labels", ConfigElement.MAP_TYPE, null, null);
+        ConfigElement nested = config.updateElement(image, "build", "nested", ConfigElement.COLLECTION_TYPE, null, null);
+        config.updateReference(config.updateElement(nested, "build", "image", "Image", null, null), image);
+        return config;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * 
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.jolokia.poblano.annotation.PoblanoElement;
+
+/**
+ * Mojo whose configuration is bound by a generated binder
+ */
+@Mojo(name = "binder")
+public class BinderMojo extends AbstractMojo {
+
+    public enum Mode { FAST, SLOW }
+
+    @Parameter(property = "binder.name", defaultValue = "poblano")
+    String name;
+
+    @Parameter
+    int count;
+
+    // Assigned through the setter
+    @Parameter
+    private boolean enabled;
+
+    // Neither accessible nor a setter
+    @Parameter
+    private String hidden;
+
+    @Parameter(property = "binder.mode")
+    Mode mode;
+
+    @Parameter
+    File dir;
+
+    @Parameter
+    Server server;
+
+    @Parameter
+    List<Server> servers;
+
+    @Parameter
+    @PoblanoElement("port")
+    int[] ports;
+
+    @Parameter
+    Set<String> tags;
+
+    @Parameter
+    Map<String, String> env;
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void execute() {
+    }
+
+    public static class Server {
+
+        @Parameter
+        String host;
+
+        @Parameter
+        Character separator;
+
+        // Recursive configuration
+        @Parameter
+        Server backup;
+    }
+}
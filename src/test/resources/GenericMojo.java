@@ -0,0 +1,71 @@
+/*
+ * 
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.List;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Mojo with generic configuration types
+ */
+@Mojo(name = "generic")
+public class GenericMojo extends GenericBaseMojo<GenericMojo.Port> {
+
+    @Parameter
+    private Wrapper<Port> wrapped;
+
+    @Parameter
+    private Wrapper<Volume> volume;
+
+    @Parameter
+    private List<? extends Port> ports;
+
+    @Parameter
+    private int[] numbers;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+    }
+
+    public static class Port {
+        @Parameter
+        private int number;
+    }
+
+    public static class Volume {
+        @Parameter
+        private String path;
+    }
+
+    public static class Wrapper<T> {
+        @Parameter
+        private T value;
+
+        @Parameter
+        private List<T> values;
+    }
+}
+
+abstract class GenericBaseMojo<C> extends AbstractMojo {
+
+    @Parameter
+    private C base;
+}
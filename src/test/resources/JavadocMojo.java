@@ -0,0 +1,57 @@
+/*
+ * 
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Mojo using JavaDoc tags in its parameter documentation
+ */
+@Mojo(name = "javadoc")
+public class JavadocMojo extends AbstractMojo {
+
+    static final int DEFAULT_RETRIES = 3;
+
+    /**
+     * Number of retries. Defaults to {@value #DEFAULT_RETRIES}, see
+     * {@link RecursiveMojo.Node#name} and {@code a<b>}.
+     *
+     * @since 1.2
+     * @see TestMojo
+     */
+    @Parameter
+    private int retries;
+
+    /**
+     * How to connect
+     */
+    @Parameter
+    private Mode mode;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {}
+
+    public enum Mode {
+        /**
+         * Connect via {@linkplain java.net.Socket sockets}
+         */
+        SOCKET,
+        HTTP
+    }
+}
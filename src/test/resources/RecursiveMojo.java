@@ -0,0 +1,79 @@
+/*
+ * 
+ * Copyright 2016 Roland Huss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.List;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Mojo with self referencing configuration types
+ */
+@Mojo(name = "recursive")
+public class RecursiveMojo extends AbstractMojo {
+
+    /**
+     * Root of a tree
+     */
+    @Parameter
+    private Node tree;
+
+    /**
+     * Entry point into two types referring to each other
+     */
+    @Parameter
+    private Ping ping;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {}
+
+    public static class Node {
+
+        /**
+         * Name of the node
+         */
+        @Parameter
+        String name;
+
+        /**
+         * Child nodes
+         */
+        @Parameter
+        List<Node> children;
+    }
+
+    public static class Ping {
+
+        /**
+         * The answer
+         */
+        @Parameter
+        Pong pong;
+    }
+
+    public static class Pong {
+
+        /**
+         * Back to the question
+         */
+        @Parameter
+        Ping ping;
+    }
+}